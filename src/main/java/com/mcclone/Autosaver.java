@@ -0,0 +1,104 @@
+/**
+ * Background autosave: snapshot on the simulation thread, write on a worker.
+ */
+
+package com.mcclone;
+
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs {@link WorldSave} writes off the game threads.
+ *
+ * <p>{@link #save} captures a {@link WorldSave.Snapshot}, which is cheap
+ * because block storage is copy-on-write, and hands it to a single
+ * background thread for encoding and the temp-file-and-rename write. The
+ * tick pays only for the snapshot, and that cost is logged. At most one
+ * save is in flight. A request that arrives while the previous write is
+ * still running is skipped, since the next autosave will capture newer state
+ * anyway. {@link #close} waits for the in-flight write and then saves one
+ * final time, so quitting never loses edits or races two writers on the
+ * same file.</p>
+ *
+ * <p>Not thread-safe: call from one thread at a time, holding the world's
+ * monitor or with the simulation stopped.</p>
+ */
+final class Autosaver {
+
+    private static final Logger logger = LoggerFactory.getLogger(Autosaver.class);
+
+    private final File file;
+
+    /** Single writer thread; created on the first save. */
+    private ExecutorService writer;
+
+    /** The save currently being written, or {@code null}. */
+    private Future<Boolean> inFlight;
+
+    /**
+     * @param file the save file every write replaces
+     */
+    Autosaver(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Snapshot the game state now and write it in the background.
+     *
+     * @return true if a save was started; false if the previous one is still
+     *         being written
+     */
+    boolean save(World world, Player player, Hotbar hotbar, DayNightCycle dayNight) {
+        if (inFlight != null && !inFlight.isDone()) {
+            logger.info("Autosave skipped: previous save still writing");
+            return false;
+        }
+        long start = System.nanoTime();
+        WorldSave.Snapshot snap = WorldSave.snapshot(world, player, hotbar, dayNight);
+        long snapshotNanos = System.nanoTime() - start;
+        if (writer == null) {
+            writer = Executors.newSingleThreadExecutor(task -> {
+                Thread t = new Thread(task, "world-save");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        inFlight = writer.submit(() -> WorldSave.write(file, snap));
+        logger.info("Autosave snapshot took {} ms on the simulation thread; writing in background",
+                String.format("%.3f", snapshotNanos / 1e6));
+        return true;
+    }
+
+    /**
+     * Wait for any in-flight save, write the final state on the calling
+     * thread and stop the writer.
+     *
+     * @return true if the final save succeeded
+     */
+    boolean close(World world, Player player, Hotbar hotbar, DayNightCycle dayNight) {
+        awaitInFlight();
+        if (writer != null) {
+            writer.shutdown();
+            writer = null;
+        }
+        return WorldSave.save(file, world, player, hotbar, dayNight);
+    }
+
+    private void awaitInFlight() {
+        if (inFlight == null) return;
+        try {
+            inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warn("Background save failed", e.getCause());
+        }
+        inFlight = null;
+    }
+}
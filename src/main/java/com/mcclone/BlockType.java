@@ -1,8 +1,8 @@
 /**
  * Catalogue of every block type in the world.
  *
- * <p>Block types are stored in the world as plain {@code int} ids (to keep the
- * dense {@code int[][][]} representation in {@link World}), but this enum is
+ * <p>Block types are stored in the world as plain {@code int} ids (packed into
+ * per-section palettes by {@link ChunkSection}), but this enum is
  * the source of truth for the id values, display names and texture keys used
  * when rendering each face.</p>
  */
@@ -73,14 +73,41 @@ public enum BlockType {
     IRON_ORE(14, "iron_ore", "iron_ore", "iron_ore", true, true, 0xD8AF93);
 
     private static final BlockType[] BY_ID;
+
+    /** Light opacity of a block that stops light completely. */
+    public static final int MAX_LIGHT_OPACITY = 15;
+
+    /** {@link #isSolid()} flattened by id for hot paths that only hold an int. */
+    private static final boolean[] SOLID_BY_ID;
+
+    /** {@link #isOpaque()} flattened by id for hot paths that only hold an int. */
+    private static final boolean[] OPAQUE_BY_ID;
+
+    /** Skylight lost passing through each block, by id (see {@link #lightOpacityId}). */
+    private static final int[] LIGHT_OPACITY_BY_ID;
+
     static {
         int max = 0;
         for (BlockType t : values()) {
             max = Math.max(max, t.id);
         }
         BY_ID = new BlockType[max + 1];
+        SOLID_BY_ID = new boolean[max + 1];
+        OPAQUE_BY_ID = new boolean[max + 1];
+        LIGHT_OPACITY_BY_ID = new int[max + 1];
         for (BlockType t : values()) {
             BY_ID[t.id] = t;
+            SOLID_BY_ID[t.id] = t.solid;
+            OPAQUE_BY_ID[t.id] = t.opaque;
+            // Leaves hide faces but let some light through, like Minecraft;
+            // water dims light with depth.
+            if (t == OAK_LEAVES) {
+                LIGHT_OPACITY_BY_ID[t.id] = 1;
+            } else if (t == WATER) {
+                LIGHT_OPACITY_BY_ID[t.id] = 2;
+            } else {
+                LIGHT_OPACITY_BY_ID[t.id] = t.opaque ? MAX_LIGHT_OPACITY : 0;
+            }
         }
     }
 
@@ -121,6 +148,18 @@ public enum BlockType {
     /** @return true if this block fully hides faces of neighbours behind it. */
     public boolean isOpaque() { return opaque; }
 
+    /**
+     * Hot-path light opacity lookup by raw id: how much skylight a cell of
+     * this block absorbs, from 0 (air) to {@link #MAX_LIGHT_OPACITY}
+     * (fully blocks light).
+     *
+     * @param id a block id
+     * @return the light opacity of that block
+     */
+    public static int lightOpacityId(int id) {
+        return LIGHT_OPACITY_BY_ID[id];
+    }
+
     /** @return a representative 0xRRGGBB colour used for UI swatches. */
     public int mapColor() { return mapColor; }
 
@@ -155,4 +194,24 @@ public enum BlockType {
         }
         return BY_ID[id];
     }
+
+    /**
+     * Equivalent to {@code fromId(id).isSolid()} without the enum lookup.
+     *
+     * @param id the id stored in the world array
+     * @return true if that id is a solid block; unknown ids are not
+     */
+    public static boolean isSolidId(int id) {
+        return id >= 0 && id < SOLID_BY_ID.length && SOLID_BY_ID[id];
+    }
+
+    /**
+     * Equivalent to {@code fromId(id).isOpaque()} without the enum lookup.
+     *
+     * @param id the id stored in the world array
+     * @return true if that id is an opaque block; unknown ids are not
+     */
+    public static boolean isOpaqueId(int id) {
+        return id >= 0 && id < OPAQUE_BY_ID.length && OPAQUE_BY_ID[id];
+    }
 }
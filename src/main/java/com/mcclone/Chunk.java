@@ -0,0 +1,654 @@
+/**
+ * A 16×16 column of the world: block storage plus cached vertex streams.
+ */
+
+package com.mcclone;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * One chunk column, full world height.
+ *
+ * <p>Blocks live in one of two layouts, chosen per world by
+ * {@link World.StorageMode}:</p>
+ * <ul>
+ *   <li>{@code PALETTE} — a stack of {@link ChunkSection}s, one per 16 blocks
+ *       of height, each palette-compressing its own cells. A section of pure
+ *       air or pure stone costs a handful of bytes.</li>
+ *   <li>{@code FLAT} — a single {@code byte[]} for the whole column, one byte
+ *       per cell. Larger, but a read is one array load with no decoding.</li>
+ * </ul>
+ *
+ * <p>Both layouts share the linear index {@link #index(int, int, int)}, so
+ * neighbouring cells inside the column are a constant delta apart
+ * ({@link #DX}, {@link #DZ}, {@link #DY}) and each 16³ section occupies a
+ * contiguous 4096-entry range. Coordinates passed in are local to the chunk
+ * ({@code 0..15} horizontally, {@code 0..HEIGHT-1} vertically);
+ * {@link World} does the bounds checks.</p>
+ *
+ * <p>Alongside the blocks each section carries a {@link NibbleArray} of
+ * skylight, which {@link SkyLight} keeps current as blocks change, and the
+ * column carries a bitset of which cells are solid, for collision queries
+ * that test a whole row of cells with one mask (see {@link #anySolid}), and
+ * two heightmaps: the top of the highest solid block and of the highest
+ * light-absorbing block in each column.</p>
+ *
+ * <p>The chunk also owns its vertex streams and a mesh version, so a single
+ * block edit only forces this chunk (and any bordering neighbour) to be
+ * re-meshed. Mesh and buffer fields belong to the render thread; blocks,
+ * light and the edit counters may be touched by either the render or the
+ * simulation thread while it holds the world's monitor. Mesh workers see
+ * an immutable {@link ChunkMesher.Snapshot} instead.</p>
+ *
+ * <p>A chunk nobody has looked at for a while can {@link #dropMesh() drop
+ * its mesh} and then be {@link #pack packed}: its blocks shrink to a
+ * {@link ChunkCodec} payload and uniform light sections to a single value.
+ * Packing is invisible to callers; the first read or write of a packed
+ * chunk unpacks it.</p>
+ */
+final class Chunk {
+
+    /** Horizontal edge length in blocks. */
+    static final int SIZE = ChunkSection.SIZE;
+
+    /** Number of stacked sections covering the world height. */
+    static final int SECTIONS = World.HEIGHT / ChunkSection.SIZE;
+
+    /** Number of cells in a full column. */
+    static final int VOLUME = SECTIONS * ChunkSection.VOLUME;
+
+    /** Index delta to the +X neighbour. */
+    static final int DX = 1;
+
+    /** Index delta to the +Z neighbour. */
+    static final int DZ = SIZE;
+
+    /** Index delta to the +Y neighbour. */
+    static final int DY = SIZE * SIZE;
+
+    private static final float[] EMPTY = new float[0];
+
+    static {
+        // The heightmaps hold "one above the top block" in an unsigned byte.
+        if (World.HEIGHT > 255) {
+            throw new IllegalStateException("Chunk heightmaps need World.HEIGHT <= 255");
+        }
+    }
+
+    final int cx;
+    final int cz;
+
+    /**
+     * Palette storage, bottom section first; {@code null} in flat mode.
+     * Entries are {@code null} while the chunk is packed.
+     */
+    final ChunkSection[] sections;
+
+    /**
+     * Flat storage indexed by {@link #index}; {@code null} in palette mode
+     * and while packed. Replaced, never mutated, while a
+     * {@link #share() shared} copy is out.
+     */
+    byte[] blocks;
+
+    /** The blocks as a {@link ChunkCodec} payload while packed, else {@code null}. */
+    private byte[] packed;
+
+    /**
+     * While packed, the level of each light section that held one level
+     * throughout (its {@link NibbleArray} is then dropped), or -1 for a
+     * section kept as is.
+     */
+    private final byte[] packedLight = new byte[SECTIONS];
+
+    /**
+     * Per section (a single flag in flat mode): true while the current
+     * storage object is also held by a snapshot from {@link #share()}, so the
+     * next write must copy it first.
+     */
+    private final boolean[] shared;
+
+    /**
+     * Skylight per section, {@code 0..15} per cell in {@link #index} order
+     * within the section. Maintained by {@link SkyLight}. Uniform sections
+     * are {@code null} while packed.
+     */
+    final NibbleArray[] skyLight = new NibbleArray[SECTIONS];
+
+    /**
+     * One bit per cell, set when the block is solid, in {@link #index}
+     * order: bit {@code i & 63} of word {@code i >> 6}. A word is therefore
+     * four rows of 16 cells along X (Z {@code 4k..4k+3} of one layer), and
+     * each section owns 64 consecutive words. Kept current by {@link #set}
+     * and {@link #setAll}, and kept while packed so collision never unpacks.
+     */
+    private final long[] solid = new long[VOLUME / Long.SIZE];
+
+    /** Number of bits set in each section's part of {@link #solid}. */
+    private final int[] solidCells = new int[SECTIONS];
+
+    /**
+     * Per column, indexed {@code lz * SIZE + lx}: one above the highest
+     * solid block, 0 if none. What an entity lands on from above. Stored
+     * unsigned, so read with {@code & 0xFF}.
+     */
+    private final byte[] solidHeight = new byte[SIZE * SIZE];
+
+    /**
+     * Per column: one above the highest block with any
+     * {@link BlockType#lightOpacityId light opacity}, 0 if none. Skylight
+     * is full from here up. Unsigned like {@link #solidHeight}.
+     */
+    private final byte[] lightHeight = new byte[SIZE * SIZE];
+
+    /** Highest {@link #solidHeight} of any column, or -1 when it must be recomputed. */
+    private int topSolidHeight;
+
+    /** Opaque quads in {@link ChunkMesher}'s vertex layout. */
+    float[] opaqueVerts = EMPTY;
+
+    /** Translucent water quads, drawn after every opaque stream. */
+    float[] waterVerts = EMPTY;
+
+    /**
+     * GPU copies of the two streams, uploaded by the render thread when the
+     * VBO path is active; {@code null} when the stream is empty or not yet
+     * uploaded.
+     */
+    VertexBuffer opaqueBuffer;
+    VertexBuffer waterBuffer;
+
+    /** True when the streams changed since the buffers were uploaded. */
+    boolean buffersStale = true;
+
+    /** Vertex offset of each section's opaque quads, plus the stream length. */
+    int[] opaqueRanges = new int[SECTIONS + 1];
+
+    /** Vertex offset of each section's water quads, plus the stream length. */
+    int[] waterRanges = new int[SECTIONS + 1];
+
+    /**
+     * {@link SectionConnectivity} matrix per section, from the last mesh.
+     * Fully connected until then so an unmeshed chunk never hides others.
+     */
+    long[] connectivity = new long[SECTIONS];
+
+    /** Result of this frame's visibility test: true if any section is visible. */
+    boolean visible = true;
+
+    /** Value of the world's frame counter when this chunk was last visible. */
+    long lastVisibleFrame;
+
+    /**
+     * True once {@link #dropMesh()} has freed the streams; the chunk is not
+     * re-meshed until it is visible again.
+     */
+    boolean meshDropped;
+
+    /** Per-section result of this frame's visibility test. */
+    final boolean[] sectionVisible = new boolean[SECTIONS];
+
+    /** Per-section result of this frame's frustum test, before occlusion. */
+    final boolean[] sectionInFrustum = new boolean[SECTIONS];
+
+    /** True while {@link SkyLight} holds this chunk in its changed list. */
+    boolean lightChanged;
+
+    /** Bumped on every edit that can change this chunk's mesh. */
+    int version = 1;
+
+    /** {@link #version} the installed streams were built from. */
+    int meshedVersion;
+
+    /** True while a background rebuild of this chunk is queued or running. */
+    boolean meshPending;
+
+    /** Bumped on every block edit; never reset. Under the world's monitor. */
+    int editCount = 1;
+
+    /**
+     * {@link #editCount} as of the last save that reached disk. Written by
+     * the save thread, hence volatile; the chunk needs saving while the two
+     * differ.
+     */
+    volatile int savedEditCount;
+
+    /**
+     * Set when the world unloads this chunk, under the lock of its
+     * {@link RegionStore} if it has one, after which a save must not write
+     * this copy (the unload already wrote anything newer) and queued mesh
+     * jobs for it are skipped.
+     */
+    volatile boolean evicted;
+
+    Chunk(int cx, int cz, World.StorageMode mode) {
+        this.cx = cx;
+        this.cz = cz;
+        Arrays.fill(connectivity, SectionConnectivity.ALL);
+        Arrays.fill(sectionVisible, true);
+        for (int i = 0; i < SECTIONS; i++) {
+            skyLight[i] = new NibbleArray(ChunkSection.VOLUME);
+        }
+        if (mode == World.StorageMode.FLAT) {
+            sections = null;
+            blocks = new byte[VOLUME];
+            shared = new boolean[1];
+        } else {
+            shared = new boolean[SECTIONS];
+            sections = new ChunkSection[SECTIONS];
+            blocks = null;
+            for (int i = 0; i < SECTIONS; i++) {
+                sections[i] = new ChunkSection(BlockType.AIR.id());
+            }
+        }
+    }
+
+    /** @return the linear column index for chunk-local coordinates. */
+    static int index(int lx, int y, int lz) {
+        return (y << 8) | (lz << 4) | lx;
+    }
+
+    /**
+     * @param lx chunk-local X
+     * @param y  world Y
+     * @param lz chunk-local Z
+     * @return the block id at that cell
+     */
+    int get(int lx, int y, int lz) {
+        int i = index(lx, y, lz);
+        if (blocks != null) {
+            return blocks[i];
+        }
+        if (packed != null) unpack();
+        if (blocks != null) {
+            return blocks[i];
+        }
+        return sections[y >> 4].get(i & (ChunkSection.VOLUME - 1));
+    }
+
+    /**
+     * Store a block id.
+     *
+     * @param lx chunk-local X
+     * @param y  world Y
+     * @param lz chunk-local Z
+     * @param id block id to store
+     * @return the id previously stored at that cell
+     */
+    int set(int lx, int y, int lz, int id) {
+        int i = index(lx, y, lz);
+        if (packed != null) unpack();
+        if (blocks != null) {
+            int old = blocks[i];
+            if (old == id) return old;
+            if (shared[0]) {
+                blocks = blocks.clone();
+                shared[0] = false;
+            }
+            blocks[i] = (byte) id;
+            setSolid(i, id);
+            updateHeights(lx, y, lz, id);
+            return old;
+        }
+        int s = y >> 4;
+        if (shared[s]) {
+            sections[s] = new ChunkSection(sections[s]);
+            shared[s] = false;
+        }
+        setSolid(i, id);
+        int old = sections[s].set(i & (ChunkSection.VOLUME - 1), id);
+        updateHeights(lx, y, lz, id);
+        return old;
+    }
+
+    /**
+     * Keep both heightmaps current after {@code id} was stored at a cell:
+     * raise a column's height when a block lands on or above its top, and
+     * scan down only when the top block itself went away.
+     */
+    private void updateHeights(int lx, int y, int lz, int id) {
+        int column = (lz << 4) | lx;
+        int h = solidHeight[column] & 0xFF;
+        if (BlockType.isSolidId(id)) {
+            if (y >= h) {
+                solidHeight[column] = (byte) (y + 1);
+                if (y >= topSolidHeight && topSolidHeight >= 0) topSolidHeight = y + 1;
+            }
+        } else if (y == h - 1) {
+            int top = y - 1;
+            while (top >= 0 && !isSolid(lx, top, lz)) top--;
+            solidHeight[column] = (byte) (top + 1);
+            topSolidHeight = -1;
+        }
+        h = lightHeight[column] & 0xFF;
+        if (BlockType.lightOpacityId(id) != 0) {
+            if (y >= h) lightHeight[column] = (byte) (y + 1);
+        } else if (y == h - 1) {
+            int top = y - 1;
+            while (top >= 0 && BlockType.lightOpacityId(get(lx, top, lz)) == 0) top--;
+            lightHeight[column] = (byte) (top + 1);
+        }
+    }
+
+    /** @return one above the highest solid block in a column, 0 if none; never unpacks. */
+    int solidHeight(int lx, int lz) {
+        return solidHeight[(lz << 4) | lx] & 0xFF;
+    }
+
+    /**
+     * @return one above the highest light-absorbing block in a column, 0 if
+     *         none; never unpacks
+     */
+    int lightHeight(int lx, int lz) {
+        return lightHeight[(lz << 4) | lx] & 0xFF;
+    }
+
+    /** @return the highest {@link #solidHeight} in the chunk: every cell from there up is clear. */
+    int topSolidHeight() {
+        if (topSolidHeight < 0) {
+            int top = 0;
+            for (byte h : solidHeight) {
+                top = Math.max(top, h & 0xFF);
+            }
+            topSolidHeight = top;
+        }
+        return topSolidHeight;
+    }
+
+    private void setSolid(int i, int id) {
+        boolean isSolid = BlockType.isSolidId(id);
+        if (((solid[i >> 6] & (1L << i)) != 0) == isSolid) return;
+        solid[i >> 6] ^= 1L << i;
+        solidCells[i >> 12] += isSolid ? 1 : -1;
+    }
+
+    /** @return true if section {@code s} holds no solid block; never unpacks. */
+    boolean isSectionClear(int s) {
+        return solidCells[s] == 0;
+    }
+
+    /** @return true if the block at a chunk-local cell is solid; never unpacks. */
+    boolean isSolid(int lx, int y, int lz) {
+        int i = index(lx, y, lz);
+        return (solid[i >> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Test a run of cells along X with one mask.
+     *
+     * @param lx0 first chunk-local X, {@code 0..15}
+     * @param lx1 last chunk-local X, {@code lx0..15}
+     * @param y   world Y, {@code 0..HEIGHT-1}
+     * @param lz  chunk-local Z
+     * @return true if any cell of row ({@code y}, {@code lz}) from
+     *         {@code lx0} to {@code lx1} is solid
+     */
+    boolean anySolid(int lx0, int lx1, int y, int lz) {
+        int i = index(lx0, y, lz);
+        long run = (2L << (lx1 - lx0)) - 1;
+        return (solid[i >> 6] & (run << i)) != 0;
+    }
+
+    /**
+     * Replace every block in the column at once, as a load does.
+     *
+     * @param cells {@link #VOLUME} ids in {@link #index} order; copied, so
+     *              the caller may reuse it
+     */
+    void setAll(byte[] cells) {
+        if (packed != null) {
+            // Every block is about to be replaced; only the light needs restoring.
+            packed = null;
+            unpackLight();
+        }
+        if (sections == null) {
+            if (blocks == null || shared[0]) {
+                blocks = new byte[VOLUME];
+                shared[0] = false;
+            }
+            System.arraycopy(cells, 0, blocks, 0, VOLUME);
+        } else {
+            for (int s = 0; s < SECTIONS; s++) {
+                sections[s] = new ChunkSection(cells, s * ChunkSection.VOLUME);
+                shared[s] = false;
+            }
+        }
+        for (int w = 0; w < solid.length; w++) {
+            long bits = 0;
+            for (int b = 0, i = w << 6; b < Long.SIZE; b++, i++) {
+                if (BlockType.isSolidId(cells[i])) bits |= 1L << b;
+            }
+            solid[w] = bits;
+        }
+        for (int s = 0; s < SECTIONS; s++) {
+            int count = 0;
+            for (int w = s << 6; w < (s + 1) << 6; w++) {
+                count += Long.bitCount(solid[w]);
+            }
+            solidCells[s] = count;
+        }
+        for (int column = 0; column < SIZE * SIZE; column++) {
+            int solidTop = 0;
+            int lightTop = 0;
+            for (int i = (VOLUME - SIZE * SIZE) + column; i >= 0 && (solidTop == 0 || lightTop == 0); i -= DY) {
+                int id = cells[i];
+                if (solidTop == 0 && BlockType.isSolidId(id)) solidTop = (i >> 8) + 1;
+                if (lightTop == 0 && BlockType.lightOpacityId(id) != 0) lightTop = (i >> 8) + 1;
+            }
+            solidHeight[column] = (byte) solidTop;
+            lightHeight[column] = (byte) lightTop;
+        }
+        topSolidHeight = -1;
+    }
+
+    /**
+     * Hand out the current block storage as a read-only snapshot without
+     * copying it. The chunk copies a section (or the flat array) the first
+     * time it is written afterwards, so the snapshot stays frozen while the
+     * live chunk keeps changing.
+     *
+     * @return a view of the blocks as they are now
+     */
+    Frozen share() {
+        if (packed != null) {
+            return new Frozen(packed);
+        }
+        Arrays.fill(shared, true);
+        return new Frozen(blocks, sections == null ? null : sections.clone());
+    }
+
+    /**
+     * Blocks of a chunk as of one {@link #share()} call. Nothing reachable
+     * from it is written again, so it can be read from any thread once
+     * safely published.
+     */
+    static final class Frozen {
+        private final byte[] blocks;
+        private final ChunkSection[] sections;
+
+        /** Payload of a chunk that was packed when shared, else {@code null}. */
+        private final byte[] payload;
+
+        /** {@link #payload} expanded on the first {@link #get}. */
+        private byte[] decoded;
+
+        private Frozen(byte[] blocks, ChunkSection[] sections) {
+            this.blocks = blocks;
+            this.sections = sections;
+            payload = null;
+        }
+
+        private Frozen(byte[] payload) {
+            blocks = null;
+            sections = null;
+            this.payload = payload;
+        }
+
+        /** @return the block id at a chunk-local cell. */
+        int get(int lx, int y, int lz) {
+            int i = index(lx, y, lz);
+            if (blocks != null) {
+                return blocks[i];
+            }
+            if (sections != null) {
+                return sections[y >> 4].get(i & (ChunkSection.VOLUME - 1));
+            }
+            return decoded()[i];
+        }
+
+        /**
+         * @return the {@link ChunkCodec} payload this chunk was packed into,
+         *         ready to write as is, or {@code null} if it wasn't packed
+         */
+        byte[] payload() {
+            return payload;
+        }
+
+        private synchronized byte[] decoded() {
+            if (decoded == null) {
+                decoded = decodePayload(payload);
+            }
+            return decoded;
+        }
+    }
+
+    /** @return the skylight level ({@code 0..15}) at a chunk-local cell. */
+    int skyLight(int lx, int y, int lz) {
+        if (packed != null) unpack();
+        return skyLight[y >> 4].get(index(lx, y, lz) & (ChunkSection.VOLUME - 1));
+    }
+
+    /** Store a skylight level ({@code 0..15}) at a chunk-local cell. */
+    void setSkyLight(int lx, int y, int lz, int level) {
+        if (packed != null) unpack();
+        skyLight[y >> 4].set(index(lx, y, lz) & (ChunkSection.VOLUME - 1), level);
+    }
+
+    /**
+     * Give the caller a flat, {@link #index}-ordered view of the column. In
+     * flat mode that is the live array; in palette mode the sections are
+     * decoded into {@code scratch}.
+     *
+     * @param scratch a {@link #VOLUME}-sized buffer the caller owns
+     * @return an array holding every cell of the column; do not modify it
+     */
+    byte[] flatView(byte[] scratch) {
+        if (packed != null) unpack();
+        if (blocks != null) {
+            return blocks;
+        }
+        for (int i = 0; i < SECTIONS; i++) {
+            sections[i].unpackInto(scratch, i * ChunkSection.VOLUME);
+        }
+        return scratch;
+    }
+
+    /**
+     * @return approximate heap used by this chunk's block storage in bytes,
+     *         including the solid bitset and heightmaps
+     */
+    long storageBytes() {
+        long maps = 16L + 8L * solid.length + solidHeight.length + lightHeight.length;
+        if (packed != null) {
+            return maps + packed.length;
+        }
+        if (blocks != null) {
+            return maps + blocks.length;
+        }
+        long bytes = maps;
+        for (ChunkSection s : sections) {
+            bytes += s.footprintBytes();
+        }
+        return bytes;
+    }
+
+    /** @return approximate heap used by this chunk's skylight in bytes. */
+    long lightBytes() {
+        long bytes = 0;
+        for (NibbleArray light : skyLight) {
+            bytes += light != null ? light.footprintBytes() : 1;
+        }
+        return bytes;
+    }
+
+    /** @return heap used by this chunk's vertex streams in bytes. */
+    long meshBytes() {
+        return 4L * (opaqueVerts.length + waterVerts.length);
+    }
+
+    /** @return true while the blocks are held as a payload; see {@link #pack}. */
+    boolean isPacked() {
+        return packed != null;
+    }
+
+    /**
+     * Free the vertex streams, leaving the chunk to be re-meshed when it is
+     * next visible. The caller deletes the GPU buffers.
+     */
+    void dropMesh() {
+        opaqueVerts = EMPTY;
+        waterVerts = EMPTY;
+        Arrays.fill(opaqueRanges, 0);
+        Arrays.fill(waterRanges, 0);
+        meshedVersion = 0;
+        meshDropped = true;
+    }
+
+    /**
+     * Shrink the blocks to a {@link ChunkCodec} payload and drop light
+     * sections that hold one level throughout. The payload is what a save
+     * writes, so a packed chunk is saved or unloaded without re-encoding.
+     *
+     * @param deflateLevel Deflate level for the payload, as for
+     *                     {@link ChunkCodec#encode}
+     */
+    void pack(int deflateLevel) {
+        if (packed != null) return;
+        byte[] payload = ChunkCodec.encode(share(), deflateLevel);
+        for (int s = 0; s < SECTIONS; s++) {
+            int level = skyLight[s].uniformValue();
+            packedLight[s] = (byte) level;
+            if (level >= 0) skyLight[s] = null;
+        }
+        packed = payload;
+        blocks = null;
+        if (sections != null) {
+            Arrays.fill(sections, null);
+        }
+        Arrays.fill(shared, false);
+    }
+
+    /** Restore the storage {@link #pack} released. */
+    private void unpack() {
+        byte[] payload = packed;
+        packed = null;
+        unpackLight();
+        byte[] cells = decodePayload(payload);
+        if (sections == null) {
+            blocks = cells;
+            return;
+        }
+        for (int s = 0; s < SECTIONS; s++) {
+            sections[s] = new ChunkSection(cells, s * ChunkSection.VOLUME);
+        }
+    }
+
+    private void unpackLight() {
+        for (int s = 0; s < SECTIONS; s++) {
+            if (skyLight[s] == null) {
+                skyLight[s] = new NibbleArray(ChunkSection.VOLUME);
+                skyLight[s].fill(packedLight[s]);
+            }
+        }
+    }
+
+    /** Expand a payload this class produced; it can't be malformed. */
+    private static byte[] decodePayload(byte[] payload) {
+        try {
+            return ChunkCodec.decodeCells(payload, new byte[VOLUME]);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt packed chunk", e);
+        }
+    }
+}
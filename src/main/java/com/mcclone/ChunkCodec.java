@@ -0,0 +1,278 @@
+/**
+ * Binary encoding of one chunk column's blocks for region files.
+ */
+
+package com.mcclone;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes and decodes the blocks of one chunk column as a region-file
+ * payload.
+ *
+ * <p>A payload starts with one encoding byte so new encodings can be added
+ * without a format bump:</p>
+ * <ul>
+ *   <li>{@link #ENCODING_INT_RLE}: run-length {@code (int blockId, int
+ *       runLength)} pairs, 8 bytes per run. Written by save version 3; read
+ *       only.</li>
+ *   <li>{@link #ENCODING_VARINT_RLE}: the same runs as unsigned LEB128
+ *       varints, so an id and a run shorter than 128 take one byte each.</li>
+ *   <li>{@link #ENCODING_VARINT_RLE_DEFLATE}: the varint body's length as a
+ *       varint, then the body compressed with {@link Deflater}.</li>
+ * </ul>
+ *
+ * <p>Runs cover all {@link Chunk#VOLUME} cells in {@link Chunk#index}
+ * order.</p>
+ */
+final class ChunkCodec {
+
+    /** Run-length int pairs in column index order. */
+    static final int ENCODING_INT_RLE = 1;
+
+    /** Run-length varint pairs in column index order. */
+    static final int ENCODING_VARINT_RLE = 2;
+
+    /** {@link #ENCODING_VARINT_RLE} compressed with Deflate. */
+    static final int ENCODING_VARINT_RLE_DEFLATE = 3;
+
+    /** Longest varint body: every cell its own run, up to 2 bytes of id and 1 of run. */
+    private static final int MAX_VARINT_BODY = Chunk.VOLUME * 3;
+
+    private ChunkCodec() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Encode with the legacy int RLE; kept for benchmarks and round-trip
+     * checks against older saves.
+     *
+     * @param chunk the chunk's blocks
+     * @return the encoded payload
+     */
+    static byte[] encodeIntRle(Chunk.Frozen chunk) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ENCODING_INT_RLE);
+            int runId = chunk.get(0, 0, 0);
+            int runLen = 0;
+            for (int i = 0; i < Chunk.VOLUME; i++) {
+                int id = chunk.get(i & 15, i >> 8, (i >> 4) & 15);
+                if (id == runId) {
+                    runLen++;
+                } else {
+                    out.writeInt(runId);
+                    out.writeInt(runLen);
+                    runId = id;
+                    runLen = 1;
+                }
+            }
+            out.writeInt(runId);
+            out.writeInt(runLen);
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory stream failed", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encode as varint RLE, optionally deflated.
+     *
+     * @param chunk        the chunk's blocks
+     * @param deflateLevel {@link Deflater} level 1–9, or 0 to store the
+     *                     varint body uncompressed
+     * @return the encoded payload
+     */
+    static byte[] encode(Chunk.Frozen chunk, int deflateLevel) {
+        byte[] body = new byte[1 + MAX_VARINT_BODY];
+        int n = 1;
+        int runId = chunk.get(0, 0, 0);
+        int runLen = 0;
+        for (int i = 0; i < Chunk.VOLUME; i++) {
+            int id = chunk.get(i & 15, i >> 8, (i >> 4) & 15);
+            if (id == runId) {
+                runLen++;
+            } else {
+                n = putVarint(body, n, runId);
+                n = putVarint(body, n, runLen);
+                runId = id;
+                runLen = 1;
+            }
+        }
+        n = putVarint(body, n, runId);
+        n = putVarint(body, n, runLen);
+        if (deflateLevel <= 0) {
+            body[0] = ENCODING_VARINT_RLE;
+            return Arrays.copyOf(body, n);
+        }
+
+        int rawLength = n - 1;
+        Deflater deflater = new Deflater(deflateLevel);
+        try {
+            deflater.setInput(body, 1, rawLength);
+            deflater.finish();
+            // Header plus a worst-case deflate expansion of a few bytes per 16 KiB.
+            byte[] out = new byte[1 + 5 + rawLength + rawLength / 1000 + 64];
+            out[0] = ENCODING_VARINT_RLE_DEFLATE;
+            int pos = putVarint(out, 1, rawLength);
+            while (!deflater.finished()) {
+                if (pos == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                pos += deflater.deflate(out, pos, out.length - pos);
+            }
+            return Arrays.copyOf(out, pos);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Replace a chunk's blocks with a decoded payload. Lighting and meshes
+     * are left to the caller.
+     *
+     * @param data  a payload in any supported encoding
+     * @param chunk the chunk to fill
+     * @throws IOException if the payload is malformed
+     */
+    static void decode(byte[] data, Chunk chunk) throws IOException {
+        decode(data, chunk, new byte[Chunk.VOLUME]);
+    }
+
+    /**
+     * {@link #decode(byte[], Chunk)} with a caller-owned cell buffer, for
+     * loops that decode many chunks. Runs are expanded into {@code cells}
+     * with {@link Arrays#fill} and the chunk is then replaced in one
+     * {@link Chunk#setAll} call rather than cell by cell.
+     *
+     * @param cells scratch of {@link Chunk#VOLUME} bytes; overwritten
+     */
+    static void decode(byte[] data, Chunk chunk, byte[] cells) throws IOException {
+        chunk.setAll(decodeCells(data, cells));
+    }
+
+    /**
+     * Expand a payload into a flat cell array without touching any chunk.
+     *
+     * @param cells {@link Chunk#VOLUME} bytes to fill, in {@link Chunk#index} order
+     * @return {@code cells}
+     * @throws IOException if the payload is malformed
+     */
+    static byte[] decodeCells(byte[] data, byte[] cells) throws IOException {
+        if (data.length == 0) {
+            throw new IOException("Empty chunk payload");
+        }
+        int encoding = data[0] & 0xFF;
+        switch (encoding) {
+            case ENCODING_INT_RLE:
+                decodeIntRle(data, cells);
+                break;
+            case ENCODING_VARINT_RLE:
+                decodeVarintRle(data, 1, data.length, cells);
+                break;
+            case ENCODING_VARINT_RLE_DEFLATE:
+                byte[] body = inflate(data);
+                decodeVarintRle(body, 0, body.length, cells);
+                break;
+            default:
+                throw new IOException("Unknown chunk encoding " + encoding);
+        }
+        return cells;
+    }
+
+    private static void decodeIntRle(byte[] data, byte[] cells) throws IOException {
+        if ((data.length - 1) % 8 != 0) {
+            throw new IOException("Truncated chunk payload");
+        }
+        IntBuffer in = ByteBuffer.wrap(data, 1, data.length - 1).slice().asIntBuffer();
+        int i = 0;
+        while (i < Chunk.VOLUME) {
+            if (in.remaining() < 2) throw new IOException("Truncated chunk payload");
+            i = fillRun(cells, i, in.get(), in.get());
+        }
+    }
+
+    private static void decodeVarintRle(byte[] data, int pos, int end, byte[] cells) throws IOException {
+        int i = 0;
+        while (i < Chunk.VOLUME) {
+            // Each varint is at most 5 bytes; decode id and length inline.
+            int id = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (pos >= end || shift > 28) throw new IOException("Truncated chunk payload");
+                int b = data[pos++];
+                id |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            int len = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (pos >= end || shift > 28) throw new IOException("Truncated chunk payload");
+                int b = data[pos++];
+                len |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            i = fillRun(cells, i, id, len);
+        }
+        if (pos != end) {
+            throw new IOException("Trailing bytes in chunk payload");
+        }
+    }
+
+    /** Validate one run and store it; @return the index after the run. */
+    private static int fillRun(byte[] cells, int i, int id, int len) throws IOException {
+        if (len <= 0 || len > Chunk.VOLUME - i || BlockType.fromId(id).id() != id) {
+            throw new IOException("Corrupt chunk payload");
+        }
+        Arrays.fill(cells, i, i + len, (byte) id);
+        return i + len;
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        int pos = 1;
+        int rawLength = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (pos >= data.length || shift > 28) throw new IOException("Truncated chunk payload");
+            int b = data[pos++];
+            rawLength |= (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        if (rawLength <= 0 || rawLength > MAX_VARINT_BODY) {
+            throw new IOException("Corrupt chunk payload length " + rawLength);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, pos, data.length - pos);
+            byte[] body = new byte[rawLength];
+            int n = 0;
+            while (n < rawLength) {
+                int got = inflater.inflate(body, n, rawLength - n);
+                if (got == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated compressed chunk payload");
+                }
+                n += got;
+            }
+            return body;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed chunk payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Write {@code value} (non-negative) as an unsigned LEB128 varint; @return the new position. */
+    private static int putVarint(byte[] buf, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+}
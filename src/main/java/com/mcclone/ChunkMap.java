@@ -0,0 +1,200 @@
+/**
+ * Open-addressing hash map from chunk coordinates to values.
+ */
+
+package com.mcclone;
+
+import java.util.Arrays;
+
+/**
+ * A map keyed by chunk coordinates ({@code cx}, {@code cz}), packed into one
+ * {@code long} by {@link #key}.
+ *
+ * <p>Keys and values sit in two parallel arrays probed linearly from a
+ * Fibonacci hash of the key, so a lookup is a multiply, a shift and usually
+ * one or two array reads, with no boxing and no per-entry node. Removal
+ * shifts later entries of the probe run back instead of leaving tombstones,
+ * so chunks streaming in and out forever never degrade the table. The load
+ * factor stays at or under one half.</p>
+ *
+ * <p>Iterate by slot: {@link #capacity()} slots, each {@link #valueAt} is
+ * {@code null} when empty. Not thread-safe.</p>
+ *
+ * @param <V> value type
+ */
+final class ChunkMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int shift;
+
+    ChunkMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * @param expected number of entries the map should hold without resizing
+     */
+    ChunkMap(int expected) {
+        allocate(tableSize(expected));
+    }
+
+    /** @return {@code cx} and {@code cz} packed into one key. */
+    static long key(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    /** @return the chunk X of a packed key. */
+    static int keyX(long key) {
+        return (int) (key >> 32);
+    }
+
+    /** @return the chunk Z of a packed key. */
+    static int keyZ(long key) {
+        return (int) key;
+    }
+
+    /** @return the value stored for the chunk, or {@code null}. */
+    @SuppressWarnings("unchecked")
+    V get(int cx, int cz) {
+        long k = key(cx, cz);
+        for (int i = slot(k); ; i = (i + 1) & mask) {
+            Object v = values[i];
+            if (v == null) return null;
+            if (keys[i] == k) return (V) v;
+        }
+    }
+
+    /** @return true if a value is stored for the chunk. */
+    boolean containsKey(int cx, int cz) {
+        return get(cx, cz) != null;
+    }
+
+    /**
+     * Store a value for the chunk.
+     *
+     * @param value non-null value
+     * @return the value it replaced, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    V put(int cx, int cz, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null value for chunk (" + cx + ", " + cz + ")");
+        }
+        long k = key(cx, cz);
+        int i = slot(k);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == k) {
+                Object old = values[i];
+                values[i] = value;
+                return (V) old;
+            }
+        }
+        keys[i] = k;
+        values[i] = value;
+        if (++size > (mask + 1) >> 1) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /** @return the value removed for the chunk, or {@code null}. */
+    @SuppressWarnings("unchecked")
+    V remove(int cx, int cz) {
+        long k = key(cx, cz);
+        for (int i = slot(k); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == k) {
+                Object old = values[i];
+                closeGap(i);
+                size--;
+                return (V) old;
+            }
+        }
+        return null;
+    }
+
+    /** @return number of entries. */
+    int size() {
+        return size;
+    }
+
+    /** @return number of slots; iterate {@code 0..capacity()-1} with {@link #valueAt}. */
+    int capacity() {
+        return values.length;
+    }
+
+    /** @return the value in a slot, or {@code null} if the slot is empty. */
+    @SuppressWarnings("unchecked")
+    V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    /** @return the packed key in an occupied slot. */
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /** Remove every entry, keeping the current table. */
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Backward-shift deletion: empty slot {@code gap}, then move each later
+     * entry of the probe run that may legally sit there into it.
+     */
+    private void closeGap(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == null) break;
+            int home = slot(keys[i]);
+            // Move the entry if its home does not lie cyclically in (gap, i].
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        values[gap] = null;
+    }
+
+    private int slot(long k) {
+        return (int) ((k * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] == null) continue;
+            int i = slot(oldKeys[j]);
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private static int tableSize(int expected) {
+        int n = MIN_CAPACITY;
+        while (n >> 1 < expected) {
+            n <<= 1;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,560 @@
+/**
+ * Builds render batches for one chunk from an immutable block snapshot.
+ */
+
+package com.mcclone;
+
+import java.util.Arrays;
+
+/**
+ * Chunk mesher.
+ *
+ * <p>Meshing reads only a {@link Snapshot} — a copy of the chunk's blocks
+ * padded with a one-block border taken from its four neighbours — so it never
+ * touches live {@link World} state and can run on any thread. Inside the
+ * padded array every neighbour is a constant index delta away, with no border
+ * special-casing at all.</p>
+ *
+ * <p>Output is two vertex streams per chunk — everything opaque, and water
+ * (drawn last with blending) — both textured from the {@link TextureAtlas}.
+ * Each vertex is {@link #FLOATS_PER_VERTEX} floats: the unwrapped atlas
+ * coordinate {@code (s, t)}, the origin {@code (u0, v0)} of the face's tile,
+ * the face's colour and the position {@code (x, y, z)}; four vertices make a
+ * quad. The colour is the {@link SkyLight} level of the cell the face looks
+ * into, mapped through {@link #SHADE} and stored as three unsigned bytes in
+ * the bits of one float (see {@link #packColor}). A merged
+ * {@code w × h} quad's {@code (s, t)} runs {@code w} / {@code h} tiles past
+ * its origin and {@link TilingShader} wraps it back into the tile.</p>
+ *
+ * <p>Each mesher owns reusable scratch buffers and is therefore not
+ * thread-safe; give every worker thread its own instance.</p>
+ */
+final class ChunkMesher {
+
+    /** Face direction constants used by {@link #addFace}. */
+    static final int FACE_TOP = 0;
+    static final int FACE_BOTTOM = 1;
+    static final int FACE_POS_Z = 2;
+    static final int FACE_NEG_Z = 3;
+    static final int FACE_NEG_X = 4;
+    static final int FACE_POS_X = 5;
+
+    /** Floats per emitted vertex: s, t, u0, v0, rgb, x, y, z. */
+    static final int FLOATS_PER_VERTEX = 8;
+
+    /** Float offset of the packed colour within a vertex. */
+    static final int COLOR_OFFSET = 4;
+
+    /** Float offset of the position within a vertex. */
+    static final int POSITION_OFFSET = 5;
+
+    /** Horizontal size of a chunk in blocks. */
+    private static final int CHUNK_SIZE = Chunk.SIZE;
+
+    /** Padded edge length: the chunk plus one neighbour cell on each side. */
+    static final int PADDED = CHUNK_SIZE + 2;
+
+    /** Padded index delta to the +X neighbour. */
+    private static final int PDX = 1;
+
+    /** Padded index delta to the +Z neighbour. */
+    private static final int PDZ = PADDED;
+
+    /** Padded index delta to the +Y neighbour. */
+    private static final int PDY = PADDED * PADDED;
+
+    /** Number of cells in a padded snapshot. */
+    static final int PADDED_VOLUME = PDY * World.HEIGHT;
+
+    /** Sentinel neighbour id for the cell below y = 0, which hides bottom faces. */
+    private static final int BELOW_WORLD = -1;
+
+    /** Merge-key flag marking a lowered still-water top (its own merge class). */
+    private static final int MERGE_LOWERED_TOP = 1 << 16;
+
+    /** Merge-key bits holding the atlas tile plus one. */
+    private static final int MERGE_TILE_MASK = MERGE_LOWERED_TOP - 1;
+
+    /** Merge-key shift of the face's light level, so only equally lit faces merge. */
+    private static final int MERGE_LIGHT_SHIFT = 17;
+
+    /**
+     * Face brightness for each skylight level, Minecraft's curve
+     * {@code (1 - f) / (3f + 1)} with {@code f = 1 - level / 15}, lifted by a
+     * 5% floor so unlit caves are dim rather than black.
+     */
+    private static final float[] SHADE = new float[SkyLight.MAX + 1];
+
+    static {
+        for (int level = 0; level <= SkyLight.MAX; level++) {
+            float f = 1f - level / (float) SkyLight.MAX;
+            SHADE[level] = (1f - f) / (f * 3f + 1f) * 0.95f + 0.05f;
+        }
+    }
+
+    /**
+     * Height of a still-water surface block, as a fraction of a full block.
+     * Minecraft renders still liquids 2 pixels (2/16) below the block top so
+     * the waterline reads clearly against neighbouring solid blocks; clones
+     * universally copy the same 14/16 value.
+     */
+    private static final float WATER_SURFACE_HEIGHT = 14f / 16f;
+
+    /** Per-direction merge keys reused by the greedy mesher. */
+    private final int[][] faceMasks = new int[6][Chunk.VOLUME];
+
+    /** Flood-fill scratch for per-section connectivity. */
+    private final SectionConnectivity connectivity = new SectionConnectivity();
+
+    /**
+     * Immutable input to a mesh build: the chunk's cells plus a one-block
+     * border from each horizontal neighbour, captured at {@link #version}.
+     */
+    static final class Snapshot {
+        final Chunk chunk;
+        final int version;
+        final boolean greedy;
+
+        /** Padded cells; index with {@link ChunkMesher#paddedIndex}. */
+        final byte[] cells;
+
+        /** Padded skylight levels, same layout as {@link #cells}. */
+        final byte[] light;
+
+        /** GL-space X of the chunk's first column. */
+        final float originX;
+
+        /** GL-space Z of the chunk's first row. */
+        final float originZ;
+
+        Snapshot(Chunk chunk, int version, boolean greedy, byte[] cells, byte[] light,
+                 float originX, float originZ) {
+            this.chunk = chunk;
+            this.version = version;
+            this.greedy = greedy;
+            this.cells = cells;
+            this.light = light;
+            this.originX = originX;
+            this.originZ = originZ;
+        }
+    }
+
+    /**
+     * Finished vertex streams for one chunk, tagged with the snapshot
+     * version. Both streams are ordered by section, bottom first, so each
+     * section's quads can be drawn on their own.
+     */
+    static final class Result {
+        final Chunk chunk;
+        final int version;
+
+        /** Opaque geometry. */
+        final float[] opaque;
+
+        /** Translucent water geometry. */
+        final float[] water;
+
+        /** Vertex offset of each section's first opaque quad, plus the total. */
+        final int[] opaqueRanges;
+
+        /** Vertex offset of each section's first water quad, plus the total. */
+        final int[] waterRanges;
+
+        /** {@link SectionConnectivity} matrix per section. */
+        final long[] connectivity;
+
+        Result(Chunk chunk, int version, float[] opaque, float[] water,
+               int[] opaqueRanges, int[] waterRanges, long[] connectivity) {
+            this.chunk = chunk;
+            this.version = version;
+            this.opaque = opaque;
+            this.water = water;
+            this.opaqueRanges = opaqueRanges;
+            this.waterRanges = waterRanges;
+            this.connectivity = connectivity;
+        }
+
+        /** @return vertices across both streams. */
+        int vertexCount() {
+            return (opaque.length + water.length) / FLOATS_PER_VERTEX;
+        }
+    }
+
+    /**
+     * @param px padded X ({@code 0} and {@code PADDED-1} are neighbour cells)
+     * @param y  world Y
+     * @param pz padded Z
+     * @return index into {@link Snapshot#cells}
+     */
+    static int paddedIndex(int px, int y, int pz) {
+        return y * PDY + pz * PDZ + px;
+    }
+
+    /**
+     * Build the opaque and water vertex streams for one snapshot, split by
+     * section, along with each section's face connectivity.
+     *
+     * @param snap the chunk snapshot to mesh
+     * @return the finished streams, tagged with the snapshot's version
+     */
+    Result mesh(Snapshot snap) {
+        FaceList[] opaque = new FaceList[Chunk.SECTIONS];
+        FaceList[] water = new FaceList[Chunk.SECTIONS];
+        for (int i = 0; i < Chunk.SECTIONS; i++) {
+            opaque[i] = new FaceList();
+            water[i] = new FaceList();
+        }
+        byte[] cells = snap.cells;
+        byte[] light = snap.light;
+        boolean greedy = snap.greedy;
+        if (greedy) {
+            for (int[] mask : faceMasks) {
+                Arrays.fill(mask, 0);
+            }
+        }
+        for (int y = 0; y < World.HEIGHT; y++) {
+            for (int lz = 0; lz < CHUNK_SIZE; lz++) {
+                int idx = paddedIndex(1, y, lz + 1);
+                int cidx = Chunk.index(0, y, lz);
+                for (int lx = 0; lx < CHUNK_SIZE; lx++, idx++, cidx++) {
+                    int id = cells[idx];
+                    if (id == World.BLOCK_TYPE_AIR) continue;
+
+                    int above = y + 1 < World.HEIGHT ? cells[idx + PDY] : World.BLOCK_TYPE_AIR;
+                    int below = y > 0 ? cells[idx - PDY] : BELOW_WORLD;
+                    int north = cells[idx - PDZ];
+                    int south = cells[idx + PDZ];
+                    int west = cells[idx - PDX];
+                    int east = cells[idx + PDX];
+                    // Each face is lit by the cell it looks into; the sky
+                    // above the world is fully lit.
+                    int lightAbove = y + 1 < World.HEIGHT ? light[idx + PDY] : SkyLight.MAX;
+                    int lightBelow = y > 0 ? light[idx - PDY] : 0;
+
+                    // Surface water (no water directly above) is rendered
+                    // slightly shorter than a full block, like Minecraft, so
+                    // the waterline is visible against the surrounding land.
+                    boolean lowered = id == World.BLOCK_TYPE_WATER && above != World.BLOCK_TYPE_WATER;
+
+                    if (greedy) {
+                        int flag = lowered ? MERGE_LOWERED_TOP : 0;
+                        if (showFace(id, above)) {
+                            faceMasks[FACE_TOP][cidx] = mergeKey(FACE_TOP, id, flag, lightAbove);
+                        }
+                        if (showFace(id, below)) {
+                            faceMasks[FACE_BOTTOM][cidx] = mergeKey(FACE_BOTTOM, id, flag, lightBelow);
+                        }
+                        if (showFace(id, north)) {
+                            faceMasks[FACE_POS_Z][cidx] = mergeKey(FACE_POS_Z, id, flag, light[idx - PDZ]);
+                        }
+                        if (showFace(id, south)) {
+                            faceMasks[FACE_NEG_Z][cidx] = mergeKey(FACE_NEG_Z, id, flag, light[idx + PDZ]);
+                        }
+                        if (showFace(id, west)) {
+                            faceMasks[FACE_NEG_X][cidx] = mergeKey(FACE_NEG_X, id, flag, light[idx - PDX]);
+                        }
+                        if (showFace(id, east)) {
+                            faceMasks[FACE_POS_X][cidx] = mergeKey(FACE_POS_X, id, flag, light[idx + PDX]);
+                        }
+                        continue;
+                    }
+                    float wx = snap.originX + lx;
+                    float wy = y;
+                    float wz = snap.originZ - lz;
+                    float top = lowered ? WATER_SURFACE_HEIGHT : 1f;
+                    FaceList list = (id == World.BLOCK_TYPE_WATER ? water : opaque)[y >> 4];
+                    if (showFace(id, above)) addFace(list, id, FACE_TOP, lightAbove, wx, wy, wz, top);
+                    if (showFace(id, below)) addFace(list, id, FACE_BOTTOM, lightBelow, wx, wy, wz, top);
+                    if (showFace(id, north)) addFace(list, id, FACE_POS_Z, light[idx - PDZ], wx, wy, wz, top);
+                    if (showFace(id, south)) addFace(list, id, FACE_NEG_Z, light[idx + PDZ], wx, wy, wz, top);
+                    if (showFace(id, west)) addFace(list, id, FACE_NEG_X, light[idx - PDX], wx, wy, wz, top);
+                    if (showFace(id, east)) addFace(list, id, FACE_POS_X, light[idx + PDX], wx, wy, wz, top);
+                }
+            }
+        }
+        if (greedy) {
+            for (int face = 0; face < 6; face++) {
+                mergeFaces(opaque, water, face, faceMasks[face], snap.originX, snap.originZ);
+            }
+        }
+        int[] opaqueRanges = new int[Chunk.SECTIONS + 1];
+        int[] waterRanges = new int[Chunk.SECTIONS + 1];
+        float[] opaqueVerts = concat(opaque, opaqueRanges);
+        float[] waterVerts = concat(water, waterRanges);
+        long[] conn = new long[Chunk.SECTIONS];
+        for (int i = 0; i < Chunk.SECTIONS; i++) {
+            conn[i] = connectivity.compute(cells, i);
+        }
+        return new Result(snap.chunk, snap.version, opaqueVerts, waterVerts,
+                opaqueRanges, waterRanges, conn);
+    }
+
+    /**
+     * Join per-section lists into one stream.
+     *
+     * @param lists  one list per section, bottom first
+     * @param ranges receives each list's first vertex, then the total
+     * @return the joined vertices
+     */
+    private static float[] concat(FaceList[] lists, int[] ranges) {
+        int total = 0;
+        for (FaceList l : lists) {
+            total += l.size;
+        }
+        float[] out = new float[total];
+        int pos = 0;
+        for (int i = 0; i < lists.length; i++) {
+            ranges[i] = pos / FLOATS_PER_VERTEX;
+            System.arraycopy(lists[i].data, 0, out, pos, lists[i].size);
+            pos += lists[i].size;
+        }
+        ranges[lists.length] = pos / FLOATS_PER_VERTEX;
+        return out;
+    }
+
+    /**
+     * Face-culling test: should block {@code id}'s face toward a neighbour
+     * holding {@code neighbour} be emitted? Opaque neighbours hide the face;
+     * two adjacent water blocks also hide their shared faces so the sea isn't
+     * full of internal quads.
+     *
+     * @param id        the block id of the face's owner
+     * @param neighbour the neighbour's id, or {@link #BELOW_WORLD}
+     * @return true if the face should be emitted, false if it is hidden
+     */
+    private static boolean showFace(int id, int neighbour) {
+        if (neighbour == BELOW_WORLD || BlockType.isOpaqueId(neighbour)) return false;
+        return !(id == World.BLOCK_TYPE_WATER && neighbour == World.BLOCK_TYPE_WATER);
+    }
+
+    /**
+     * Merge key for one exposed face in greedy mode: faces merge only when
+     * their keys match, i.e. same direction mask, same atlas tile, same
+     * lowered-water-top state and same light level. Zero means "no face".
+     */
+    private static int mergeKey(int face, int id, int lowered, int light) {
+        int tile = TextureAtlas.tile(face, id);
+        return tile < 0 ? 0 : (tile + 1) | lowered | (light << MERGE_LIGHT_SHIFT);
+    }
+
+    /**
+     * Greedy-merge one direction's face mask into maximal rectangles and
+     * emit them. Each slice perpendicular to the face normal is scanned in
+     * row order; a run is widened along the first in-plane axis while keys
+     * match, then grown along the second axis while every cell of the next
+     * row matches too. Consumed cells are cleared so they are emitted once.
+     *
+     * <p>Lowered water tops only ever merge sideways: their top edge sits
+     * below the block boundary, so stacking them vertically would leave a
+     * gap. Side rectangles also stop at section boundaries so every quad
+     * belongs to exactly one section's range.</p>
+     *
+     * @param opaque per-section streams for every tile except water
+     * @param water  per-section streams for the water tile
+     * @param mask   per-cell merge keys in {@link Chunk#index} order; cleared
+     * @param ox     GL-space X of the chunk's first column
+     * @param oz     GL-space Z of the chunk's first row
+     */
+    private static void mergeFaces(FaceList[] opaque, FaceList[] water, int face, int[] mask,
+                                   float ox, float oz) {
+        boolean vertical = face == FACE_TOP || face == FACE_BOTTOM;
+        boolean xPlane = face == FACE_NEG_X || face == FACE_POS_X;
+        // Slice axis, then in-plane U (width) and V (height) axes.
+        int slices = vertical ? World.HEIGHT : CHUNK_SIZE;
+        int sliceStep = vertical ? Chunk.DY : (xPlane ? Chunk.DX : Chunk.DZ);
+        int uStep = xPlane ? Chunk.DZ : Chunk.DX;
+        int vCount = vertical ? CHUNK_SIZE : World.HEIGHT;
+        int vStep = vertical ? Chunk.DZ : Chunk.DY;
+
+        for (int s = 0; s < slices; s++) {
+            int base = s * sliceStep;
+            for (int v = 0; v < vCount; v++) {
+                for (int u = 0; u < CHUNK_SIZE; u++) {
+                    int start = base + u * uStep + v * vStep;
+                    int key = mask[start];
+                    if (key == 0) continue;
+
+                    int w = 1;
+                    while (u + w < CHUNK_SIZE && mask[start + w * uStep] == key) {
+                        w++;
+                    }
+                    int h = 1;
+                    boolean stackable = vertical || (key & MERGE_LOWERED_TOP) == 0;
+                    grow:
+                    while (stackable && v + h < vCount
+                            && (vertical || ((v + h) & (ChunkSection.SIZE - 1)) != 0)) {
+                        int row = start + h * vStep;
+                        for (int k = 0; k < w; k++) {
+                            if (mask[row + k * uStep] != key) break grow;
+                        }
+                        h++;
+                    }
+                    for (int dv = 0; dv < h; dv++) {
+                        int row = start + dv * vStep;
+                        for (int k = 0; k < w; k++) {
+                            mask[row + k * uStep] = 0;
+                        }
+                    }
+
+                    // Local min corner of the rectangle.
+                    int lx = xPlane ? s : u;
+                    int lz = xPlane ? u : (vertical ? v : s);
+                    int y = vertical ? s : v;
+                    float top = (key & MERGE_LOWERED_TOP) != 0 ? WATER_SURFACE_HEIGHT : 1f;
+                    int tile = (key & MERGE_TILE_MASK) - 1;
+                    int light = key >>> MERGE_LIGHT_SHIFT;
+                    FaceList list = (tile == TextureAtlas.WATER_TILE ? water : opaque)[y >> 4];
+                    emitQuad(list, face, tile, light, ox + lx, y, oz - lz, w, h, top);
+                }
+            }
+        }
+    }
+
+    /**
+     * Emit one face of a block into a vertex stream.
+     *
+     * @param light skylight level of the cell the face looks into
+     * @param top height of the block's top edge as a fraction of a full block
+     *            (1 for normal blocks, {@link #WATER_SURFACE_HEIGHT} for a
+     *            water surface). Side faces have their texture V range scaled
+     *            to match so the texels aren't stretched.
+     */
+    private static void addFace(FaceList list, int id, int face, int light,
+                                float wx, float wy, float wz, float top) {
+        int tile = TextureAtlas.tile(face, id);
+        if (tile < 0) return;
+        emitQuad(list, face, tile, light, wx, wy, wz, 1, 1, top);
+    }
+
+    /**
+     * Emit a {@code w × h} block rectangle of one face direction. Tile-local
+     * texture coordinates run from 0 to {@code w} / {@code h} so the tile
+     * repeats once per block, exactly as {@code w × h} unit quads would.
+     *
+     * <p>({@code wx}, {@code wy}, {@code wz}) is the GL-space corner of the
+     * rectangle's first block. {@code w} runs along world X for top, bottom
+     * and ±Z faces, and along world Z for ±X faces; {@code h} runs along
+     * world Z for top/bottom faces and up Y for side faces.</p>
+     *
+     * @param light skylight level shared by every face in the rectangle
+     * @param top   height of the topmost block's top edge as a fraction of a
+     *              full block; only the top row of a side rectangle is lowered
+     */
+    private static void emitQuad(FaceList list, int face, int tile, int light,
+                                 float wx, float wy, float wz, int w, int h, float top) {
+        list.tile(tile);
+        list.color = packColor(SHADE[light]);
+        // Side faces: V is h at the bottom edge and 1 - top at the (possibly
+        // lowered) top edge, so every block row keeps a full-height texel grid.
+        float sideTop = wy + (h - 1) + top;
+        float vTop = 1f - top;
+        // Block occupies wx..wx+w, wy..topY, wz..wz-h (top/bottom) or wz..wz-w (±X).
+        switch (face) {
+            case FACE_TOP:
+                list.quad(
+                        0, 0, wx,     wy + top, wz,
+                        w, 0, wx + w, wy + top, wz,
+                        w, h, wx + w, wy + top, wz - h,
+                        0, h, wx,     wy + top, wz - h);
+                break;
+            case FACE_BOTTOM:
+                list.quad(
+                        0, h, wx,     wy, wz,
+                        w, h, wx + w, wy, wz,
+                        w, 0, wx + w, wy, wz - h,
+                        0, 0, wx,     wy, wz - h);
+                break;
+            case FACE_POS_Z:
+                list.quad(
+                        0, h,    wx,     wy,       wz,
+                        w, h,    wx + w, wy,       wz,
+                        w, vTop, wx + w, sideTop,  wz,
+                        0, vTop, wx,     sideTop,  wz);
+                break;
+            case FACE_NEG_Z:
+                list.quad(
+                        w, h,    wx + w, wy,      wz - 1,
+                        0, h,    wx,     wy,      wz - 1,
+                        0, vTop, wx,     sideTop, wz - 1,
+                        w, vTop, wx + w, sideTop, wz - 1);
+                break;
+            case FACE_NEG_X:
+                list.quad(
+                        w, h,    wx, wy,      wz - w,
+                        0, h,    wx, wy,      wz,
+                        0, vTop, wx, sideTop, wz,
+                        w, vTop, wx, sideTop, wz - w);
+                break;
+            case FACE_POS_X:
+                list.quad(
+                        0, h,    wx + 1, wy,      wz,
+                        w, h,    wx + 1, wy,      wz - w,
+                        w, vTop, wx + 1, sideTop, wz - w,
+                        0, vTop, wx + 1, sideTop, wz);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Pack a grey level into one vertex float as unsigned {@code r, g, b}
+     * bytes, read back with {@code glColorPointer(3, GL_UNSIGNED_BYTE)}. The
+     * fourth byte stays zero, so the bit pattern is always a small positive
+     * float and never a NaN that could be canonicalised in transit. The
+     * bytes are laid out for a little-endian native order, which covers
+     * every platform LWJGL 3 ships natives for.
+     *
+     * @param shade brightness in {@code [0, 1]}
+     * @return the packed colour
+     */
+    static float packColor(float shade) {
+        int c = Math.round(shade * 255f);
+        return Float.intBitsToFloat(c | (c << 8) | (c << 16));
+    }
+
+    /**
+     * A simple float[] wrapper that grows as needed. Quads are given in
+     * tile-local texture units and written in atlas coordinates for the tile
+     * selected by {@link #tile(int)}, in the colour last stored in
+     * {@link #color}.
+     */
+    private static class FaceList {
+        float[] data = new float[128];
+        int size = 0;
+        float u0;
+        float v0;
+        float color;
+
+        void tile(int tile) {
+            u0 = TextureAtlas.tileU(tile);
+            v0 = TextureAtlas.tileV(tile);
+        }
+
+        void quad(float u1, float v1, float x1, float y1, float z1,
+                  float u2, float v2, float x2, float y2, float z2,
+                  float u3, float v3, float x3, float y3, float z3,
+                  float u4, float v4, float x4, float y4, float z4) {
+            if (size + 4 * FLOATS_PER_VERTEX > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            vertex(u1, v1, x1, y1, z1);
+            vertex(u2, v2, x2, y2, z2);
+            vertex(u3, v3, x3, y3, z3);
+            vertex(u4, v4, x4, y4, z4);
+        }
+
+        private void vertex(float u, float v, float x, float y, float z) {
+            int i = size;
+            data[i++] = u0 + u * TextureAtlas.TILE_SPAN;
+            data[i++] = v0 + v * TextureAtlas.TILE_SPAN;
+            data[i++] = u0;
+            data[i++] = v0;
+            data[i++] = color;
+            data[i++] = x;
+            data[i++] = y;
+            data[i++] = z;
+            size = i;
+        }
+    }
+}
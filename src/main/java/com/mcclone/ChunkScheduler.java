@@ -0,0 +1,235 @@
+/**
+ * Priority queue of chunk work ordered by what the player will see first.
+ */
+
+package com.mcclone;
+
+import java.util.Arrays;
+
+/**
+ * A set of chunk coordinates waiting for work (loading or meshing), handed
+ * out nearest-and-most-in-view first.
+ *
+ * <p>A chunk's score is the horizontal distance from the eye to the nearest
+ * point of its column, scaled by the angle between the view direction and
+ * the chunk's centre: 1× straight ahead, 3× square to the side, 5× straight
+ * behind. The player's own chunk scores zero and its neighbours close to
+ * it, so they always come first whichever way the player faces. The view
+ * vector is used as given, without normalising its horizontal part: looking
+ * straight down, direction matters less.</p>
+ *
+ * <p>Entries sit in a binary min-heap of packed keys and scores. Scores are
+ * not refreshed every frame; {@link #setView} only marks them stale once the
+ * eye has moved {@link #RESCORE_DISTANCE} blocks or turned about 15° since
+ * they were computed, and the next {@link #poll} rescores and re-heapifies
+ * everything in one linear pass. Not thread-safe.</p>
+ */
+final class ChunkScheduler {
+
+    /** Blocks the eye may move before the queue is rescored. */
+    private static final float RESCORE_DISTANCE = 4f;
+
+    /** Cosine of the turn, about 15°, after which the queue is rescored. */
+    private static final float RESCORE_COS = 0.966f;
+
+    private long[] keys = new long[64];
+    private float[] scores = new float[64];
+    private int size;
+
+    /** Membership, so {@link #offer} ignores chunks already queued. */
+    private final ChunkMap<Boolean> queued = new ChunkMap<>();
+
+    /** Eye position and horizontal view direction, in block coordinates. */
+    private float eyeX;
+    private float eyeZ;
+    private float dirX;
+    private float dirZ;
+
+    /** The view the current scores were computed for. */
+    private float scoredX;
+    private float scoredZ;
+    private float scoredDirX;
+    private float scoredDirZ;
+    private boolean stale;
+
+    /** When false, chunks are ordered by distance alone. */
+    private boolean directional = true;
+
+    /**
+     * Move the eye. Cheap: scores are recomputed lazily, and only after a
+     * noticeable move or turn.
+     *
+     * @param x    eye block X
+     * @param z    eye block Z
+     * @param dirX view vector X in block coordinates
+     * @param dirZ view vector Z in block coordinates
+     */
+    void setView(float x, float z, float dirX, float dirZ) {
+        eyeX = x;
+        eyeZ = z;
+        this.dirX = dirX;
+        this.dirZ = dirZ;
+        if (stale || size == 0) return;
+        float mx = x - scoredX;
+        float mz = z - scoredZ;
+        if (mx * mx + mz * mz > RESCORE_DISTANCE * RESCORE_DISTANCE) {
+            stale = true;
+            return;
+        }
+        float dot = dirX * scoredDirX + dirZ * scoredDirZ;
+        float lengths = (float) Math.sqrt((dirX * dirX + dirZ * dirZ)
+                * (scoredDirX * scoredDirX + scoredDirZ * scoredDirZ));
+        if (dot < RESCORE_COS * lengths) stale = true;
+    }
+
+    /** Order by distance alone ({@code false}) or by distance and view direction. */
+    void setDirectional(boolean directional) {
+        if (this.directional != directional) {
+            this.directional = directional;
+            stale = true;
+        }
+    }
+
+    /**
+     * Queue a chunk unless it is already queued.
+     *
+     * @return true if it was added
+     */
+    boolean offer(int cx, int cz) {
+        if (queued.get(cx, cz) != null) return false;
+        queued.put(cx, cz, Boolean.TRUE);
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        if (size == 0) {
+            // Nothing else to rescore: this entry is scored for the current view.
+            scoredX = eyeX;
+            scoredZ = eyeZ;
+            scoredDirX = dirX;
+            scoredDirZ = dirZ;
+            stale = false;
+        }
+        keys[size] = ChunkMap.key(cx, cz);
+        scores[size] = score(cx, cz);
+        siftUp(size++);
+        return true;
+    }
+
+    /** @return true if nothing is queued. */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** @return number of queued chunks. */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Remove and return the best-scoring chunk; the queue must not be empty.
+     *
+     * @return the chunk's packed key (see {@link ChunkMap#key})
+     */
+    long poll() {
+        if (stale) rescore();
+        long top = keys[0];
+        size--;
+        keys[0] = keys[size];
+        scores[0] = scores[size];
+        siftDown(0);
+        queued.remove(ChunkMap.keyX(top), ChunkMap.keyZ(top));
+        return top;
+    }
+
+    /**
+     * Drop every queued chunk further than {@code radius} chunks
+     * (Chebyshev) from ({@code cx}, {@code cz}).
+     *
+     * @return number of chunks dropped
+     */
+    int cancelOutside(int cx, int cz, int radius) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            long k = keys[i];
+            int dx = Math.abs(ChunkMap.keyX(k) - cx);
+            int dz = Math.abs(ChunkMap.keyZ(k) - cz);
+            if (Math.max(dx, dz) <= radius) {
+                keys[kept] = k;
+                scores[kept] = scores[i];
+                kept++;
+            } else {
+                queued.remove(ChunkMap.keyX(k), ChunkMap.keyZ(k));
+            }
+        }
+        int dropped = size - kept;
+        size = kept;
+        if (dropped > 0) stale = true;
+        return dropped;
+    }
+
+    /** Remove everything. */
+    void clear() {
+        size = 0;
+        queued.clear();
+    }
+
+    /** @return the chunk's score for the current view; lower goes first. */
+    float score(int cx, int cz) {
+        float minX = cx * Chunk.SIZE;
+        float minZ = cz * Chunk.SIZE;
+        float nx = eyeX - Math.max(minX, Math.min(eyeX, minX + Chunk.SIZE));
+        float nz = eyeZ - Math.max(minZ, Math.min(eyeZ, minZ + Chunk.SIZE));
+        float near = (float) Math.sqrt(nx * nx + nz * nz);
+        if (!directional || near == 0f) return near;
+        float tx = minX + Chunk.SIZE / 2f - eyeX;
+        float tz = minZ + Chunk.SIZE / 2f - eyeZ;
+        float cos = (tx * dirX + tz * dirZ) / (float) Math.sqrt(tx * tx + tz * tz);
+        return near * (3f - 2f * cos);
+    }
+
+    /** Recompute every score for the current view and restore heap order. */
+    private void rescore() {
+        for (int i = 0; i < size; i++) {
+            scores[i] = score(ChunkMap.keyX(keys[i]), ChunkMap.keyZ(keys[i]));
+        }
+        for (int i = (size >> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+        scoredX = eyeX;
+        scoredZ = eyeZ;
+        scoredDirX = dirX;
+        scoredDirZ = dirZ;
+        stale = false;
+    }
+
+    private void siftUp(int i) {
+        long k = keys[i];
+        float s = scores[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (scores[parent] <= s) break;
+            keys[i] = keys[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        keys[i] = k;
+        scores[i] = s;
+    }
+
+    private void siftDown(int i) {
+        long k = keys[i];
+        float s = scores[i];
+        int half = size >> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && scores[child + 1] < scores[child]) child++;
+            if (scores[child] >= s) break;
+            keys[i] = keys[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        keys[i] = k;
+        scores[i] = s;
+    }
+}
@@ -0,0 +1,289 @@
+/**
+ * Palette-compressed storage for one 16×16×16 cube of blocks.
+ */
+
+package com.mcclone;
+
+import java.util.Arrays;
+
+/**
+ * A 16³ block store holding a small local palette of block ids plus a
+ * bit-packed array of palette indices.
+ *
+ * <p>Cells are addressed by a linear index {@code (y << 8) | (z << 4) | x}
+ * with all three coordinates local to the section. Index width starts at
+ * zero bits — a uniform section is just its single palette entry with no
+ * index array at all — and widens through 1, 2, 4 and 8 bits as the section
+ * gains distinct block types. Widths are powers of two so an entry never
+ * straddles two {@code long} words.</p>
+ *
+ * <p>Each palette entry keeps a reference count. A slot whose count drops to
+ * zero is reused by the next new id before the index array is widened, and a
+ * section whose cells all end up the same id collapses back to the uniform
+ * form.</p>
+ */
+final class ChunkSection {
+
+    /** Edge length of a section in blocks. */
+    static final int SIZE = 16;
+
+    /** Number of cells in a section. */
+    static final int VOLUME = SIZE * SIZE * SIZE;
+
+    /** Largest supported index width; 8 bits covers 256 distinct ids per section. */
+    private static final int MAX_BITS_LOG2 = 3;
+
+    /** Distinct block ids present (or recently present) in this section. */
+    private int[] palette;
+
+    /** Number of cells currently referencing each palette slot. */
+    private int[] counts;
+
+    /** Number of used palette slots (some may have a zero count). */
+    private int paletteSize;
+
+    /** log2 of the index width in bits, or -1 for a uniform section. */
+    private int bitsLog2 = -1;
+
+    /** Packed palette indices, or {@code null} when uniform. */
+    private long[] data;
+
+    /**
+     * Create a section with every cell set to {@code id}.
+     *
+     * @param id the block id filling the section
+     */
+    ChunkSection(int id) {
+        palette = new int[]{id};
+        counts = new int[]{VOLUME};
+        paletteSize = 1;
+    }
+
+    /**
+     * Copy constructor: an independent section holding the same cells.
+     *
+     * @param other the section to copy
+     */
+    ChunkSection(ChunkSection other) {
+        palette = other.palette.clone();
+        counts = other.counts.clone();
+        paletteSize = other.paletteSize;
+        bitsLog2 = other.bitsLog2;
+        data = other.data == null ? null : other.data.clone();
+    }
+
+    /**
+     * Build a section from flat cells in linear index order, choosing the
+     * palette and index width in one pass instead of growing them cell by
+     * cell.
+     *
+     * @param cells  source ids, one byte per cell
+     * @param offset index in {@code cells} of the section's first cell
+     */
+    ChunkSection(byte[] cells, int offset) {
+        int[] slotOf = new int[256];
+        palette = new int[4];
+        counts = new int[4];
+        for (int i = offset, end = offset + VOLUME; i < end; i++) {
+            int id = cells[i] & 0xFF;
+            int slot = slotOf[id] - 1;
+            if (slot < 0) {
+                if (paletteSize == palette.length) {
+                    palette = Arrays.copyOf(palette, paletteSize * 2);
+                    counts = Arrays.copyOf(counts, paletteSize * 2);
+                }
+                slot = paletteSize++;
+                palette[slot] = id;
+                slotOf[id] = slot + 1;
+            }
+            counts[slot]++;
+        }
+        if (paletteSize == 1) {
+            palette = new int[]{palette[0]};
+            counts = new int[]{VOLUME};
+            return;
+        }
+        bitsLog2 = 0;
+        while (1 << (1 << bitsLog2) < paletteSize) {
+            bitsLog2++;
+        }
+        int bits = 1 << bitsLog2;
+        int perWord = 64 >>> bitsLog2;
+        data = new long[VOLUME / perWord];
+        int i = offset;
+        for (int w = 0; w < data.length; w++) {
+            long word = 0;
+            for (int n = 0; n < perWord; n++) {
+                word |= (long) (slotOf[cells[i++] & 0xFF] - 1) << (n * bits);
+            }
+            data[w] = word;
+        }
+    }
+
+    /** @return the linear cell index for local coordinates. */
+    static int index(int x, int y, int z) {
+        return (y << 8) | (z << 4) | x;
+    }
+
+    /**
+     * @param index linear cell index from {@link #index(int, int, int)}
+     * @return the block id stored at that cell
+     */
+    int get(int index) {
+        if (data == null) {
+            return palette[0];
+        }
+        return palette[readIndex(index)];
+    }
+
+    /**
+     * Store {@code id} at a cell, growing or collapsing the palette as needed.
+     *
+     * @param index linear cell index
+     * @param id    block id to store
+     * @return the id previously stored at that cell
+     */
+    int set(int index, int id) {
+        if (data == null) {
+            int old = palette[0];
+            if (old == id) return old;
+            widen(0);
+        }
+        int oldSlot = readIndex(index);
+        int old = palette[oldSlot];
+        if (old == id) return old;
+
+        int slot = slotFor(id);
+        writeIndex(index, slot);
+        counts[oldSlot]--;
+        if (++counts[slot] == VOLUME) {
+            collapse(id);
+        }
+        return old;
+    }
+
+    /**
+     * Decode every cell into {@code dst} starting at {@code offset}, in
+     * linear index order. Used to give the mesher a flat view of a
+     * palette-compressed column.
+     *
+     * @param dst    destination array, at least {@code offset + VOLUME} long
+     * @param offset first index written
+     */
+    void unpackInto(byte[] dst, int offset) {
+        if (data == null) {
+            Arrays.fill(dst, offset, offset + VOLUME, (byte) palette[0]);
+            return;
+        }
+        int bits = 1 << bitsLog2;
+        int perWord = 64 >>> bitsLog2;
+        long mask = (1L << bits) - 1;
+        int i = offset;
+        for (long word : data) {
+            for (int n = 0; n < perWord; n++) {
+                dst[i++] = (byte) palette[(int) (word & mask)];
+                word >>>= bits;
+            }
+        }
+    }
+
+    /** @return true if every cell holds the same id. */
+    boolean isUniform() {
+        return data == null;
+    }
+
+    /** @return number of cells that are not {@link BlockType#AIR}. */
+    int nonAirCount() {
+        int air = 0;
+        for (int i = 0; i < paletteSize; i++) {
+            if (palette[i] == BlockType.AIR.id()) {
+                air = counts[i];
+                break;
+            }
+        }
+        return VOLUME - air;
+    }
+
+    /** @return approximate heap footprint of this section's arrays in bytes. */
+    long footprintBytes() {
+        long bytes = 16L + palette.length * 4L + counts.length * 4L;
+        if (data != null) {
+            bytes += 16L + data.length * 8L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Find the palette slot for {@code id}, adding it if absent. Empty slots
+     * are recycled first; only a genuinely full palette widens the index.
+     */
+    private int slotFor(int id) {
+        int free = -1;
+        for (int i = 0; i < paletteSize; i++) {
+            if (palette[i] == id) return i;
+            if (free < 0 && counts[i] == 0) free = i;
+        }
+        if (free >= 0) {
+            palette[free] = id;
+            return free;
+        }
+        int capacity = 1 << (1 << bitsLog2);
+        if (paletteSize == capacity) {
+            widen(bitsLog2 + 1);
+        }
+        if (paletteSize == palette.length) {
+            palette = Arrays.copyOf(palette, palette.length * 2);
+            counts = Arrays.copyOf(counts, counts.length * 2);
+        }
+        palette[paletteSize] = id;
+        counts[paletteSize] = 0;
+        return paletteSize++;
+    }
+
+    /**
+     * Re-pack the index array at {@code 2^newLog2} bits per entry. A uniform
+     * section expands with every cell referencing palette slot 0.
+     */
+    private void widen(int newLog2) {
+        if (newLog2 > MAX_BITS_LOG2) {
+            throw new IllegalStateException("Section palette overflow");
+        }
+        long[] old = data;
+        int oldLog2 = bitsLog2;
+        bitsLog2 = newLog2;
+        data = new long[VOLUME >>> (6 - newLog2)];
+        if (old != null) {
+            for (int i = 0; i < VOLUME; i++) {
+                writeIndex(i, readIndex(old, oldLog2, i));
+            }
+        }
+    }
+
+    /** Drop the index array: every cell now holds {@code id}. */
+    private void collapse(int id) {
+        data = null;
+        bitsLog2 = -1;
+        palette = new int[]{id};
+        counts = new int[]{VOLUME};
+        paletteSize = 1;
+    }
+
+    private int readIndex(int index) {
+        return readIndex(data, bitsLog2, index);
+    }
+
+    private static int readIndex(long[] words, int log2, int index) {
+        int shift = 6 - log2;
+        int bit = (index & ((1 << shift) - 1)) << log2;
+        long mask = (1L << (1 << log2)) - 1;
+        return (int) ((words[index >>> shift] >>> bit) & mask);
+    }
+
+    private void writeIndex(int index, int value) {
+        int shift = 6 - bitsLog2;
+        int word = index >>> shift;
+        int bit = (index & ((1 << shift) - 1)) << bitsLog2;
+        long mask = ((1L << (1 << bitsLog2)) - 1) << bit;
+        data[word] = (data[word] & ~mask) | (((long) value << bit) & mask);
+    }
+}
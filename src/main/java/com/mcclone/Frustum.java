@@ -0,0 +1,137 @@
+/**
+ * CPU-side view frustum for visibility culling.
+ */
+
+package com.mcclone;
+
+/**
+ * The six clip planes of the current camera, for rejecting chunks before
+ * they are submitted to OpenGL.
+ *
+ * <p>Matrices are plain {@code float[16]} arrays in OpenGL's column-major
+ * order, built to match what the fixed-function calls produce:
+ * {@link #perspective} mirrors {@code glFrustum} as used by {@link Game} and
+ * {@link Player#viewMatrix()} mirrors {@link Player#applyCamera()}. Planes are
+ * extracted from {@code projection × modelview} (Gribb–Hartmann) and point
+ * inward, so a point is inside when every plane evaluates non-negative.</p>
+ */
+public final class Frustum {
+
+    /** Plane coefficients {@code a, b, c, d}, six planes back to back. */
+    private final float[] planes = new float[24];
+
+    /** Camera position in GL space, recovered from the modelview matrix. */
+    private float eyeX;
+    private float eyeY;
+    private float eyeZ;
+
+    /**
+     * Build the projection matrix {@code glFrustum} would for a symmetric
+     * perspective view.
+     *
+     * @param fovY   vertical field of view in degrees
+     * @param aspect width / height
+     * @param zNear  near clip distance
+     * @param zFar   far clip distance
+     * @return a new column-major matrix
+     */
+    public static float[] perspective(float fovY, float aspect, float zNear, float zFar) {
+        double fH = Math.tan(Math.toRadians(fovY * 0.5)) * zNear;
+        double fW = fH * aspect;
+        float[] m = new float[16];
+        m[0] = (float) (zNear / fW);
+        m[5] = (float) (zNear / fH);
+        m[10] = -(zFar + zNear) / (zFar - zNear);
+        m[11] = -1f;
+        m[14] = -2f * zFar * zNear / (zFar - zNear);
+        return m;
+    }
+
+    /**
+     * Column-major product {@code a × b}, i.e. the matrix that applies
+     * {@code b} first and then {@code a}.
+     *
+     * @return a new matrix
+     */
+    static float[] multiply(float[] a, float[] b) {
+        float[] m = new float[16];
+        for (int col = 0; col < 4; col++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += a[k * 4 + row] * b[col * 4 + k];
+                }
+                m[col * 4 + row] = sum;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Recompute the planes for a new camera.
+     *
+     * @param projection column-major projection matrix
+     * @param modelview  column-major modelview (camera) matrix; a rotation
+     *                   plus translation, as {@link Player#viewMatrix()} builds
+     */
+    public void update(float[] projection, float[] modelview) {
+        // For a rigid transform the eye is -Rᵀ·t.
+        float[] v = modelview;
+        eyeX = -(v[0] * v[12] + v[1] * v[13] + v[2] * v[14]);
+        eyeY = -(v[4] * v[12] + v[5] * v[13] + v[6] * v[14]);
+        eyeZ = -(v[8] * v[12] + v[9] * v[13] + v[10] * v[14]);
+        float[] m = multiply(projection, modelview);
+        for (int i = 0; i < 3; i++) {
+            // Rows 0..2 of the clip matrix against row 3: w ± x, w ± y, w ± z.
+            setPlane(i * 2, m[3] + m[i], m[7] + m[4 + i], m[11] + m[8 + i], m[15] + m[12 + i]);
+            setPlane(i * 2 + 1, m[3] - m[i], m[7] - m[4 + i], m[11] - m[8 + i], m[15] - m[12 + i]);
+        }
+    }
+
+    /** @return camera X in GL space as of the last {@link #update}. */
+    public float eyeX() {
+        return eyeX;
+    }
+
+    /** @return camera Y in GL space as of the last {@link #update}. */
+    public float eyeY() {
+        return eyeY;
+    }
+
+    /** @return camera Z in GL space as of the last {@link #update}. */
+    public float eyeZ() {
+        return eyeZ;
+    }
+
+    private void setPlane(int plane, float a, float b, float c, float d) {
+        float len = (float) Math.sqrt(a * a + b * b + c * c);
+        int o = plane * 4;
+        planes[o] = a / len;
+        planes[o + 1] = b / len;
+        planes[o + 2] = c / len;
+        planes[o + 3] = d / len;
+    }
+
+    /**
+     * Conservative box test: for each plane only the box corner furthest
+     * along the plane normal is checked, so a box is rejected only when it
+     * lies entirely behind one plane.
+     *
+     * @return true if the axis-aligned box may be visible
+     */
+    public boolean intersectsBox(float minX, float minY, float minZ,
+                                 float maxX, float maxY, float maxZ) {
+        for (int o = 0; o < planes.length; o += 4) {
+            float a = planes[o];
+            float b = planes[o + 1];
+            float c = planes[o + 2];
+            float px = a >= 0 ? maxX : minX;
+            float py = b >= 0 ? maxY : minY;
+            float pz = c >= 0 ? maxZ : minZ;
+            if (a * px + b * py + c * pz + planes[o + 3] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -5,7 +5,12 @@
 package com.mcclone;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL11;
@@ -21,6 +26,15 @@ import static org.lwjgl.system.MemoryUtil.NULL;
  *
  * <p>Owns the GLFW window, the {@link World}, the {@link Player} and the
  * {@link Hotbar}, and runs the frame loop until the window is closed.</p>
+ *
+ * <p>Two threads share the work. The simulation thread runs fixed-rate
+ * ticks (input, physics, block interaction, the day/night clock, autosaves)
+ * under the world's monitor, and publishes a {@link RenderState} through a
+ * {@link TripleBuffer} after each batch. The render thread, the one that
+ * owns the window, handles the window callbacks, mouse look, chunk
+ * streaming and everything OpenGL, drawing from the latest published state.
+ * Input reaches the simulation as {@link InputEvent}s on a queue. Fields
+ * below belong to the render thread unless marked otherwise.</p>
  */
 public class Game {
 
@@ -32,19 +46,38 @@ public class Game {
     /** The voxel world. */
     private final World world = new World();
 
-    /** The player. */
+    /** Crosshair raycasts against {@link #world}. */
+    private final Raycaster raycaster = new Raycaster(world);
+
+    /** The player; simulation thread. */
     private final Player player;
 
-    /** Hotbar UI / inventory. */
+    /** Hotbar UI / inventory; simulation thread. The HUD draws a copy. */
     private final Hotbar hotbar = new Hotbar();
 
-    /** Day/night clock driving sky colour, fog and world brightness. */
+    /** Day/night clock driving sky colour, fog and world brightness; simulation thread. */
     private final DayNightCycle dayNight = new DayNightCycle();
 
-    /** Time of the last successful break action. */
+    /** Hands the latest simulation results to the render thread. */
+    private final TripleBuffer<RenderState> renderStates = new TripleBuffer<>(RenderState::new);
+
+    /** Input from the window callbacks, applied at the start of the next tick. */
+    private final Queue<InputEvent> inputEvents = new ConcurrentLinkedQueue<>();
+
+    /** Cleared to stop the simulation thread. */
+    private volatile boolean simulating;
+
+    /** Camera angles in degrees; mouse look updates them every frame. */
+    private float viewPitch;
+    private float viewYaw;
+
+    /** The simulation thread's copy of {@link #inventoryOpen}, from {@link InputEvent}s. */
+    private boolean simInventoryOpen;
+
+    /** Time of the last successful break action; simulation thread. */
     private double lastBreakTime = 0;
 
-    /** Time of the last successful place action. */
+    /** Time of the last successful place action; simulation thread. */
     private double lastPlaceTime = 0;
 
     /** Cooldown between block interactions, in seconds. */
@@ -53,9 +86,27 @@ public class Game {
     /** Mouse sensitivity for camera rotation. */
     private static final float MOUSE_SENSITIVITY = 0.15f;
 
-    /** Result of the latest raycast — what block the crosshair is on, or {@code null}. */
+    /** Vertical field of view in degrees. */
+    private static final float FOV_Y = 70f;
+
+    /** Near clip distance. */
+    private static final float Z_NEAR = 0.1f;
+
+    /** Far clip distance. */
+    private static final float Z_FAR = 1000f;
+
+    /** CPU copy of the projection matrix, kept in step with {@link #setPerspective}. */
+    private float[] projection = Frustum.perspective(FOV_Y, 1f, Z_NEAR, Z_FAR);
+
+    /** Camera frustum, rebuilt every frame for chunk culling. */
+    private final Frustum frustum = new Frustum();
+
+    /** Result of the latest raycast — what block the crosshair is on, or {@code null}; simulation thread. */
     private int[] highlightedBlock;
 
+    /** Buffer {@link #raycast} writes into; {@link #highlightedBlock} points at it after a hit. */
+    private final int[] rayHit = new int[Raycaster.HIT_STRIDE];
+
     /** Previous cursor X; used by the cursor-pos callback to compute deltas. */
     private double lastCursorX;
 
@@ -65,10 +116,10 @@ public class Game {
     /** Set to true after the first cursor event so we don't apply an initial jump. */
     private boolean cursorInitialised;
 
-    /** Current keyboard state maintained by GLFW key callbacks. */
+    /** Keyboard state as of the current tick, fed by {@link InputEvent}s; simulation thread. */
     private final InputState[] keyStates = new InputState[GLFW_KEY_LAST + 1];
 
-    /** Current mouse-button state maintained by GLFW mouse callbacks. */
+    /** Mouse-button state as of the current tick; simulation thread. */
     private final InputState[] mouseButtonStates = new InputState[GLFW_MOUSE_BUTTON_LAST + 1];
 
     /** True after the player clicks into the window and the cursor is captured. */
@@ -95,8 +146,41 @@ public class Game {
     /** Seconds between autosaves. */
     private static final double AUTOSAVE_INTERVAL = 60.0;
 
-    /** Time of the last autosave (game clock). */
-    private double lastAutosaveTime;
+    /**
+     * Simulation ticks per second ({@code -Dblockgame.tickRate}, 10 to 240).
+     * Input, physics, block interaction and the day/night clock advance in
+     * steps of exactly one tick whatever the frame rate.
+     */
+    private static final int TICK_RATE = Math.max(10, Math.min(240,
+            Integer.getInteger("blockgame.tickRate", 60)));
+
+    /** Length of one simulation tick in seconds. */
+    private static final float TICK_SECONDS = 1f / TICK_RATE;
+
+    /** Length of one simulation tick in nanoseconds. */
+    private static final long TICK_NANOS = 1_000_000_000L / TICK_RATE;
+
+    /**
+     * Most ticks run back to back to catch up after a stall. Time owed
+     * beyond that is dropped, so a slow machine runs the game slower instead
+     * of falling further behind every tick.
+     */
+    private static final int MAX_CATCH_UP_TICKS = 5;
+
+    /** Ticks skipped so far because more than {@link #MAX_CATCH_UP_TICKS} were owed; simulation thread. */
+    private long droppedTicks;
+
+    /** {@link System#nanoTime()} of the last autosave; simulation thread. */
+    private long lastAutosaveNanos;
+
+    /** Writes autosaves on a background thread. */
+    private final Autosaver autosaver = new Autosaver(WorldSave.DEFAULT_FILE);
+
+    /** Logs block edits between autosaves so a crash loses under a second of them. */
+    private EditJournal journal;
+
+    /** The save's region files, shared by chunk streaming and autosaves. */
+    private RegionStore regions;
 
     /**
      * Create the game and initialise GLFW/OpenGL.
@@ -154,20 +238,27 @@ public class Game {
         // fades into the horizon instead of ending at a hard edge.
         glEnable(GL_FOG);
         glFogi(GL_FOG_MODE, GL_LINEAR);
-        glFogf(GL_FOG_START, 40f);
-        glFogf(GL_FOG_END, 90f);
+        // Ends just inside the streamed radius so unloaded chunks never show.
+        float fogEnd = World.renderDistance() * Chunk.SIZE - 6f;
+        glFogf(GL_FOG_START, fogEnd * 0.45f);
+        glFogf(GL_FOG_END, fogEnd);
 
-        glfwSetScrollCallback(window, (win, xoffset, yoffset) -> hotbar.scrollSelection((int) -yoffset));
+        glfwSetScrollCallback(window, (win, xoffset, yoffset) ->
+                inputEvents.add(InputEvent.scroll((int) -yoffset)));
 
         Map<String, BufferedImage> textures = TextureGenerator.generateAll();
         for (Map.Entry<String, BufferedImage> e : textures.entrySet()) {
             TextureLoader.registerTexture(e.getKey(), e.getValue());
         }
+        TextureAtlas.upload(textures);
+        if (!TilingShader.init() && world.isGreedyMeshing()) {
+            world.setGreedyMeshing(false);
+        }
         TextureLoader.enableTextures();
 
         float spawnX = 0f;
         float spawnZ = -2f;
-        float spawnY = world.groundHeight(spawnX, spawnZ) + Player.getEYE();
+        float spawnY = world.spawnHeight(spawnX, spawnZ) + Player.getEYE();
         player = new Player(spawnX, spawnY, spawnZ);
 
         // Resume from an existing save if one is present; otherwise keep the
@@ -175,26 +266,25 @@ public class Game {
         if (WorldSave.load(WorldSave.DEFAULT_FILE, world, player, hotbar, dayNight)) {
             logger.info("Resumed world from {}", WorldSave.DEFAULT_FILE);
         }
+        // From here on chunks stream in and out of the save's regions.
+        regions = new RegionStore(WorldSave.regionDir(WorldSave.DEFAULT_FILE));
+        world.setRegions(regions);
+        // Then re-apply any edits made after that save but before a crash.
+        File journalDir = WorldSave.journalDir(WorldSave.DEFAULT_FILE);
+        EditJournal.replay(journalDir, world);
+        journal = new EditJournal(journalDir);
+        world.setJournal(journal);
 
         glfwSetWindowFocusCallback(window, (win, focused) -> {
             if (!focused) {
                 releaseCursor();
-                for (InputState state : keyStates) {
-                    state.reset();
-                }
-                for (InputState state : mouseButtonStates) {
-                    state.reset();
-                }
+                inputEvents.add(InputEvent.focusLost());
             }
         });
 
         glfwSetKeyCallback(window, (win, key, scancode, action, mods) -> {
-            if (key >= 0 && key < keyStates.length) {
-                if (action == GLFW_PRESS) {
-                    keyStates[key].setPressed(true);
-                } else if (action == GLFW_RELEASE) {
-                    keyStates[key].setPressed(false);
-                }
+            if (action == GLFW_PRESS || action == GLFW_RELEASE) {
+                inputEvents.add(InputEvent.key(key, action == GLFW_PRESS));
             }
             if (action == GLFW_PRESS) {
                 if (key == GLFW_KEY_ESCAPE) {
@@ -205,20 +295,32 @@ public class Game {
                     } else {
                         glfwSetWindowShouldClose(window, true);
                     }
+                } else if (key == GLFW_KEY_E) {
+                    // While the inventory is open the cursor is free and all
+                    // world input (look, move, break/place) is paused.
+                    if (inventoryOpen) {
+                        closeInventory();
+                    } else {
+                        openInventory();
+                    }
+                } else {
+                    handleDebugKey(key);
                 }
             }
         });
 
         glfwSetMouseButtonCallback(window, (win, button, action, mods) -> {
-            if (button >= 0 && button < mouseButtonStates.length) {
-                if (action == GLFW_PRESS) {
-                    mouseButtonStates[button].setPressed(true);
-                } else if (action == GLFW_RELEASE) {
-                    mouseButtonStates[button].setPressed(false);
-                }
+            if (action == GLFW_PRESS || action == GLFW_RELEASE) {
+                inputEvents.add(InputEvent.mouseButton(button, action == GLFW_PRESS));
             }
             if (action == GLFW_PRESS) {
-                if (!cursorCaptured && !inventoryOpen) {
+                if (inventoryOpen && button == GLFW_MOUSE_BUTTON_LEFT) {
+                    float[] cursor = cursorInFramebuffer();
+                    int[] fw = new int[1];
+                    int[] fh = new int[1];
+                    glfwGetFramebufferSize(window, fw, fh);
+                    inputEvents.add(InputEvent.inventoryClick(cursor[0], cursor[1], fw[0], fh[0]));
+                } else if (!cursorCaptured && !inventoryOpen) {
                     captureCursor();
                 }
             }
@@ -277,13 +379,17 @@ public class Game {
     /** Open the inventory screen: free the cursor and pause world input. */
     private void openInventory() {
         inventoryOpen = true;
+        inputEvents.add(InputEvent.inventory(true));
         releaseCursor();
     }
 
-    /** Close the inventory screen and recapture the mouse for camera look. */
+    /**
+     * Close the inventory screen and recapture the mouse for camera look;
+     * the simulation returns any held stack.
+     */
     private void closeInventory() {
         inventoryOpen = false;
-        hotbar.returnHeldStack();
+        inputEvents.add(InputEvent.inventory(false));
         captureCursor();
     }
 
@@ -321,8 +427,9 @@ public class Game {
         float aspect = (float) w / h;
         glMatrixMode(GL_PROJECTION);
         glLoadIdentity();
-        perspective(70f, aspect, 0.1f, 1000f);
+        perspective(FOV_Y, aspect, Z_NEAR, Z_FAR);
         glMatrixMode(GL_MODELVIEW);
+        projection = Frustum.perspective(FOV_Y, aspect, Z_NEAR, Z_FAR);
     }
 
     private static void perspective(float fovY, float aspect, float zNear, float zFar) {
@@ -374,41 +481,59 @@ public class Game {
         glMatrixMode(GL_MODELVIEW);
     }
 
-    /** Run the main loop until the window closes. */
+    /**
+     * Run the main loop until the window closes.
+     *
+     * <p>Starts the simulation thread (see {@link #simulate()}), then draws
+     * frames from the latest {@link RenderState}, with the eye interpolated
+     * between the last two ticks by the time since the latest one was due.
+     * Mouse look and streaming run once per frame here; on exit the
+     * simulation is stopped before the final save.</p>
+     */
     public void run() {
-        double last = glfwGetTime();
-        lastAutosaveTime = last;
+        viewPitch = player.getPitch();
+        viewYaw = player.getYaw();
+        float[] view = Player.viewVector(viewPitch, viewYaw);
+        world.updateStreaming(player.getX(), player.getZ(), view[0], view[2], Integer.MAX_VALUE);
+        lastAutosaveNanos = System.nanoTime();
+        publish(lastAutosaveNanos);
+        simulating = true;
+        Thread simulation = new Thread(this::simulate, "simulation");
+        simulation.setDaemon(true);
+        simulation.start();
 
         while (!glfwWindowShouldClose(window)) {
-            double now = glfwGetTime();
-            float dt = (float) Math.min(now - last, 0.05);
-            last = now;
-
-            handleInput(dt);
-            player.tickPhysics(world, dt);
-            player.checkAndFixStuckInBlock(world);
-            dayNight.advance(dt);
-
-            if (now - lastAutosaveTime >= AUTOSAVE_INTERVAL) {
-                WorldSave.save(WorldSave.DEFAULT_FILE, world, player, hotbar, dayNight);
-                lastAutosaveTime = now;
+            if (inventoryOpen) {
+                queuedMouseDX = 0;
+                queuedMouseDY = 0;
+            } else {
+                handleMouseLook();
             }
-
-            float[] sky = dayNight.skyColor();
+            RenderState state = renderStates.latest();
+            float alpha = Math.min(1f, Math.max(0f,
+                    (System.nanoTime() - state.tickNanos) / (float) TICK_NANOS));
+            float eyeX = state.eyeX(alpha);
+            float eyeY = state.eyeY(alpha);
+            float eyeZ = state.eyeZ(alpha);
+            view = Player.viewVector(viewPitch, viewYaw);
+            world.updateStreaming(eyeX, eyeZ, view[0], view[2]);
+
+            float[] sky = state.sky;
             glClearColor(sky[0], sky[1], sky[2], 1f);
             glFogfv(GL_FOG_COLOR, new float[]{sky[0], sky[1], sky[2], 1f});
 
             glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
             glLoadIdentity();
-            player.applyCamera();
-            world.render(dayNight.brightness());
-
-            if (highlightedBlock != null) {
-                int bx = highlightedBlock[0];
-                int by = highlightedBlock[1];
-                int bz = highlightedBlock[2];
+            Player.applyCamera(eyeX, eyeY, eyeZ, viewPitch, viewYaw);
+            frustum.update(projection, Player.viewMatrix(eyeX, eyeY, eyeZ, viewPitch, viewYaw));
+            world.render(state.brightness, frustum);
+
+            if (state.highlighted) {
+                int bx = state.highlight[0];
+                int by = state.highlight[1];
+                int bz = state.highlight[2];
                 GL11.glPushMatrix();
-                GL11.glTranslatef(bx - World.SIZE / 2f, by, -bz);
+                GL11.glTranslatef(World.toGlX(bx), by, World.toGlZ(bz));
                 BlockRenderer.renderOutline();
                 GL11.glPopMatrix();
             }
@@ -420,44 +545,156 @@ public class Game {
             glfwGetFramebufferSize(window, w, h);
             if (inventoryOpen) {
                 float[] cursor = cursorInFramebuffer();
-                hotbar.renderInventoryScreen(w[0], h[0], cursor[0], cursor[1]);
+                state.hotbar.renderInventoryScreen(w[0], h[0], cursor[0], cursor[1]);
             } else {
-                hotbar.render(w[0], h[0]);
+                state.hotbar.render(w[0], h[0]);
             }
 
             glfwSwapBuffers(window);
             glfwPollEvents();
         }
 
-        // Clean shutdown: persist the world before tearing the context down.
-        WorldSave.save(WorldSave.DEFAULT_FILE, world, player, hotbar, dayNight);
+        // Clean shutdown: stop the simulation, finish any background save,
+        // then persist the final state before tearing the context down.
+        simulating = false;
+        try {
+            simulation.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        autosaver.close(world, player, hotbar, dayNight);
+        journal.close();
+        try {
+            regions.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close region files: {}", e.getMessage());
+        }
 
+        world.shutdown();
+        world.releaseBuffers();
+        TilingShader.cleanup();
         TextureLoader.cleanup();
         glfwTerminate();
     }
 
-    private void handleInput(float dt) {
-        updateInputStates();
-
-        // E toggles the inventory screen. While it is open the cursor is free
-        // and all world input (look, move, break/place) is paused.
-        if (wasKeyJustPressed(GLFW_KEY_E)) {
-            if (inventoryOpen) {
-                closeInventory();
-            } else {
-                openInventory();
+    /**
+     * Simulation thread body: run ticks every {@link #TICK_NANOS}, each under
+     * the world's monitor, and publish a {@link RenderState} after every
+     * batch. After a stall it runs at most {@link #MAX_CATCH_UP_TICKS} ticks
+     * back to back and drops the rest. A failure ends the game rather than
+     * leave it frozen.
+     */
+    private void simulate() {
+        long next = System.nanoTime();
+        try {
+            while (simulating) {
+                long now = System.nanoTime();
+                if (now < next) {
+                    LockSupport.parkNanos(next - now);
+                    continue;
+                }
+                int ticks = 0;
+                while (now >= next && ticks < MAX_CATCH_UP_TICKS) {
+                    synchronized (world) {
+                        tick();
+                    }
+                    next += TICK_NANOS;
+                    ticks++;
+                }
+                if (now >= next) {
+                    long behind = (now - next) / TICK_NANOS + 1;
+                    droppedTicks += behind;
+                    next += behind * TICK_NANOS;
+                }
+                publish(next - TICK_NANOS);
             }
+        } catch (RuntimeException e) {
+            logger.error("Simulation failed", e);
+            glfwSetWindowShouldClose(window, true);
         }
-        if (inventoryOpen) {
-            queuedMouseDX = 0;
-            queuedMouseDY = 0;
-            if (wasMouseJustPressed(GLFW_MOUSE_BUTTON_LEFT)) {
-                float[] cursor = cursorInFramebuffer();
-                int[] fw = new int[1];
-                int[] fh = new int[1];
-                glfwGetFramebufferSize(window, fw, fh);
-                hotbar.handleInventoryClick(cursor[0], cursor[1], fw[0], fh[0]);
+    }
+
+    /** Advance the simulation by one fixed tick; simulation thread, holding the world's monitor. */
+    private void tick() {
+        applyInputEvents();
+        world.advanceTick();
+        player.beginTick();
+        handleInput(TICK_SECONDS);
+        player.tickPhysics(world, TICK_SECONDS);
+        player.checkAndFixStuckInBlock(world);
+        dayNight.advance(TICK_SECONDS);
+
+        long now = System.nanoTime();
+        if (now - lastAutosaveNanos >= (long) (AUTOSAVE_INTERVAL * 1e9)) {
+            autosaver.save(world, player, hotbar, dayNight);
+            lastAutosaveNanos = now;
+        }
+    }
+
+    /**
+     * Fill the next {@link RenderState} from the simulation and hand it to
+     * the render thread.
+     *
+     * @param tickNanos when the latest tick was due
+     */
+    private void publish(long tickNanos) {
+        RenderState state = renderStates.back();
+        state.setEye(player);
+        state.tickNanos = tickNanos;
+        state.highlighted = highlightedBlock != null;
+        if (state.highlighted) {
+            System.arraycopy(highlightedBlock, 0, state.highlight, 0, state.highlight.length);
+        }
+        state.hotbar.copyFrom(hotbar);
+        System.arraycopy(dayNight.skyColor(), 0, state.sky, 0, state.sky.length);
+        state.brightness = dayNight.brightness();
+        state.droppedTicks = droppedTicks;
+        renderStates.publish();
+    }
+
+    /** Apply the input the window callbacks queued since the last tick. */
+    private void applyInputEvents() {
+        InputEvent e;
+        while ((e = inputEvents.poll()) != null) {
+            switch (e.kind) {
+                case KEY:
+                    if (e.code >= 0 && e.code < keyStates.length) keyStates[e.code].setPressed(e.pressed);
+                    break;
+                case MOUSE_BUTTON:
+                    if (e.code >= 0 && e.code < mouseButtonStates.length) {
+                        mouseButtonStates[e.code].setPressed(e.pressed);
+                    }
+                    break;
+                case SCROLL:
+                    hotbar.scrollSelection(e.code);
+                    break;
+                case LOOK:
+                    player.setLook(e.x, e.y);
+                    break;
+                case INVENTORY:
+                    simInventoryOpen = e.pressed;
+                    if (!e.pressed) hotbar.returnHeldStack();
+                    break;
+                case INVENTORY_CLICK:
+                    hotbar.handleInventoryClick(e.x, e.y, e.width, e.height);
+                    break;
+                case FOCUS_LOST:
+                    for (InputState state : keyStates) {
+                        state.reset();
+                    }
+                    for (InputState state : mouseButtonStates) {
+                        state.reset();
+                    }
+                    break;
+                default:
+                    break;
             }
+        }
+    }
+
+    private void handleInput(float dt) {
+        updateInputStates();
+        if (simInventoryOpen) {
             return;
         }
 
@@ -466,8 +703,6 @@ public class Game {
         if (isKeyDown(GLFW_KEY_LEFT_SHIFT)  || isKeyDown(GLFW_KEY_RIGHT_SHIFT))  baseSpeed *= Player.SNEAK_MULT;
         float step = baseSpeed * dt;
 
-        handleMouseLook();
-
         float dx = 0;
         float dz = 0;
 
@@ -488,6 +723,48 @@ public class Game {
         handleBlockInteraction(dt);
     }
 
+    /** Function-key toggles for A/B-testing renderer and world options; called on key press. */
+    private void handleDebugKey(int key) {
+        if (key == GLFW_KEY_F4) {
+            if (TilingShader.isAvailable()) {
+                synchronized (world) {
+                    world.setGreedyMeshing(!world.isGreedyMeshing());
+                }
+                logger.info("Greedy meshing {}", world.isGreedyMeshing() ? "on" : "off");
+            } else {
+                logger.info("Greedy meshing needs the atlas tiling shader, which is unavailable");
+            }
+        }
+        if (key == GLFW_KEY_F5) {
+            world.setUseVbo(!world.isUseVbo());
+            logger.info("Render path: {}", world.isUseVbo() ? "vertex buffers" : "immediate mode");
+        }
+        if (key == GLFW_KEY_F6) {
+            world.setFrustumCulling(!world.isFrustumCulling());
+            logger.info("Frustum culling {}", world.isFrustumCulling() ? "on" : "off");
+        }
+        if (key == GLFW_KEY_F7) {
+            world.setOcclusionCulling(!world.isOcclusionCulling());
+            logger.info("Occlusion culling {}", world.isOcclusionCulling() ? "on" : "off");
+        }
+        if (key == GLFW_KEY_F3) {
+            logger.info("Last frame: {}/{} chunks visible, {}/{} sections drawn ({} in frustum), "
+                            + "{} buffers bound, {} vertices drawn ({})",
+                    world.visibleChunks(), world.totalChunks(),
+                    world.visibleSections(), world.totalSections(), world.frustumSections(),
+                    world.frameBufferBinds(), world.frameVertices(),
+                    world.isUseVbo() ? "vertex buffers" : "immediate mode");
+            logger.info("Streaming: {} chunks queued to load, {} loads and {} meshes cancelled",
+                    world.pendingLoads(), world.cancelledLoads(), world.cancelledMeshes());
+            logger.info("Memory: meshes {} KB ({} chunks meshless), blocks {} KB, packed {} KB "
+                            + "({} chunks), {} chunks unloaded for the budget",
+                    world.meshMemory() >> 10, world.meshlessChunks(), world.blockMemory() >> 10,
+                    world.packedMemory() >> 10, world.packedChunks(), world.budgetUnloads());
+            logger.info("Simulation: {} ticks/s, {} ticks dropped catching up",
+                    TICK_RATE, renderStates.latest().droppedTicks);
+        }
+    }
+
     private void updateInputStates() {
         for (InputState state : keyStates) {
             state.update();
@@ -526,10 +803,11 @@ public class Game {
         queuedMouseDY = 0;
 
         if (dx != 0 || dy != 0) {
-            player.addYaw((float) dx * MOUSE_SENSITIVITY);
+            viewYaw += (float) dx * MOUSE_SENSITIVITY;
             // Standard FPS look: dragging the mouse down should pitch the
             // camera down (positive pitch in our convention). Don't negate dy.
-            player.addPitch((float) dy * MOUSE_SENSITIVITY);
+            viewPitch = Math.max(-89, Math.min(89, viewPitch + (float) dy * MOUSE_SENSITIVITY));
+            inputEvents.add(InputEvent.look(viewPitch, viewYaw));
         }
     }
 
@@ -580,10 +858,10 @@ public class Game {
      * @return true if the cell intersects the player's AABB
      */
     private boolean intersectsPlayer(int bx, int by, int bz) {
-        // Block cell world-space extents (see World: glX = x - SIZE/2, glZ = -z,
-        // a block spans wz..wz-1 along Z).
-        float blockMinX = bx - World.SIZE / 2f;
-        float blockMaxZ = -bz;
+        // Block cell world-space extents (see World#toGlX; a block spans
+        // wz..wz-1 along Z).
+        float blockMinX = World.toGlX(bx);
+        float blockMaxZ = World.toGlZ(bz);
         float playerMinY = player.getY() - Player.getEYE();
         return blockMinX + 1 > player.getX() - 0.3f && blockMinX < player.getX() + 0.3f
                 && by + 1 > playerMinY && by < playerMinY + 1.8f
@@ -610,73 +888,20 @@ public class Game {
     /**
      * Cast a ray from the player's eyes to find the block they are looking at.
      *
-     * <p>Uses a standard DDA (Digital Differential Analyzer) grid traversal.
-     * The eye position and view vector are in world space; we convert into the
-     * block array's coordinate system (X offset by SIZE/2, Z negated) before
-     * stepping so the traversal is just integer block indices.</p>
+     * <p>The eye position and view vector are in world space; they are
+     * converted into block coordinates (see {@link World#toBlockX}) and
+     * handed to the {@link Raycaster}.</p>
      *
      * @param eyePos      player's eye position [x, y, z]
      * @param viewVector  normalized view direction vector [x, y, z]
      * @param maxDistance maximum distance to check, in blocks
-     * @return array of [blockX, blockY, blockZ, face] or {@code null} if no block is hit
+     * @return array of [blockX, blockY, blockZ, face] or {@code null} if no
+     *         block is hit; the array is reused by the next call
      */
     public int[] raycast(float[] eyePos, float[] viewVector, float maxDistance) {
-        // Convert to block-array coordinates.
-        float ox = eyePos[0] + World.SIZE / 2f;
-        float oy = eyePos[1];
-        float oz = -eyePos[2];
-
-        float dx = viewVector[0];
-        float dy = viewVector[1];
-        float dz = -viewVector[2];
-
-        int bx = (int) Math.floor(ox);
-        int by = (int) Math.floor(oy);
-        int bz = (int) Math.floor(oz);
-
-        int stepX = Float.compare(dx, 0);
-        int stepY = Float.compare(dy, 0);
-        int stepZ = Float.compare(dz, 0);
-
-        float tDeltaX = (dx != 0f) ? Math.abs(1f / dx) : Float.POSITIVE_INFINITY;
-        float tDeltaY = (dy != 0f) ? Math.abs(1f / dy) : Float.POSITIVE_INFINITY;
-        float tDeltaZ = (dz != 0f) ? Math.abs(1f / dz) : Float.POSITIVE_INFINITY;
-
-        float tMaxX = (dx != 0f) ? (((stepX > 0 ? bx + 1 : bx) - ox) / dx) : Float.POSITIVE_INFINITY;
-        float tMaxY = (dy != 0f) ? (((stepY > 0 ? by + 1 : by) - oy) / dy) : Float.POSITIVE_INFINITY;
-        float tMaxZ = (dz != 0f) ? (((stepZ > 0 ? bz + 1 : bz) - oz) / dz) : Float.POSITIVE_INFINITY;
-
-        int face = -1;
-        float t = 0f;
-
-        // Safety cap in addition to the distance check so we can never loop
-        // forever even if something pathological happens.
-        int maxIterations = (int) Math.ceil(maxDistance * 3) + 8;
-        int iterations = 0;
-
-        while (t <= maxDistance && iterations++ < maxIterations) {
-            if (world.isSolid(bx, by, bz)) {
-                return new int[]{bx, by, bz, face};
-            }
-
-            if (tMaxX < tMaxY && tMaxX < tMaxZ) {
-                t = tMaxX;
-                tMaxX += tDeltaX;
-                bx += stepX;
-                face = (stepX > 0) ? 5 : 4; // We hit the -X face when stepping +X, so place West (-X)
-            } else if (tMaxY < tMaxZ) {
-                t = tMaxY;
-                tMaxY += tDeltaY;
-                by += stepY;
-                face = (stepY > 0) ? 3 : 2; // stepping up hits bottom face → place below (Down)
-            } else {
-                t = tMaxZ;
-                tMaxZ += tDeltaZ;
-                bz += stepZ;
-                face = (stepZ > 0) ? 1 : 0; // stepping +bz hits z-1 face → place at z-1 (South)
-            }
-        }
-        return null;
+        boolean hit = raycaster.cast(World.toBlockX(eyePos[0]), eyePos[1], World.toBlockZ(eyePos[2]),
+                viewVector[0], viewVector[1], -viewVector[2], maxDistance, rayHit, 0);
+        return hit ? rayHit : null;
     }
 
     public static void main(String[] args) {
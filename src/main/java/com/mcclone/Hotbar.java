@@ -397,6 +397,21 @@ public class Hotbar {
         }
     }
 
+    /**
+     * Overwrite this hotbar with the contents, selection and held stack of
+     * {@code other}; used to hand the HUD a copy it can draw from another
+     * thread.
+     */
+    void copyFrom(Hotbar other) {
+        selectedSlot = other.selectedSlot;
+        System.arraycopy(other.items, 0, items, 0, HOTBAR_SLOTS);
+        System.arraycopy(other.counts, 0, counts, 0, HOTBAR_SLOTS);
+        System.arraycopy(other.storageItems, 0, storageItems, 0, STORAGE_SLOTS);
+        System.arraycopy(other.storageCounts, 0, storageCounts, 0, STORAGE_SLOTS);
+        heldId = other.heldId;
+        heldCount = other.heldCount;
+    }
+
     /**
      * Return any stack still held by the mouse to the first free space
      * (called when the inventory screen closes so blocks are never lost).
@@ -0,0 +1,77 @@
+/**
+ * One input event handed from the window thread to the simulation.
+ */
+
+package com.mcclone;
+
+/**
+ * An input event queued by the GLFW callbacks on the render thread and
+ * applied by the simulation thread at the start of its next tick, so the
+ * simulation never reads window state. Immutable.
+ */
+final class InputEvent {
+
+    /** What happened. */
+    enum Kind {
+        /** Key {@link #code} went down ({@link #pressed}) or up. */
+        KEY,
+        /** Mouse button {@link #code} went down ({@link #pressed}) or up. */
+        MOUSE_BUTTON,
+        /** Scroll wheel moved {@link #code} notches. */
+        SCROLL,
+        /** The camera now looks along pitch {@link #x} and yaw {@link #y}, in degrees. */
+        LOOK,
+        /** The inventory screen opened ({@link #pressed}) or closed. */
+        INVENTORY,
+        /** Left click at ({@link #x}, {@link #y}) on a {@link #width}×{@link #height} framebuffer. */
+        INVENTORY_CLICK,
+        /** The window lost focus: every key and button counts as released. */
+        FOCUS_LOST
+    }
+
+    final Kind kind;
+    final int code;
+    final boolean pressed;
+    final float x;
+    final float y;
+    final int width;
+    final int height;
+
+    private InputEvent(Kind kind, int code, boolean pressed, float x, float y, int width, int height) {
+        this.kind = kind;
+        this.code = code;
+        this.pressed = pressed;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    static InputEvent key(int key, boolean pressed) {
+        return new InputEvent(Kind.KEY, key, pressed, 0, 0, 0, 0);
+    }
+
+    static InputEvent mouseButton(int button, boolean pressed) {
+        return new InputEvent(Kind.MOUSE_BUTTON, button, pressed, 0, 0, 0, 0);
+    }
+
+    static InputEvent scroll(int notches) {
+        return new InputEvent(Kind.SCROLL, notches, false, 0, 0, 0, 0);
+    }
+
+    static InputEvent look(float pitch, float yaw) {
+        return new InputEvent(Kind.LOOK, 0, false, pitch, yaw, 0, 0);
+    }
+
+    static InputEvent inventory(boolean open) {
+        return new InputEvent(Kind.INVENTORY, 0, open, 0, 0, 0, 0);
+    }
+
+    static InputEvent inventoryClick(float x, float y, int width, int height) {
+        return new InputEvent(Kind.INVENTORY_CLICK, 0, false, x, y, width, height);
+    }
+
+    static InputEvent focusLost() {
+        return new InputEvent(Kind.FOCUS_LOST, 0, false, 0, 0, 0, 0);
+    }
+}
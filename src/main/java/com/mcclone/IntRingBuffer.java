@@ -0,0 +1,66 @@
+/**
+ * Growable FIFO of primitive ints.
+ */
+
+package com.mcclone;
+
+/**
+ * First-in first-out queue of {@code int}s in a power-of-two ring, for
+ * breadth-first walks over packed cell positions without boxing. The ring
+ * doubles when full and never shrinks, so a long-lived queue stops
+ * allocating once it has seen its largest wave.
+ */
+final class IntRingBuffer {
+
+    private int[] items;
+    private int head;
+    private int size;
+
+    /**
+     * @param capacity initial capacity; rounded up to a power of two
+     */
+    IntRingBuffer(int capacity) {
+        items = new int[Integer.highestOneBit(Math.max(2, capacity - 1)) << 1];
+    }
+
+    /** Append {@code value} at the tail. */
+    void add(int value) {
+        if (size == items.length) {
+            grow();
+        }
+        items[(head + size) & (items.length - 1)] = value;
+        size++;
+    }
+
+    /**
+     * Remove the head.
+     *
+     * @return the oldest value; the queue must not be empty
+     */
+    int poll() {
+        int v = items[head];
+        head = (head + 1) & (items.length - 1);
+        size--;
+        return v;
+    }
+
+    /** @return true if nothing is queued. */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Drop every queued value. */
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        int[] bigger = new int[items.length << 1];
+        int first = items.length - head;
+        System.arraycopy(items, head, bigger, 0, first);
+        System.arraycopy(items, 0, bigger, first, head);
+        items = bigger;
+        head = 0;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Packed 4-bit values, two per byte.
+ */
+
+package com.mcclone;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-length array of values in {@code 0..15} stored two to a byte, the
+ * way Minecraft keeps per-cell light. One 16³ section of light costs 2 KiB
+ * instead of 4.
+ *
+ * <p>Even indices live in the low nibble, odd indices in the high one.</p>
+ */
+final class NibbleArray {
+
+    private final byte[] data;
+
+    /**
+     * @param length number of values; must be even
+     */
+    NibbleArray(int length) {
+        data = new byte[length >> 1];
+    }
+
+    /** @return the value at {@code i}. */
+    int get(int i) {
+        int b = data[i >> 1];
+        return (i & 1) == 0 ? b & 15 : (b >> 4) & 15;
+    }
+
+    /**
+     * @param i     index
+     * @param value new value in {@code 0..15}
+     */
+    void set(int i, int value) {
+        int j = i >> 1;
+        int b = data[j];
+        data[j] = (byte) ((i & 1) == 0 ? (b & 0xF0) | value : (b & 0x0F) | (value << 4));
+    }
+
+    /** @return the value every entry holds, or -1 if they differ. */
+    int uniformValue() {
+        byte first = data[0];
+        if ((first & 15) != ((first >> 4) & 15)) return -1;
+        for (byte b : data) {
+            if (b != first) return -1;
+        }
+        return first & 15;
+    }
+
+    /** Set every value to {@code value} ({@code 0..15}). */
+    void fill(int value) {
+        Arrays.fill(data, (byte) (value | (value << 4)));
+    }
+
+    /** @return heap used by the packed values in bytes. */
+    int footprintBytes() {
+        return 16 + data.length;
+    }
+}
@@ -48,7 +48,14 @@ public class Player {
     private static final float PLAYER_HEIGHT = 1.8f;
 
     /** Small tolerance used to keep flush contacts from registering as overlaps. */
-    private static final float COLLISION_EPSILON = 0.001f;
+    private static final float COLLISION_EPSILON = World.CONTACT_EPSILON;
+
+    /** Distances tried, nearest first, when nudging the player out of a block sideways. */
+    private static final float[] NUDGE_RADII = {0.1f, 0.2f, 0.3f, 0.5f};
+
+    /** The eight nudge directions as unit steps in X and Z. */
+    private static final float[] NUDGE_X = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final float[] NUDGE_Z = {0, 0, 1, -1, 1, -1, 1, -1};
 
     private float x;
     private float y;
@@ -56,6 +63,11 @@ public class Player {
     private float pitch;
     private float yaw;
 
+    /** Eye position at the start of the current tick; see {@link #beginTick()}. */
+    private float prevX;
+    private float prevY;
+    private float prevZ;
+
     /** Vertical velocity in blocks/s. */
     private float vy;
 
@@ -73,15 +85,37 @@ public class Player {
         this.x = x;
         this.y = y;
         this.z = z;
+        beginTick();
+    }
+
+    /**
+     * Mark the start of a simulation tick: the current position becomes the
+     * one frames drawn during the tick interpolate from (see
+     * {@link #applyCamera(float)}). Call before the tick moves the player.
+     */
+    public void beginTick() {
+        prevX = x;
+        prevY = y;
+        prevZ = z;
     }
 
     /**
      * Advance gravity and ground collision by {@code dt} seconds.
      *
+     * <p>While the column under the player isn't loaded yet (the player
+     * outran streaming, or was just respawned far away) the player hangs in
+     * place instead of falling through it; the simulation never loads
+     * chunks itself, it waits for the render thread to stream them in.</p>
+     *
      * @param world game world for ground queries
      * @param dt    elapsed time in seconds
      */
     public void tickPhysics(World world, float dt) {
+        if (!world.isColumnLoaded(x, z)) {
+            vy = 0;
+            grounded = false;
+            return;
+        }
         vy -= GRAVITY * dt;
         if (vy < -TERMINAL_VELOCITY) vy = -TERMINAL_VELOCITY;
 
@@ -110,22 +144,25 @@ public class Player {
 
         // Void rescue: if the player has fallen well below the world, respawn
         // them at the original spawn column (their current x/z may be out of
-        // bounds, so we deliberately don't reuse it).
+        // bounds, so we deliberately don't reuse it). If that column isn't
+        // loaded, park them above the world; they drop once it streams in.
         if (y - EYE < -8f) {
             x = 0f;
             z = -2f;
             float spawnGround = world.groundHeight(x, z);
-            y = spawnGround + EYE;
+            boolean known = spawnGround != Float.NEGATIVE_INFINITY;
+            y = (known ? spawnGround : World.HEIGHT) + EYE;
             vy = 0;
-            grounded = true;
+            grounded = known;
+            beginTick(); // a respawn is a jump cut, not a glide
         }
     }
 
     /**
      * Clip a vertical displacement {@code dy} against every solid block the
      * player's AABB would sweep through, mirroring vanilla's
-     * {@code Box.calculateYOffset}: each candidate block reduces the allowed
-     * offset so the box ends flush with the obstruction.
+     * {@code Box.calculateYOffset}: the nearest block in the way stops the
+     * box flush with it. See {@link World#sweep}.
      *
      * @param world the world to collide against
      * @param dy    the desired Y displacement this tick (may be 0)
@@ -133,44 +170,7 @@ public class Player {
      *         intersect any solid block
      */
     private float clipVerticalMovement(World world, float dy) {
-        if (dy == 0) return 0;
-
-        float minX = x - PLAYER_WIDTH / 2;
-        float maxX = x + PLAYER_WIDTH / 2;
-        float minZ = z - PLAYER_WIDTH / 2;
-        float maxZ = z + PLAYER_WIDTH / 2;
-        float feet = y - EYE;
-        float head = feet + PLAYER_HEIGHT;
-
-        int minBlockX = (int) Math.floor(minX + World.SIZE / 2f + COLLISION_EPSILON);
-        int maxBlockX = (int) Math.floor(maxX + World.SIZE / 2f - COLLISION_EPSILON);
-        int minBlockZ = (int) Math.floor(-maxZ + COLLISION_EPSILON);
-        int maxBlockZ = (int) Math.floor(-minZ - COLLISION_EPSILON);
-
-        // Vertical range the sweep can touch.
-        float sweptMin = Math.min(feet, feet + dy);
-        float sweptMax = Math.max(head, head + dy);
-        int minBlockY = Math.max(0, (int) Math.floor(sweptMin - 1));
-        int maxBlockY = Math.min(World.HEIGHT - 1, (int) Math.floor(sweptMax + 1));
-
-        float allowed = dy;
-        for (int bx = minBlockX; bx <= maxBlockX; bx++) {
-            for (int bz = minBlockZ; bz <= maxBlockZ; bz++) {
-                for (int by = minBlockY; by <= maxBlockY; by++) {
-                    if (!world.isSolid(bx, by, bz)) continue;
-                    float blockTop = by + 1f;
-                    float blockBottom = by;
-                    if (allowed < 0 && head > blockBottom && feet >= blockTop - COLLISION_EPSILON) {
-                        // Falling: can't pass below this block's top.
-                        allowed = Math.max(allowed, blockTop - feet);
-                    } else if (allowed > 0 && feet < blockTop && head <= blockBottom + COLLISION_EPSILON) {
-                        // Rising: can't pass above this block's bottom.
-                        allowed = Math.min(allowed, blockBottom - head);
-                    }
-                }
-            }
-        }
-        return allowed;
+        return sweep(world, 1, dy);
     }
 
     /** Backwards-compatible fixed-timestep tick used by older callers/tests. */
@@ -235,104 +235,49 @@ public class Player {
      * @return the allowed displacement ≤ {@code |d|}
      */
     private float clipHorizontalMovement(World world, float d, boolean xAxis) {
-        if (d == 0) return 0;
+        // Block Z runs opposite to OpenGL Z.
+        return xAxis ? sweep(world, 0, d) : -sweep(world, 2, -d);
+    }
 
-        float minX = x - PLAYER_WIDTH / 2;
-        float maxX = x + PLAYER_WIDTH / 2;
-        float minZ = z - PLAYER_WIDTH / 2;
-        float maxZ = z + PLAYER_WIDTH / 2;
+    /**
+     * Sweep the player's AABB through the world in block coordinates.
+     *
+     * @param axis 0, 1 or 2 for block X, Y or Z
+     * @param d    displacement along that block axis
+     * @return the allowed displacement
+     */
+    private float sweep(World world, int axis, float d) {
+        if (d == 0) return 0;
         float feet = y - EYE;
-        float head = feet + PLAYER_HEIGHT;
-
-        float sweptMinX = xAxis ? Math.min(minX, minX + d) : minX;
-        float sweptMaxX = xAxis ? Math.max(maxX, maxX + d) : maxX;
-        float sweptMinZ = xAxis ? minZ : Math.min(minZ, minZ + d);
-        float sweptMaxZ = xAxis ? maxZ : Math.max(maxZ, maxZ + d);
-
-        int minBlockX = (int) Math.floor(sweptMinX + World.SIZE / 2f);
-        int maxBlockX = (int) Math.floor(sweptMaxX + World.SIZE / 2f);
-        int minBlockZ = (int) Math.floor(-sweptMaxZ);
-        int maxBlockZ = (int) Math.floor(-sweptMinZ);
-        int minBlockY = Math.max(0, (int) Math.floor(feet + COLLISION_EPSILON));
-        int maxBlockY = Math.min(World.HEIGHT - 1, (int) Math.floor(head - COLLISION_EPSILON));
-
-        float allowed = d;
-        for (int bx = minBlockX; bx <= maxBlockX; bx++) {
-            for (int bz = minBlockZ; bz <= maxBlockZ; bz++) {
-                for (int by = minBlockY; by <= maxBlockY; by++) {
-                    if (!world.isSolid(bx, by, bz)) continue;
-                    // Block extents in world space.
-                    float blockMinX = bx - World.SIZE / 2f;
-                    float blockMaxX = blockMinX + 1f;
-                    float blockMaxZ = -bz;
-                    float blockMinZ = blockMaxZ - 1f;
-
-                    if (xAxis) {
-                        // Must overlap on Z to block X movement.
-                        if (maxZ <= blockMinZ + COLLISION_EPSILON || minZ >= blockMaxZ - COLLISION_EPSILON) continue;
-                        if (allowed > 0 && maxX <= blockMinX + COLLISION_EPSILON) {
-                            allowed = Math.min(allowed, blockMinX - maxX);
-                        } else if (allowed < 0 && minX >= blockMaxX - COLLISION_EPSILON) {
-                            allowed = Math.max(allowed, blockMaxX - minX);
-                        }
-                    } else {
-                        // Must overlap on X to block Z movement.
-                        if (maxX <= blockMinX + COLLISION_EPSILON || minX >= blockMaxX - COLLISION_EPSILON) continue;
-                        if (allowed > 0 && maxZ <= blockMinZ + COLLISION_EPSILON) {
-                            allowed = Math.min(allowed, blockMinZ - maxZ);
-                        } else if (allowed < 0 && minZ >= blockMaxZ - COLLISION_EPSILON) {
-                            allowed = Math.max(allowed, blockMaxZ - minZ);
-                        }
-                    }
-                }
-            }
-        }
-        return allowed;
+        return world.sweep(
+                World.toBlockX(x - PLAYER_WIDTH / 2), feet, World.toBlockZ(z + PLAYER_WIDTH / 2),
+                World.toBlockX(x + PLAYER_WIDTH / 2), feet + PLAYER_HEIGHT, World.toBlockZ(z - PLAYER_WIDTH / 2),
+                axis, d);
     }
 
     private boolean collidesAt(float testX, float testY, float testZ, World world) {
         // Standard Minecraft AABB: 0.6 wide × 1.8 tall, eyes at 1.62.
-        final float playerWidth = PLAYER_WIDTH;
-        final float playerHeight = PLAYER_HEIGHT;
-        final float epsilon = COLLISION_EPSILON;
-
-        float minX = testX - playerWidth / 2;
-        float maxX = testX + playerWidth / 2;
-        float minZ = testZ - playerWidth / 2;
-        float maxZ = testZ + playerWidth / 2;
+        float minX = testX - PLAYER_WIDTH / 2;
+        float maxX = testX + PLAYER_WIDTH / 2;
+        float minZ = testZ - PLAYER_WIDTH / 2;
+        float maxZ = testZ + PLAYER_WIDTH / 2;
         float minY = testY - EYE;
-        float maxY = minY + playerHeight;
-
-        int minBlockX = (int) Math.floor(minX + World.SIZE / 2f);
-        int maxBlockX = (int) Math.floor(maxX + World.SIZE / 2f);
-        int minBlockZ = (int) Math.floor(-maxZ);
-        int maxBlockZ = (int) Math.floor(-minZ);
-        int minBlockY = (int) Math.floor(minY + epsilon);
-        int maxBlockY = (int) Math.floor(maxY - epsilon);
-
-        for (int bx = minBlockX; bx <= maxBlockX; bx++) {
-            for (int bz = minBlockZ; bz <= maxBlockZ; bz++) {
-                for (int by = minBlockY; by <= maxBlockY; by++) {
-                    if (collidesWithBlock(bx, by, bz, minY, maxY, world)) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
-    }
-
-    private boolean collidesWithBlock(int bx, int by, int bz, float minY, float maxY, World world) {
-        if (world.isSolid(bx, by, bz)) {
-            float blockMinY = by;
-            float blockMaxY = by + 1.0f;
-            if (maxY > blockMinY && minY < blockMaxY) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Collision: block ({},{},{}) vs player Y {}-{}",
-                            bx, by, bz, String.format("%.3f", minY), String.format("%.3f", maxY));
-                }
-                return true;
+        float maxY = minY + PLAYER_HEIGHT;
+
+        int minBlockX = World.blockX(minX);
+        int maxBlockX = World.blockX(maxX);
+        int minBlockZ = World.blockZ(maxZ);
+        int maxBlockZ = World.blockZ(minZ);
+        int minBlockY = (int) Math.floor(minY + COLLISION_EPSILON);
+        int maxBlockY = (int) Math.floor(maxY - COLLISION_EPSILON);
+
+        if (world.anySolid(minBlockX, minBlockY, minBlockZ, maxBlockX, maxBlockY, maxBlockZ)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Collision: blocks ({},{},{})-({},{},{}) vs player Y {}-{}",
+                        minBlockX, minBlockY, minBlockZ, maxBlockX, maxBlockY, maxBlockZ,
+                        String.format("%.3f", minY), String.format("%.3f", maxY));
             }
+            return true;
         }
         return false;
     }
@@ -362,16 +307,13 @@ public class Player {
         if (!collidesAt(x, y, z, world)) return;
 
         // Pass 1: tiny horizontal nudges (eight directions, half-block max).
-        float[] horiz = {0.1f, 0.2f, 0.3f, 0.5f};
-        for (float r : horiz) {
-            float[][] dirs = {
-                    { r,  0}, {-r,  0}, { 0,  r}, { 0, -r},
-                    { r,  r}, { r, -r}, {-r,  r}, {-r, -r}
-            };
-            for (float[] d : dirs) {
-                if (!collidesAt(x + d[0], y, z + d[1], world)) {
-                    x += d[0];
-                    z += d[1];
+        for (float r : NUDGE_RADII) {
+            for (int i = 0; i < NUDGE_X.length; i++) {
+                float dx = NUDGE_X[i] * r;
+                float dz = NUDGE_Z[i] * r;
+                if (!collidesAt(x + dx, y, z + dz, world)) {
+                    x += dx;
+                    z += dz;
                     return;
                 }
             }
@@ -386,8 +328,11 @@ public class Player {
             }
         }
 
-        // Last resort: snap to ground.
-        y = world.groundHeight(x, z) + EYE;
+        // Last resort: snap to ground, if the column is loaded.
+        float ground = world.groundHeight(x, z);
+        if (ground != Float.NEGATIVE_INFINITY) {
+            y = ground + EYE;
+        }
         vy = 0;
     }
 
@@ -396,16 +341,101 @@ public class Player {
     /** Add {@code d} degrees to yaw. */
     public void addYaw(float d) { yaw += d; }
 
+    /** Set both view angles in degrees; pitch is clamped to ±89°. */
+    public void setLook(float pitch, float yaw) {
+        this.pitch = Math.max(-89, Math.min(89, pitch));
+        this.yaw = yaw;
+    }
+
     /** Add {@code d} degrees to pitch, clamped to ±89°. */
     public void addPitch(float d) { pitch = Math.max(-89, Math.min(89, pitch + d)); }
 
     /** Apply the camera transformation to the current OpenGL matrix. */
     public void applyCamera() {
+        applyCamera(1f);
+    }
+
+    /**
+     * Apply the camera transformation with the eye interpolated between the
+     * start and end of the current tick. View angles are not interpolated:
+     * mouse look applies every frame.
+     *
+     * @param alpha fraction of the tick elapsed, {@code 0..1}
+     */
+    public void applyCamera(float alpha) {
+        applyCamera(lerp(prevX, x, alpha), lerp(prevY, y, alpha), lerp(prevZ, z, alpha), pitch, yaw);
+    }
+
+    /**
+     * Apply the camera transformation for an arbitrary eye and view, as the
+     * render thread does from a {@link RenderState}.
+     */
+    public static void applyCamera(float eyeX, float eyeY, float eyeZ, float pitch, float yaw) {
         GL11.glRotatef(pitch, 1, 0, 0);
         GL11.glRotatef(yaw, 0, 1, 0);
-        GL11.glTranslatef(-x, -y, -z);
+        GL11.glTranslatef(-eyeX, -eyeY, -eyeZ);
     }
 
+    /**
+     * The matrix {@link #applyCamera()} multiplies onto the modelview stack,
+     * computed on the CPU for {@link Frustum} culling.
+     *
+     * @return a new column-major 4×4 matrix
+     */
+    public float[] viewMatrix() {
+        return viewMatrix(1f);
+    }
+
+    /**
+     * The matrix {@link #applyCamera(float)} multiplies onto the modelview
+     * stack for the same {@code alpha}.
+     *
+     * @param alpha fraction of the tick elapsed, {@code 0..1}
+     * @return a new column-major 4×4 matrix
+     */
+    public float[] viewMatrix(float alpha) {
+        return viewMatrix(lerp(prevX, x, alpha), lerp(prevY, y, alpha), lerp(prevZ, z, alpha), pitch, yaw);
+    }
+
+    /**
+     * The matrix {@link #applyCamera(float, float, float, float, float)}
+     * multiplies onto the modelview stack for the same arguments.
+     *
+     * @return a new column-major 4×4 matrix
+     */
+    public static float[] viewMatrix(float ex, float ey, float ez, float pitch, float yaw) {
+        float cp = (float) Math.cos(Math.toRadians(pitch));
+        float sp = (float) Math.sin(Math.toRadians(pitch));
+        float cy = (float) Math.cos(Math.toRadians(yaw));
+        float sy = (float) Math.sin(Math.toRadians(yaw));
+        // Rx(pitch) · Ry(yaw), then the translation folded into column 3.
+        float[] m = new float[16];
+        m[0] = cy;
+        m[1] = sp * sy;
+        m[2] = -cp * sy;
+        m[5] = cp;
+        m[6] = sp;
+        m[8] = sy;
+        m[9] = -sp * cy;
+        m[10] = cp * cy;
+        m[12] = -(m[0] * ex + m[4] * ey + m[8] * ez);
+        m[13] = -(m[1] * ex + m[5] * ey + m[9] * ez);
+        m[14] = -(m[2] * ex + m[6] * ey + m[10] * ez);
+        m[15] = 1f;
+        return m;
+    }
+
+    static float lerp(float from, float to, float alpha) {
+        return from + (to - from) * alpha;
+    }
+
+    /** @return eye X at the start of the current tick; see {@link #beginTick()}. */
+    float getPrevX() { return prevX; }
+    /** @return eye Y at the start of the current tick. */
+    float getPrevY() { return prevY; }
+    /** @return eye Z at the start of the current tick. */
+    float getPrevZ() { return prevZ; }
+
     public float getX() { return x; }
     public float getY() { return y; }
     public float getZ() { return z; }
@@ -428,6 +458,7 @@ public class Player {
         this.pitch = Math.max(-89, Math.min(89, pitch));
         this.yaw = yaw;
         this.vy = 0;
+        beginTick();
     }
 
     public float[] getEyePosition() {
@@ -435,6 +466,11 @@ public class Player {
     }
 
     public float[] getViewVector() {
+        return viewVector(pitch, yaw);
+    }
+
+    /** @return the unit view vector for the given angles in degrees; see {@link #getViewVector()}. */
+    public static float[] viewVector(float pitch, float yaw) {
         // The camera transform is R_pitch * R_yaw * Translate(-eye). Inverting
         // it shows that the world-space forward unit vector is:
         //   F = ( sin(yaw)*cos(pitch),  -sin(pitch),  -cos(yaw)*cos(pitch) )
@@ -0,0 +1,256 @@
+/**
+ * Grid raycasts against solid blocks, one at a time or in batches.
+ */
+
+package com.mcclone;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Casts rays through a {@link World} and reports the first solid block each
+ * one enters, for the crosshair and for line-of-sight style queries.
+ *
+ * <p>A ray walks the grid cell by cell with the usual DDA (Amanatides and
+ * Woo) while it is inside a section that holds solid blocks, reading the
+ * chunk's solid bitset. Anywhere else it jumps: a chunk that is not loaded
+ * is crossed in one step, and so is a run of clear sections of a loaded
+ * one, together with the open space below the world where the run reaches
+ * it, and so is everything above the chunk's highest solid block (see
+ * {@link Chunk#topSolidHeight()}). A ray over open terrain costs a step or
+ * two per chunk rather than one per block.</p>
+ *
+ * <p>Rays are in continuous block coordinates (see {@link World#toBlockX}
+ * and {@link World#toBlockZ}): six floats each, origin then direction.
+ * Distances are measured in lengths of the direction, so pass unit vectors
+ * to measure in blocks. A hit is written as four ints: the block's X, Y and
+ * Z, then the face the ray entered through as a {@link Game}
+ * {@code getPlacePosition} face index, {@link #FACE_INSIDE} if the ray
+ * started inside the block, or {@link #MISS} with the other three undefined.
+ * Nothing is allocated per ray.</p>
+ *
+ * <p>Queries only read the world. Call with the world's monitor held, or
+ * otherwise with no one editing it; a batch spread over a pool is covered
+ * by the caller's monitor because the caller waits for it.</p>
+ */
+final class Raycaster {
+
+    /** Face value of a ray that started inside the block it hit. */
+    static final int FACE_INSIDE = -1;
+
+    /** Face value of a ray that hit nothing. */
+    static final int MISS = -2;
+
+    /** Floats per ray in a batch: origin X, Y, Z, direction X, Y, Z. */
+    static final int RAY_STRIDE = 6;
+
+    /** Ints per result: block X, Y, Z and face. */
+    static final int HIT_STRIDE = 4;
+
+    /** Rays per pool task, so each task outweighs its scheduling cost. */
+    private static final int RAYS_PER_TASK = 256;
+
+    private final World world;
+
+    Raycaster(World world) {
+        this.world = world;
+    }
+
+    /**
+     * Cast one ray.
+     *
+     * @param maxDistance how far to look, in lengths of the direction
+     * @param hit         receives the result at {@code hitOffset}
+     * @return true if a solid block was hit
+     */
+    boolean cast(float ox, float oy, float oz, float dx, float dy, float dz,
+                 float maxDistance, int[] hit, int hitOffset) {
+        int bx = (int) Math.floor(ox);
+        int by = (int) Math.floor(oy);
+        int bz = (int) Math.floor(oz);
+
+        int stepX = Float.compare(dx, 0);
+        int stepY = Float.compare(dy, 0);
+        int stepZ = Float.compare(dz, 0);
+
+        float tDeltaX = (dx != 0f) ? Math.abs(1f / dx) : Float.POSITIVE_INFINITY;
+        float tDeltaY = (dy != 0f) ? Math.abs(1f / dy) : Float.POSITIVE_INFINITY;
+        float tDeltaZ = (dz != 0f) ? Math.abs(1f / dz) : Float.POSITIVE_INFINITY;
+
+        float tMaxX = boundary(ox, dx, stepX, bx);
+        float tMaxY = boundary(oy, dy, stepY, by);
+        float tMaxZ = boundary(oz, dz, stepZ, bz);
+
+        int face = FACE_INSIDE;
+        float t = 0f;
+
+        // The chunk the current cell is in, looked up again only on leaving it.
+        int cx = bx >> 4;
+        int cz = bz >> 4;
+        Chunk c = world.chunk(cx, cz);
+
+        // Each pass either steps one cell or leaves a whole clear region, and
+        // a ray crosses at most |dx| + |dy| + |dz| cell boundaries per length
+        // of its direction, so this bound is never reached; it only guards
+        // against a bad input such as a NaN looping forever.
+        float span = Math.abs(dx) + Math.abs(dy) + Math.abs(dz);
+        int maxIterations = (int) Math.min(1 << 20, Math.ceil(maxDistance * span) + 8);
+        for (int iterations = 0; t <= maxDistance && iterations < maxIterations; iterations++) {
+            if (bx >> 4 != cx || bz >> 4 != cz) {
+                cx = bx >> 4;
+                cz = bz >> 4;
+                c = world.chunk(cx, cz);
+            }
+            // Nothing solid at or above the chunk's heightmap top.
+            boolean belowTop = by >= 0 && c != null && by < c.topSolidHeight();
+            if (belowTop && !c.isSectionClear(by >> 4)) {
+                if (c.isSolid(bx & 15, by, bz & 15)) {
+                    hit[hitOffset] = bx;
+                    hit[hitOffset + 1] = by;
+                    hit[hitOffset + 2] = bz;
+                    hit[hitOffset + 3] = face;
+                    return true;
+                }
+                if (tMaxX < tMaxY && tMaxX < tMaxZ) {
+                    t = tMaxX;
+                    tMaxX += tDeltaX;
+                    bx += stepX;
+                    face = (stepX > 0) ? 5 : 4;
+                } else if (tMaxY < tMaxZ) {
+                    t = tMaxY;
+                    tMaxY += tDeltaY;
+                    by += stepY;
+                    face = (stepY > 0) ? 3 : 2;
+                } else {
+                    t = tMaxZ;
+                    tMaxZ += tDeltaZ;
+                    bz += stepZ;
+                    face = (stepZ > 0) ? 1 : 0;
+                }
+                continue;
+            }
+
+            // A clear box: this chunk column, either from the heightmap top
+            // up, or between the nearest sections below and above that hold
+            // solid blocks (without limit if the chunk isn't loaded or there
+            // are none that way).
+            int minY = Integer.MIN_VALUE;
+            int maxY = Integer.MAX_VALUE;
+            if (c != null && by >= 0 && !belowTop) {
+                minY = c.topSolidHeight();
+            } else if (c != null) {
+                int s = Math.max(-1, Math.min(Chunk.SECTIONS, by >> 4));
+                int below = s - 1;
+                while (below >= 0 && c.isSectionClear(below)) below--;
+                int above = s + 1;
+                while (above < Chunk.SECTIONS && c.isSectionClear(above)) above++;
+                if (below >= 0) minY = (below + 1) << 4;
+                if (above < Chunk.SECTIONS) maxY = (above << 4) - 1;
+            }
+            int minX = bx & ~15;
+            int minZ = bz & ~15;
+            float exitX = boundary(ox, dx, stepX, stepX > 0 ? minX + 15 : minX);
+            float exitZ = boundary(oz, dz, stepZ, stepZ > 0 ? minZ + 15 : minZ);
+            float exitY = stepY > 0 && maxY != Integer.MAX_VALUE ? boundary(oy, dy, 1, maxY)
+                    : stepY < 0 && minY != Integer.MIN_VALUE ? boundary(oy, dy, -1, minY)
+                    : Float.POSITIVE_INFINITY;
+            if (exitX < exitY && exitX < exitZ) {
+                t = exitX;
+                bx = stepX > 0 ? minX + 16 : minX - 1;
+                by = clampCell(oy + dy * t, minY, maxY);
+                bz = clampCell(oz + dz * t, minZ, minZ + 15);
+                face = (stepX > 0) ? 5 : 4;
+            } else if (exitY < exitZ) {
+                t = exitY;
+                bx = clampCell(ox + dx * t, minX, minX + 15);
+                by = stepY > 0 ? maxY + 1 : minY - 1;
+                bz = clampCell(oz + dz * t, minZ, minZ + 15);
+                face = (stepY > 0) ? 3 : 2;
+            } else if (exitZ != Float.POSITIVE_INFINITY) {
+                t = exitZ;
+                bx = clampCell(ox + dx * t, minX, minX + 15);
+                by = clampCell(oy + dy * t, minY, maxY);
+                bz = stepZ > 0 ? minZ + 16 : minZ - 1;
+                face = (stepZ > 0) ? 1 : 0;
+            } else {
+                break; // never leaves the clear box
+            }
+            tMaxX = boundary(ox, dx, stepX, bx);
+            tMaxY = boundary(oy, dy, stepY, by);
+            tMaxZ = boundary(oz, dz, stepZ, bz);
+        }
+        hit[hitOffset + 3] = MISS;
+        return false;
+    }
+
+    /**
+     * Cast every ray of a batch on the calling thread.
+     *
+     * @param rays        {@link #RAY_STRIDE} floats per ray
+     * @param count       number of rays
+     * @param maxDistance how far each ray looks
+     * @param hits        receives {@link #HIT_STRIDE} ints per ray
+     * @return the number of rays that hit a block
+     */
+    int castAll(float[] rays, int count, float maxDistance, int[] hits) {
+        return castRange(rays, 0, count, maxDistance, hits);
+    }
+
+    /**
+     * Cast a batch split into tasks of {@link #RAYS_PER_TASK} rays on
+     * {@code pool}, and wait for all of them. Results land exactly where
+     * {@link #castAll(float[], int, float, int[])} puts them.
+     *
+     * @param pool pool to run on, such as {@link TerrainGenerator#sharedPool()}
+     * @return the number of rays that hit a block
+     */
+    int castAll(float[] rays, int count, float maxDistance, int[] hits, ForkJoinPool pool) {
+        if (count <= RAYS_PER_TASK) {
+            return castRange(rays, 0, count, maxDistance, hits);
+        }
+        List<Callable<Integer>> tasks = new ArrayList<>((count + RAYS_PER_TASK - 1) / RAYS_PER_TASK);
+        for (int from = 0; from < count; from += RAYS_PER_TASK) {
+            int start = from;
+            int end = Math.min(count, from + RAYS_PER_TASK);
+            tasks.add(() -> castRange(rays, start, end, maxDistance, hits));
+        }
+        int hitCount = 0;
+        try {
+            for (Future<Integer> f : pool.invokeAll(tasks)) {
+                hitCount += f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while casting rays", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Raycast failed", e.getCause());
+        }
+        return hitCount;
+    }
+
+    private int castRange(float[] rays, int from, int to, float maxDistance, int[] hits) {
+        int hitCount = 0;
+        for (int i = from; i < to; i++) {
+            int r = i * RAY_STRIDE;
+            if (cast(rays[r], rays[r + 1], rays[r + 2], rays[r + 3], rays[r + 4], rays[r + 5],
+                    maxDistance, hits, i * HIT_STRIDE)) {
+                hitCount++;
+            }
+        }
+        return hitCount;
+    }
+
+    /** @return the ray parameter at which it crosses out of cell {@code b} along one axis. */
+    private static float boundary(float o, float d, int step, int b) {
+        if (d == 0f) return Float.POSITIVE_INFINITY;
+        return ((step > 0 ? b + 1 : b) - o) / d;
+    }
+
+    private static int clampCell(float v, int min, int max) {
+        return (int) Math.max(min, Math.min(max, Math.floor(v)));
+    }
+}
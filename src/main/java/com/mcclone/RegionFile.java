@@ -0,0 +1,224 @@
+/**
+ * One region file: 32×32 chunk columns with random access by chunk.
+ */
+
+package com.mcclone;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * A region file, laid out like Minecraft's Anvil files.
+ *
+ * <p>The file is a sequence of {@link #SECTOR_BYTES}-byte sectors. The
+ * first {@link #HEADER_SECTORS} hold a table with one entry per chunk in the
+ * region, {@code (int firstSector, int byteLength)}, at index
+ * {@code lz * REGION_CHUNKS + lx}. A first sector of zero means the chunk
+ * has never been written. Each chunk's payload fills whole sectors from
+ * {@code firstSector} on, so any chunk can be read or replaced without
+ * touching the others.</p>
+ *
+ * <p>Writes never overwrite live data. {@link #write} puts a new payload
+ * into free sectors and only updates the table in memory; {@link #sync}
+ * makes the payloads durable, then writes the changed table entries (each
+ * as one 8-byte write within a sector), syncs again, and only then frees
+ * the sectors the old entries pointed at. The table on disk therefore only
+ * ever points at synced payloads: after a crash each chunk reads back as it
+ * was at the last completed {@code sync}, or as one of its later writes if
+ * that sync was in progress, never as a mix. Free sectors are tracked in
+ * memory, rebuilt from the table on open, and reused first-fit before the
+ * file grows.</p>
+ *
+ * <p>All integers are big-endian. Not thread-safe.</p>
+ */
+final class RegionFile implements Closeable {
+
+    /** Chunks along each edge of a region. */
+    static final int REGION_CHUNKS = 32;
+
+    /** Bytes per sector. */
+    static final int SECTOR_BYTES = 4096;
+
+    /** Chunks in a region. */
+    private static final int ENTRIES = REGION_CHUNKS * REGION_CHUNKS;
+
+    /** Sectors taken by the offset table (8 bytes per entry). */
+    private static final int HEADER_SECTORS = ENTRIES * 8 / SECTOR_BYTES;
+
+    private final RandomAccessFile file;
+
+    /** First sector of each chunk, 0 when absent. */
+    private final int[] firstSector = new int[ENTRIES];
+
+    /** Payload length of each chunk in bytes. */
+    private final int[] length = new int[ENTRIES];
+
+    /** First sector of each chunk in the table on disk, 0 when absent. */
+    private final int[] syncedSector = new int[ENTRIES];
+
+    /** Payload length of each chunk in the table on disk. */
+    private final int[] syncedLength = new int[ENTRIES];
+
+    /** Entries whose in-memory table differs from the one on disk. */
+    private final BitSet unsynced = new BitSet(ENTRIES);
+
+    /**
+     * Sectors in use by the header or a chunk, including chunks only the
+     * table on disk still points at.
+     */
+    private final BitSet used = new BitSet();
+
+    /** Sectors in the file. */
+    private int sectorCount;
+
+    /**
+     * Open (creating if needed) a region file.
+     *
+     * @param path the file
+     * @throws IOException if the file can't be opened or its table is corrupt
+     */
+    RegionFile(File path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        try {
+            if (file.length() < (long) HEADER_SECTORS * SECTOR_BYTES) {
+                file.setLength((long) HEADER_SECTORS * SECTOR_BYTES);
+            }
+            sectorCount = (int) ((file.length() + SECTOR_BYTES - 1) / SECTOR_BYTES);
+            used.set(0, HEADER_SECTORS);
+            file.seek(0);
+            for (int i = 0; i < ENTRIES; i++) {
+                int sector = file.readInt();
+                int len = file.readInt();
+                if (sector == 0) continue;
+                int sectors = sectorsFor(len);
+                if (sector < HEADER_SECTORS || len <= 0 || sector + sectors > sectorCount) {
+                    throw new IOException("Corrupt region table entry " + i + " in " + path);
+                }
+                firstSector[i] = sector;
+                length[i] = len;
+                syncedSector[i] = sector;
+                syncedLength[i] = len;
+                used.set(sector, sector + sectors);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /** @return the table index of region-local chunk ({@code lx}, {@code lz}). */
+    private static int entry(int lx, int lz) {
+        return lz * REGION_CHUNKS + lx;
+    }
+
+    private static int sectorsFor(int bytes) {
+        return (bytes + SECTOR_BYTES - 1) / SECTOR_BYTES;
+    }
+
+    /** @return true if the chunk has been written to this region. */
+    boolean contains(int lx, int lz) {
+        return firstSector[entry(lx, lz)] != 0;
+    }
+
+    /**
+     * Read one chunk's payload.
+     *
+     * @param lx region-local chunk X, {@code 0..31}
+     * @param lz region-local chunk Z, {@code 0..31}
+     * @return the payload, or {@code null} if the chunk was never written
+     * @throws IOException on read failure
+     */
+    byte[] read(int lx, int lz) throws IOException {
+        int i = entry(lx, lz);
+        if (firstSector[i] == 0) return null;
+        byte[] data = new byte[length[i]];
+        file.seek((long) firstSector[i] * SECTOR_BYTES);
+        file.readFully(data);
+        return data;
+    }
+
+    /**
+     * Store one chunk's payload, replacing any previous copy. Reads see it
+     * at once; it survives a crash only once {@link #sync} has returned.
+     *
+     * @param lx   region-local chunk X, {@code 0..31}
+     * @param lz   region-local chunk Z, {@code 0..31}
+     * @param data the payload; must not be empty
+     * @throws IOException on write failure
+     */
+    void write(int lx, int lz, byte[] data) throws IOException {
+        int i = entry(lx, lz);
+        int sectors = sectorsFor(data.length);
+        int start = allocate(sectors);
+        file.seek((long) start * SECTOR_BYTES);
+        file.write(data);
+        // Pad the last sector so the file length stays sector-aligned.
+        int pad = sectors * SECTOR_BYTES - data.length;
+        if (pad > 0) {
+            file.write(new byte[pad]);
+        }
+        // A copy written since the last sync was never in the table on disk,
+        // so it can go now; the synced copy stays until sync() replaces it.
+        if (firstSector[i] != 0 && firstSector[i] != syncedSector[i]) {
+            used.clear(firstSector[i], firstSector[i] + sectorsFor(length[i]));
+        }
+        firstSector[i] = start;
+        length[i] = data.length;
+        unsynced.set(i);
+    }
+
+    /** Reserve the first run of {@code sectors} free sectors, growing the file if none fits. */
+    private int allocate(int sectors) {
+        int start = used.nextClearBit(HEADER_SECTORS);
+        while (start < sectorCount) {
+            int end = used.nextSetBit(start);
+            if (end < 0 || end - start >= sectors) break;
+            start = used.nextClearBit(end);
+        }
+        used.set(start, start + sectors);
+        sectorCount = Math.max(sectorCount, start + sectors);
+        return start;
+    }
+
+    /**
+     * Make every write so far durable: flush the payloads, point the table on
+     * disk at them, flush again, and free the sectors it no longer uses.
+     *
+     * @throws IOException on write or sync failure
+     */
+    void sync() throws IOException {
+        file.getFD().sync();
+        if (unsynced.isEmpty()) return;
+        byte[] entry = new byte[8];
+        ByteBuffer buf = ByteBuffer.wrap(entry);
+        for (int i = unsynced.nextSetBit(0); i >= 0; i = unsynced.nextSetBit(i + 1)) {
+            buf.clear();
+            buf.putInt(firstSector[i]).putInt(length[i]);
+            file.seek(i * 8L);
+            file.write(entry);
+        }
+        file.getFD().sync();
+        for (int i = unsynced.nextSetBit(0); i >= 0; i = unsynced.nextSetBit(i + 1)) {
+            if (syncedSector[i] != 0) {
+                used.clear(syncedSector[i], syncedSector[i] + sectorsFor(syncedLength[i]));
+            }
+            syncedSector[i] = firstSector[i];
+            syncedLength[i] = length[i];
+        }
+        unsynced.clear();
+    }
+
+    /** Sync anything still pending, then close the file. */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!unsynced.isEmpty()) sync();
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * A directory of region files addressed by chunk coordinates.
+ */
+
+package com.mcclone;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps chunk coordinates onto {@link RegionFile}s named
+ * {@code r.<rx>.<rz>.bgr} inside one directory, opening each file on first
+ * use. Every method locks the store, so one store can be shared by the
+ * world streaming chunks in and out on the render thread and a save
+ * writing on its own thread; callers that must check and write atomically
+ * hold the store's monitor around both. A store must be closed, which
+ * syncs everything written to disk.
+ */
+final class RegionStore implements Closeable {
+
+    private final File dir;
+    private final Map<Long, RegionFile> open = new HashMap<>();
+
+    /**
+     * @param dir the region directory; created on the first write
+     */
+    RegionStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @param cx chunk X
+     * @param cz chunk Z
+     * @return the chunk's payload, or {@code null} if it has never been saved
+     * @throws IOException on read failure
+     */
+    synchronized byte[] read(int cx, int cz) throws IOException {
+        RegionFile region = region(cx, cz, false);
+        if (region == null) return null;
+        return region.read(Math.floorMod(cx, RegionFile.REGION_CHUNKS),
+                Math.floorMod(cz, RegionFile.REGION_CHUNKS));
+    }
+
+    /**
+     * @return true if the chunk has been saved to this store
+     * @throws IOException if its region file can't be opened
+     */
+    synchronized boolean contains(int cx, int cz) throws IOException {
+        RegionFile region = region(cx, cz, false);
+        return region != null && region.contains(Math.floorMod(cx, RegionFile.REGION_CHUNKS),
+                Math.floorMod(cz, RegionFile.REGION_CHUNKS));
+    }
+
+    /**
+     * Store a chunk's payload, replacing any previous copy.
+     *
+     * @throws IOException on write failure
+     */
+    synchronized void write(int cx, int cz, byte[] data) throws IOException {
+        region(cx, cz, true).write(Math.floorMod(cx, RegionFile.REGION_CHUNKS),
+                Math.floorMod(cz, RegionFile.REGION_CHUNKS), data);
+    }
+
+    private RegionFile region(int cx, int cz, boolean create) throws IOException {
+        int rx = Math.floorDiv(cx, RegionFile.REGION_CHUNKS);
+        int rz = Math.floorDiv(cz, RegionFile.REGION_CHUNKS);
+        Long key = ((long) rx << 32) | (rz & 0xFFFFFFFFL);
+        RegionFile region = open.get(key);
+        if (region != null) return region;
+        File path = new File(dir, "r." + rx + "." + rz + ".bgr");
+        if (!path.isFile()) {
+            if (!create) return null;
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Can't create region directory " + dir);
+            }
+        }
+        region = new RegionFile(path);
+        open.put(key, region);
+        return region;
+    }
+
+    /** @return the region directory. */
+    File dir() {
+        return dir;
+    }
+
+    /**
+     * Force everything written so far to disk and into the region tables,
+     * keeping the files open. Until then a crash loses those writes.
+     *
+     * @throws IOException on sync failure
+     */
+    synchronized void sync() throws IOException {
+        for (RegionFile region : open.values()) {
+            region.sync();
+        }
+    }
+
+    /** Sync and close every open region file. */
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (RegionFile region : open.values()) {
+            try {
+                region.sync();
+                region.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        open.clear();
+        if (failure != null) throw failure;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * What the render thread draws, as published by the simulation thread.
+ */
+
+package com.mcclone;
+
+/**
+ * Everything the render thread needs from the simulation for one frame:
+ * the player's eye at the start and end of the latest tick, the block the
+ * crosshair is on, the hotbar, the sky and a few counters. The simulation
+ * fills one through {@link TripleBuffer#back()} after each batch of ticks;
+ * once published it is not written again until the render thread has moved
+ * on to a newer one.
+ *
+ * <p>Chunks are not part of it. The render thread finds changed chunks
+ * itself from their versions, under the world's monitor; see
+ * {@link World}.</p>
+ */
+final class RenderState {
+
+    /** Eye position at the start of the latest tick. */
+    float prevX;
+    float prevY;
+    float prevZ;
+
+    /** Eye position at the end of the latest tick. */
+    float x;
+    float y;
+    float z;
+
+    /** {@link System#nanoTime()} at which the latest tick was due. */
+    long tickNanos;
+
+    /** The targeted block and face as from {@link Game#raycast}; valid when {@link #highlighted}. */
+    final int[] highlight = new int[4];
+    boolean highlighted;
+
+    /** Copy of the hotbar and inventory, for the HUD. */
+    final Hotbar hotbar = new Hotbar();
+
+    /** Sky colour and world brightness from {@link DayNightCycle}. */
+    final float[] sky = new float[3];
+    float brightness;
+
+    /** Ticks the simulation has dropped so far catching up after stalls. */
+    long droppedTicks;
+
+    /** Fill in the player's eye from the tick just run. */
+    void setEye(Player player) {
+        prevX = player.getPrevX();
+        prevY = player.getPrevY();
+        prevZ = player.getPrevZ();
+        x = player.getX();
+        y = player.getY();
+        z = player.getZ();
+    }
+
+    /** @return eye X {@code alpha} of the way through the latest tick. */
+    float eyeX(float alpha) {
+        return Player.lerp(prevX, x, alpha);
+    }
+
+    /** @return eye Y {@code alpha} of the way through the latest tick. */
+    float eyeY(float alpha) {
+        return Player.lerp(prevY, y, alpha);
+    }
+
+    /** @return eye Z {@code alpha} of the way through the latest tick. */
+    float eyeZ(float alpha) {
+        return Player.lerp(prevZ, z, alpha);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Face-to-face visibility through one 16³ section, for occlusion culling.
+ */
+
+package com.mcclone;
+
+import java.util.Arrays;
+
+/**
+ * Computes which faces of a section can see each other through non-opaque
+ * cells.
+ *
+ * <p>The section's open (non-{@link BlockType#isOpaque() opaque}) cells are
+ * flood-filled into connected components; every pair of faces touched by the
+ * same component is marked connected. The result is a 6×6 bit matrix in a
+ * {@code long}, bit {@code a * 6 + b} set when a line of sight entering
+ * through face {@code a} can leave through face {@code b}. {@link World}
+ * walks these matrices breadth-first from the camera's section to find the
+ * sections that could possibly be seen.</p>
+ *
+ * <p>Faces are numbered by the direction they face in world-array
+ * coordinates; {@link #opposite(int)} is {@code face ^ 1}. Instances keep
+ * flood-fill scratch and are not thread-safe.</p>
+ */
+final class SectionConnectivity {
+
+    /** Number of section faces. */
+    static final int FACES = 6;
+
+    static final int NEG_X = 0;
+    static final int POS_X = 1;
+    static final int NEG_Y = 2;
+    static final int POS_Y = 3;
+    static final int NEG_Z = 4;
+    static final int POS_Z = 5;
+
+    /** Section step along X for each face direction. */
+    static final int[] STEP_X = {-1, 1, 0, 0, 0, 0};
+
+    /** Section step along Y for each face direction. */
+    static final int[] STEP_Y = {0, 0, -1, 1, 0, 0};
+
+    /** Section step along Z for each face direction. */
+    static final int[] STEP_Z = {0, 0, 0, 0, -1, 1};
+
+    /** Every face sees every other face (an empty or not yet meshed section). */
+    static final long ALL = (1L << (FACES * FACES)) - 1;
+
+    private static final int SIZE = ChunkSection.SIZE;
+    private static final int VOLUME = ChunkSection.VOLUME;
+
+    private final boolean[] open = new boolean[VOLUME];
+    private final boolean[] seen = new boolean[VOLUME];
+    private final int[] queue = new int[VOLUME];
+
+    /** @return the face on the other side of the section from {@code face}. */
+    static int opposite(int face) {
+        return face ^ 1;
+    }
+
+    /** @return true if {@code mask} lets sight pass from face {@code a} to face {@code b}. */
+    static boolean connected(long mask, int a, int b) {
+        return ((mask >>> (a * FACES + b)) & 1L) != 0;
+    }
+
+    /**
+     * Compute the connectivity of one section of a padded mesher snapshot.
+     *
+     * @param cells   padded cells from {@link ChunkMesher.Snapshot}
+     * @param section section index, 0 at the bottom of the column
+     * @return the 6×6 face connectivity matrix
+     */
+    long compute(byte[] cells, int section) {
+        int baseY = section * SIZE;
+        int openCount = 0;
+        for (int i = 0; i < VOLUME; i++) {
+            int id = cells[ChunkMesher.paddedIndex((i & 15) + 1, baseY + (i >> 8), ((i >> 4) & 15) + 1)];
+            boolean o = !BlockType.isOpaqueId(id);
+            open[i] = o;
+            if (o) openCount++;
+        }
+        if (openCount == 0) return 0L;
+        if (openCount == VOLUME) return ALL;
+
+        Arrays.fill(seen, false);
+        long mask = 0L;
+        for (int start = 0; start < VOLUME; start++) {
+            if (!open[start] || seen[start]) continue;
+            int faces = flood(start);
+            for (int a = 0; a < FACES; a++) {
+                if ((faces & (1 << a)) == 0) continue;
+                for (int b = 0; b < FACES; b++) {
+                    if ((faces & (1 << b)) != 0) {
+                        mask |= 1L << (a * FACES + b);
+                    }
+                }
+            }
+            if (mask == ALL) break;
+        }
+        return mask;
+    }
+
+    /**
+     * Flood-fill one component of open cells.
+     *
+     * @return bit set of the faces the component touches
+     */
+    private int flood(int start) {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        seen[start] = true;
+        int faces = 0;
+        while (head < tail) {
+            int i = queue[head++];
+            int x = i & 15;
+            int z = (i >> 4) & 15;
+            int y = i >> 8;
+            if (x == 0) faces |= 1 << NEG_X; else tail = visit(i - 1, tail);
+            if (x == SIZE - 1) faces |= 1 << POS_X; else tail = visit(i + 1, tail);
+            if (y == 0) faces |= 1 << NEG_Y; else tail = visit(i - SIZE * SIZE, tail);
+            if (y == SIZE - 1) faces |= 1 << POS_Y; else tail = visit(i + SIZE * SIZE, tail);
+            if (z == 0) faces |= 1 << NEG_Z; else tail = visit(i - SIZE, tail);
+            if (z == SIZE - 1) faces |= 1 << POS_Z; else tail = visit(i + SIZE, tail);
+        }
+        return faces;
+    }
+
+    private int visit(int i, int tail) {
+        if (open[i] && !seen[i]) {
+            seen[i] = true;
+            queue[tail++] = i;
+        }
+        return tail;
+    }
+}
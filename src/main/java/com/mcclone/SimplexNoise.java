@@ -0,0 +1,369 @@
+/**
+ * Seeded 2D/3D simplex noise with octave summation.
+ */
+
+package com.mcclone;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Fractal simplex noise: several octaves of Ken Perlin's simplex noise,
+ * each twice the frequency and {@code persistence} times the amplitude of
+ * the one before, normalised to roughly {@code [-1, 1]}.
+ *
+ * <p>Single samples come from {@link #sample(double, double)} and
+ * {@link #sample(double, double, double)}. Generation should prefer the grid
+ * forms, {@link #sampleGrid(double[], int, int, int, int)} for a patch of
+ * columns and {@link #sampleGrid(double[], int, int, int, int, int, int)} for
+ * a box of blocks. Neighbouring samples share simplex corners, so the grid
+ * forms hash each lattice corner once per octave into a small table and then
+ * only look gradients up. They return exactly the same values as the single
+ * sample methods at the same points.</p>
+ *
+ * <p>Octave permutations are fixed by the seed; instances are immutable and
+ * safe to share between threads.</p>
+ */
+final class SimplexNoise {
+
+    private static final double F2 = 0.5 * (Math.sqrt(3.0) - 1.0);
+    private static final double G2 = (3.0 - Math.sqrt(3.0)) / 6.0;
+    private static final double F3 = 1.0 / 3.0;
+    private static final double G3 = 1.0 / 6.0;
+
+    /** 2D gradients: the four diagonals and four axes. */
+    private static final double[] GRAD2_X = {1, -1, 1, -1, 1, -1, 0, 0};
+    private static final double[] GRAD2_Y = {1, 1, -1, -1, 0, 0, 1, -1};
+
+    /** 3D gradients: the twelve cube edge midpoints. */
+    private static final double[] GRAD3_X = {1, -1, 1, -1, 1, -1, 1, -1, 0, 0, 0, 0};
+    private static final double[] GRAD3_Y = {1, 1, -1, -1, 0, 0, 0, 0, 1, -1, 1, -1};
+    private static final double[] GRAD3_Z = {0, 0, 0, 0, 1, 1, -1, -1, 1, 1, -1, -1};
+
+    /** Per octave: a shuffled 0..255 permutation, repeated to 512 entries. */
+    private final short[][] perm;
+
+    /** Per octave sample frequency and amplitude. */
+    private final double[] frequency;
+    private final double[] amplitude;
+
+    /** 1 / sum of amplitudes, so the sum stays within about [-1, 1]. */
+    private final double scale;
+
+    /**
+     * @param seed          noise seed; equal seeds give equal noise
+     * @param octaves       number of octaves summed, at least 1
+     * @param baseFrequency frequency of the first octave, in cycles per block
+     * @param persistence   amplitude ratio between successive octaves
+     */
+    SimplexNoise(long seed, int octaves, double baseFrequency, double persistence) {
+        if (octaves < 1) {
+            throw new IllegalArgumentException("octaves must be >= 1: " + octaves);
+        }
+        perm = new short[octaves][];
+        frequency = new double[octaves];
+        amplitude = new double[octaves];
+        Random rng = new Random(seed);
+        double freq = baseFrequency;
+        double amp = 1;
+        double total = 0;
+        for (int o = 0; o < octaves; o++) {
+            short[] p = new short[512];
+            for (int i = 0; i < 256; i++) {
+                p[i] = (short) i;
+            }
+            for (int i = 255; i > 0; i--) {
+                int j = rng.nextInt(i + 1);
+                short t = p[i];
+                p[i] = p[j];
+                p[j] = t;
+            }
+            System.arraycopy(p, 0, p, 256, 256);
+            perm[o] = p;
+            frequency[o] = freq;
+            amplitude[o] = amp;
+            total += amp;
+            freq *= 2;
+            amp *= persistence;
+        }
+        scale = 1 / total;
+    }
+
+    /** @return fractal 2D noise at ({@code x}, {@code z}), about {@code [-1, 1]}. */
+    double sample(double x, double z) {
+        double sum = 0;
+        for (int o = 0; o < perm.length; o++) {
+            short[] p = perm[o];
+            double xs = x * frequency[o];
+            double zs = z * frequency[o];
+            double s = (xs + zs) * F2;
+            int i = floor(xs + s);
+            int j = floor(zs + s);
+            int i1 = corner2(xs, zs, i, j);
+            int j1 = 1 - i1;
+            sum += amplitude[o] * noise2(xs, zs, i, j, i1,
+                    grad2(p, i, j), grad2(p, i + i1, j + j1), grad2(p, i + 1, j + 1));
+        }
+        return sum * scale;
+    }
+
+    /**
+     * Sample a {@code w × d} patch of integer columns: {@code out[a * d + b]}
+     * receives {@link #sample(double, double) sample(x0 + a, z0 + b)}.
+     *
+     * @param out at least {@code w * d} entries; overwritten
+     */
+    void sampleGrid(double[] out, int x0, int z0, int w, int d) {
+        Arrays.fill(out, 0, w * d, 0);
+        for (int o = 0; o < perm.length; o++) {
+            short[] p = perm[o];
+            double f = frequency[o];
+            // Skewed-lattice bounds of every corner any sample can touch.
+            double lo = Math.min(x0 * f, (x0 + w - 1) * f);
+            double loZ = Math.min(z0 * f, (z0 + d - 1) * f);
+            double hi = Math.max(x0 * f, (x0 + w - 1) * f);
+            double hiZ = Math.max(z0 * f, (z0 + d - 1) * f);
+            int iMin = floor(lo + (lo + loZ) * F2);
+            int jMin = floor(loZ + (lo + loZ) * F2);
+            int iSpan = floor(hi + (hi + hiZ) * F2) + 2 - iMin;
+            int jSpan = floor(hiZ + (hi + hiZ) * F2) + 2 - jMin;
+            byte[] grads = new byte[iSpan * jSpan];
+            for (int a = 0; a < iSpan; a++) {
+                for (int b = 0; b < jSpan; b++) {
+                    grads[a * jSpan + b] = (byte) grad2(p, iMin + a, jMin + b);
+                }
+            }
+            double amp = amplitude[o];
+            for (int a = 0; a < w; a++) {
+                double xs = (x0 + a) * f;
+                for (int b = 0; b < d; b++) {
+                    double zs = (z0 + b) * f;
+                    double s = (xs + zs) * F2;
+                    int i = floor(xs + s);
+                    int j = floor(zs + s);
+                    int i1 = corner2(xs, zs, i, j);
+                    int j1 = 1 - i1;
+                    int g = (i - iMin) * jSpan + (j - jMin);
+                    out[a * d + b] += amp * noise2(xs, zs, i, j, i1,
+                            grads[g], grads[g + i1 * jSpan + j1], grads[g + jSpan + 1]);
+                }
+            }
+        }
+        for (int n = 0; n < w * d; n++) {
+            out[n] *= scale;
+        }
+    }
+
+    /** @return fractal 3D noise at ({@code x}, {@code y}, {@code z}), about {@code [-1, 1]}. */
+    double sample(double x, double y, double z) {
+        int[] offsets = new int[6];
+        double sum = 0;
+        for (int o = 0; o < perm.length; o++) {
+            short[] p = perm[o];
+            double xs = x * frequency[o];
+            double ys = y * frequency[o];
+            double zs = z * frequency[o];
+            double s = (xs + ys + zs) * F3;
+            int i = floor(xs + s);
+            int j = floor(ys + s);
+            int k = floor(zs + s);
+            corners3(xs, ys, zs, i, j, k, offsets);
+            sum += amplitude[o] * noise3(xs, ys, zs, i, j, k, offsets,
+                    grad3(p, i, j, k),
+                    grad3(p, i + offsets[0], j + offsets[1], k + offsets[2]),
+                    grad3(p, i + offsets[3], j + offsets[4], k + offsets[5]),
+                    grad3(p, i + 1, j + 1, k + 1));
+        }
+        return sum * scale;
+    }
+
+    /**
+     * Sample a {@code w × h × d} box of integer cells:
+     * {@code out[(a * h + c) * d + b]} receives
+     * {@link #sample(double, double, double) sample(x0 + a, y0 + c, z0 + b)}.
+     *
+     * @param out at least {@code w * h * d} entries; overwritten
+     */
+    void sampleGrid(double[] out, int x0, int y0, int z0, int w, int h, int d) {
+        Arrays.fill(out, 0, w * h * d, 0);
+        int[] offsets = new int[6];
+        for (int o = 0; o < perm.length; o++) {
+            short[] p = perm[o];
+            double f = frequency[o];
+            double loX = Math.min(x0 * f, (x0 + w - 1) * f);
+            double loY = Math.min(y0 * f, (y0 + h - 1) * f);
+            double loZ = Math.min(z0 * f, (z0 + d - 1) * f);
+            double hiX = Math.max(x0 * f, (x0 + w - 1) * f);
+            double hiY = Math.max(y0 * f, (y0 + h - 1) * f);
+            double hiZ = Math.max(z0 * f, (z0 + d - 1) * f);
+            double loS = (loX + loY + loZ) * F3;
+            double hiS = (hiX + hiY + hiZ) * F3;
+            int iMin = floor(loX + loS);
+            int jMin = floor(loY + loS);
+            int kMin = floor(loZ + loS);
+            int iSpan = floor(hiX + hiS) + 2 - iMin;
+            int jSpan = floor(hiY + hiS) + 2 - jMin;
+            int kSpan = floor(hiZ + hiS) + 2 - kMin;
+            int ij = jSpan * kSpan;
+            byte[] grads = new byte[iSpan * ij];
+            for (int a = 0; a < iSpan; a++) {
+                for (int b = 0; b < jSpan; b++) {
+                    for (int c = 0; c < kSpan; c++) {
+                        grads[a * ij + b * kSpan + c] = (byte) grad3(p, iMin + a, jMin + b, kMin + c);
+                    }
+                }
+            }
+            double amp = amplitude[o];
+            for (int a = 0; a < w; a++) {
+                double xs = (x0 + a) * f;
+                for (int c = 0; c < h; c++) {
+                    double ys = (y0 + c) * f;
+                    for (int b = 0; b < d; b++) {
+                        double zs = (z0 + b) * f;
+                        double s = (xs + ys + zs) * F3;
+                        int i = floor(xs + s);
+                        int j = floor(ys + s);
+                        int k = floor(zs + s);
+                        corners3(xs, ys, zs, i, j, k, offsets);
+                        int g = (i - iMin) * ij + (j - jMin) * kSpan + (k - kMin);
+                        out[(a * h + c) * d + b] += amp * noise3(xs, ys, zs, i, j, k, offsets,
+                                grads[g],
+                                grads[g + offsets[0] * ij + offsets[1] * kSpan + offsets[2]],
+                                grads[g + offsets[3] * ij + offsets[4] * kSpan + offsets[5]],
+                                grads[g + ij + kSpan + 1]);
+                    }
+                }
+            }
+        }
+        for (int n = 0; n < w * h * d; n++) {
+            out[n] *= scale;
+        }
+    }
+
+    private static int grad2(short[] p, int i, int j) {
+        return p[(i & 255) + p[j & 255]] & 7;
+    }
+
+    private static int grad3(short[] p, int i, int j, int k) {
+        return p[(i & 255) + p[(j & 255) + p[k & 255]]] % 12;
+    }
+
+    /** @return 1 if the sample lies in the lower simplex of its cell (second corner +x), else 0. */
+    private static int corner2(double xs, double zs, int i, int j) {
+        double t = (i + j) * G2;
+        return xs - (i - t) > zs - (j - t) ? 1 : 0;
+    }
+
+    /**
+     * Simplex corner contributions for one 2D sample.
+     *
+     * @param i1 second corner's x offset; its z offset is {@code 1 - i1}
+     * @param g0 gradient index of corner (i, j), and so on for the others
+     */
+    private static double noise2(double xs, double zs, int i, int j, int i1, int g0, int g1, int g2) {
+        double t = (i + j) * G2;
+        double x0 = xs - (i - t);
+        double y0 = zs - (j - t);
+        double x1 = x0 - i1 + G2;
+        double y1 = y0 - (1 - i1) + G2;
+        double x2 = x0 - 1 + 2 * G2;
+        double y2 = y0 - 1 + 2 * G2;
+        double n = 0;
+        double t0 = 0.5 - x0 * x0 - y0 * y0;
+        if (t0 > 0) {
+            t0 *= t0;
+            n += t0 * t0 * (GRAD2_X[g0] * x0 + GRAD2_Y[g0] * y0);
+        }
+        double t1 = 0.5 - x1 * x1 - y1 * y1;
+        if (t1 > 0) {
+            t1 *= t1;
+            n += t1 * t1 * (GRAD2_X[g1] * x1 + GRAD2_Y[g1] * y1);
+        }
+        double t2 = 0.5 - x2 * x2 - y2 * y2;
+        if (t2 > 0) {
+            t2 *= t2;
+            n += t2 * t2 * (GRAD2_X[g2] * x2 + GRAD2_Y[g2] * y2);
+        }
+        return 70 * n;
+    }
+
+    /** Fill {@code out} with the second and third corner offsets of a 3D sample's simplex. */
+    private static void corners3(double xs, double ys, double zs, int i, int j, int k, int[] out) {
+        double t = (i + j + k) * G3;
+        double x0 = xs - (i - t);
+        double y0 = ys - (j - t);
+        double z0 = zs - (k - t);
+        if (x0 >= y0) {
+            if (y0 >= z0) {
+                set(out, 1, 0, 0, 1, 1, 0);
+            } else if (x0 >= z0) {
+                set(out, 1, 0, 0, 1, 0, 1);
+            } else {
+                set(out, 0, 0, 1, 1, 0, 1);
+            }
+        } else {
+            if (y0 < z0) {
+                set(out, 0, 0, 1, 0, 1, 1);
+            } else if (x0 < z0) {
+                set(out, 0, 1, 0, 0, 1, 1);
+            } else {
+                set(out, 0, 1, 0, 1, 1, 0);
+            }
+        }
+    }
+
+    private static void set(int[] out, int a, int b, int c, int d, int e, int f) {
+        out[0] = a;
+        out[1] = b;
+        out[2] = c;
+        out[3] = d;
+        out[4] = e;
+        out[5] = f;
+    }
+
+    /** Simplex corner contributions for one 3D sample. */
+    private static double noise3(double xs, double ys, double zs, int i, int j, int k, int[] off,
+                                 int g0, int g1, int g2, int g3) {
+        double t = (i + j + k) * G3;
+        double x0 = xs - (i - t);
+        double y0 = ys - (j - t);
+        double z0 = zs - (k - t);
+        double x1 = x0 - off[0] + G3;
+        double y1 = y0 - off[1] + G3;
+        double z1 = z0 - off[2] + G3;
+        double x2 = x0 - off[3] + 2 * G3;
+        double y2 = y0 - off[4] + 2 * G3;
+        double z2 = z0 - off[5] + 2 * G3;
+        double x3 = x0 - 1 + 3 * G3;
+        double y3 = y0 - 1 + 3 * G3;
+        double z3 = z0 - 1 + 3 * G3;
+        double n = 0;
+        double t0 = 0.6 - x0 * x0 - y0 * y0 - z0 * z0;
+        if (t0 > 0) {
+            t0 *= t0;
+            n += t0 * t0 * (GRAD3_X[g0] * x0 + GRAD3_Y[g0] * y0 + GRAD3_Z[g0] * z0);
+        }
+        double t1 = 0.6 - x1 * x1 - y1 * y1 - z1 * z1;
+        if (t1 > 0) {
+            t1 *= t1;
+            n += t1 * t1 * (GRAD3_X[g1] * x1 + GRAD3_Y[g1] * y1 + GRAD3_Z[g1] * z1);
+        }
+        double t2 = 0.6 - x2 * x2 - y2 * y2 - z2 * z2;
+        if (t2 > 0) {
+            t2 *= t2;
+            n += t2 * t2 * (GRAD3_X[g2] * x2 + GRAD3_Y[g2] * y2 + GRAD3_Z[g2] * z2);
+        }
+        double t3 = 0.6 - x3 * x3 - y3 * y3 - z3 * z3;
+        if (t3 > 0) {
+            t3 *= t3;
+            n += t3 * t3 * (GRAD3_X[g3] * x3 + GRAD3_Y[g3] * y3 + GRAD3_Z[g3] * z3);
+        }
+        return 32 * n;
+    }
+
+    /** Faster {@code (int) Math.floor(v)} for values well inside int range. */
+    private static int floor(double v) {
+        int i = (int) v;
+        return v < i ? i - 1 : i;
+    }
+}
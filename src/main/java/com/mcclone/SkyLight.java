@@ -0,0 +1,403 @@
+/**
+ * Skylight flood fill: a full pass for new worlds plus incremental updates.
+ */
+
+package com.mcclone;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Skylight engine.
+ *
+ * <p>Light levels run {@code 0..15} and follow Minecraft's rules. Sky
+ * shines straight down through fully transparent cells at level 15. Every
+ * other step, sideways, up, or into a cell that absorbs some light, costs
+ * {@code max(1, opacity)} levels (see {@link BlockType#lightOpacityId}). A
+ * cell's level is the best it can get from any of its six neighbours. The
+ * sky counts as a level-15 cell above the top of the world.</p>
+ *
+ * <p>{@link #relightAll()} builds the whole field after a load, and
+ * {@link #relight} lights chunks as they stream in. Each column is lit
+ * top-down, then a breadth-first pass spreads light sideways into overhangs
+ * and caves, and across borders with chunks already loaded. Chunks that
+ * are not loaded neither give nor take light. After that,
+ * {@link #blockChanged} keeps
+ * the field current with the usual two-queue flood. When a cell gets
+ * darker, the remove queue clears every level that could have come through
+ * it and collects the surviving boundary cells. The add queue then floods
+ * outward from those cells, and from any cell that got lighter. Queue
+ * entries are cell positions packed into one {@code int} relative to a base
+ * near the cell that started the flood, kept in {@link IntRingBuffer}s, so
+ * a flood allocates nothing once the rings have grown. A flood never
+ * reaches more than a few dozen blocks from where it started, well inside
+ * the packed range.</p>
+ *
+ * <p>Every level written marks its chunk as changed, and so does a write on
+ * a chunk border for the neighbour whose faces sample it. The world drains
+ * those chunks with {@link #drainChanged} to re-mesh exactly the chunks
+ * whose light moved. Instances are used by whichever thread holds the
+ * world's monitor: the render thread as chunks stream in, the simulation
+ * thread through block edits.</p>
+ */
+final class SkyLight {
+
+    /** Full sunlight. */
+    static final int MAX = 15;
+
+    private static final int HEIGHT = World.HEIGHT;
+
+    /** Neighbour steps; index {@link #DOWN} is the one that keeps full sunlight. */
+    private static final int[] STEP_X = {1, -1, 0, 0, 0, 0};
+    private static final int[] STEP_Y = {0, 0, 1, -1, 0, 0};
+    private static final int[] STEP_Z = {0, 0, 0, 0, 1, -1};
+    private static final int DOWN = 3;
+
+    /**
+     * Packed-position fields: 11 bits each of X and Z relative to
+     * ({@link #baseX}, {@link #baseZ}), then Y, then a level in the top bits.
+     */
+    private static final int XZ_BITS = 11;
+    private static final int XZ_MASK = (1 << XZ_BITS) - 1;
+    private static final int Y_SHIFT = 2 * XZ_BITS;
+    private static final int Y_MASK = HEIGHT - 1;
+    private static final int LEVEL_SHIFT = Y_SHIFT + Integer.numberOfTrailingZeros(HEIGHT);
+
+    private final World world;
+
+    /** Cells whose level rose and must spread to their neighbours. */
+    private final IntRingBuffer addQueue = new IntRingBuffer(4096);
+
+    /** Cells just darkened, with the level they lost. */
+    private final IntRingBuffer removeQueue = new IntRingBuffer(4096);
+
+    /** Top-layer cells darkened by a removal, which the sky lights again. */
+    private final IntRingBuffer skySeeds = new IntRingBuffer(256);
+
+    /** Chunks whose light changed since the last drain; each has {@link Chunk#lightChanged} set. */
+    private final List<Chunk> changed = new ArrayList<>();
+
+    /** World position of packed coordinate 0 for the current flood. */
+    private int baseX;
+    private int baseZ;
+
+    /**
+     * Chunk last looked up by {@link #chunkAt}, which may be {@code null}
+     * for one that is not loaded. Forgotten at the start of every public
+     * operation, since chunks only load and unload between them.
+     */
+    private Chunk cached;
+    private int cachedX;
+    private int cachedZ;
+    private boolean cacheValid;
+
+    /**
+     * @param world the world whose chunks hold the light arrays
+     */
+    SkyLight(World world) {
+        this.world = world;
+    }
+
+    /**
+     * The level a cell of {@code opacity} gets from a neighbour at
+     * {@code level}.
+     *
+     * @param down true if the neighbour is directly above the cell
+     */
+    static int attenuate(int level, int opacity, boolean down) {
+        if (opacity >= BlockType.MAX_LIGHT_OPACITY) return 0;
+        if (down && level == MAX && opacity == 0) return MAX;
+        return Math.max(0, level - Math.max(1, opacity));
+    }
+
+    /**
+     * Recompute the light field of every loaded chunk from the current
+     * blocks. Nothing is recorded as changed; the caller re-meshes
+     * everything anyway.
+     */
+    void relightAll() {
+        cacheValid = false;
+        ChunkMap<Chunk> chunks = world.loadedChunks();
+        for (int i = 0; i < chunks.capacity(); i++) {
+            Chunk c = chunks.valueAt(i);
+            if (c != null) lightColumns(c);
+        }
+        for (int i = 0; i < chunks.capacity(); i++) {
+            Chunk c = chunks.valueAt(i);
+            if (c != null) floodFrom(c, false);
+        }
+        clearChanged();
+    }
+
+    /**
+     * Light chunks that just finished loading, drawing light from and
+     * spreading it into the loaded chunks around them. Light only grows
+     * when a chunk arrives, since an unloaded chunk gave none, so no
+     * removal pass is needed. Neighbours whose light rose are recorded as
+     * changed.
+     *
+     * @param loaded chunks already in the world with their blocks set
+     */
+    void relight(List<Chunk> loaded) {
+        cacheValid = false;
+        // Columns first: a flood from one new chunk may reach another.
+        for (Chunk c : loaded) {
+            lightColumns(c);
+        }
+        for (Chunk c : loaded) {
+            floodFrom(c, true);
+        }
+    }
+
+    /**
+     * Light every column of {@code c} straight down from the sky: full
+     * light down to the column's light heightmap, then attenuated below.
+     */
+    private static void lightColumns(Chunk c) {
+        for (int lx = 0; lx < Chunk.SIZE; lx++) {
+            for (int lz = 0; lz < Chunk.SIZE; lz++) {
+                int top = c.lightHeight(lx, lz);
+                for (int y = HEIGHT - 1; y >= top; y--) {
+                    c.setSkyLight(lx, y, lz, MAX);
+                }
+                int level = MAX;
+                for (int y = top - 1; y >= 0; y--) {
+                    level = attenuate(level, BlockType.lightOpacityId(c.get(lx, y, lz)), true);
+                    c.setSkyLight(lx, y, lz, level);
+                }
+            }
+        }
+    }
+
+    /**
+     * Spread light sideways from every cell of {@code c} that can brighten
+     * a neighbour; the columns alone never light anything sideways.
+     *
+     * @param borders also seed from neighbouring chunks' edge cells that
+     *                can brighten {@code c}
+     */
+    private void floodFrom(Chunk c, boolean borders) {
+        int x0 = c.cx * Chunk.SIZE;
+        int z0 = c.cz * Chunk.SIZE;
+        setBase(x0, z0);
+        for (int x = x0; x < x0 + Chunk.SIZE; x++) {
+            for (int z = z0; z < z0 + Chunk.SIZE; z++) {
+                for (int y = 0; y < HEIGHT; y++) {
+                    int level = light(x, y, z);
+                    if (level > 1 && brightensNeighbour(x, y, z, level)) {
+                        addQueue.add(pack(x, y, z));
+                    }
+                }
+            }
+        }
+        if (borders) {
+            for (int i = 0; i < Chunk.SIZE; i++) {
+                seedEdge(x0 - 1, z0 + i);
+                seedEdge(x0 + Chunk.SIZE, z0 + i);
+                seedEdge(x0 + i, z0 - 1);
+                seedEdge(x0 + i, z0 + Chunk.SIZE);
+            }
+        }
+        propagateAdd();
+    }
+
+    /** Queue each cell of a column outside the chunk being lit that can brighten a neighbour. */
+    private void seedEdge(int x, int z) {
+        if (chunkAt(x, z) == null) return;
+        for (int y = 0; y < HEIGHT; y++) {
+            int level = light(x, y, z);
+            if (level > 1 && brightensNeighbour(x, y, z, level)) {
+                addQueue.add(pack(x, y, z));
+            }
+        }
+    }
+
+    private boolean brightensNeighbour(int x, int y, int z, int level) {
+        for (int d = 0; d < 6; d++) {
+            int nx = x + STEP_X[d];
+            int ny = y + STEP_Y[d];
+            int nz = z + STEP_Z[d];
+            if (!inBounds(nx, ny, nz)) continue;
+            if (attenuate(level, opacity(nx, ny, nz), d == DOWN) > light(nx, ny, nz)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Update the field after the block at a cell changed from one light
+     * opacity to another. Call after the new block is stored.
+     *
+     * @param oldOpacity light opacity of the block that was there
+     * @param newOpacity light opacity of the block now there
+     */
+    void blockChanged(int x, int y, int z, int oldOpacity, int newOpacity) {
+        if (oldOpacity == newOpacity) return;
+        cacheValid = false;
+        setBase(x, z);
+        if (newOpacity > oldOpacity) {
+            int old = light(x, y, z);
+            if (old > 0) {
+                setLight(x, y, z, 0);
+                removeQueue.add(pack(x, y, z) | (old << LEVEL_SHIFT));
+                propagateRemove();
+            }
+        }
+        // Whatever the change, the cell itself takes the best its
+        // neighbours (or the sky) now offer, then passes it on.
+        int best = y == HEIGHT - 1 ? attenuate(MAX, newOpacity, true) : 0;
+        for (int d = 0; d < 6; d++) {
+            // Light arrives from the neighbour opposite the step direction.
+            int nx = x - STEP_X[d];
+            int ny = y - STEP_Y[d];
+            int nz = z - STEP_Z[d];
+            if (!inBounds(nx, ny, nz)) continue;
+            best = Math.max(best, attenuate(light(nx, ny, nz), newOpacity, d == DOWN));
+        }
+        if (best > light(x, y, z)) {
+            setLight(x, y, z, best);
+        }
+        addQueue.add(pack(x, y, z));
+        propagateAdd();
+    }
+
+    /**
+     * Darken everything that drew its light through the removed cells. Cells
+     * lit at least as brightly from elsewhere are handed to the add queue
+     * to refill the hole.
+     */
+    private void propagateRemove() {
+        while (!removeQueue.isEmpty()) {
+            int p = removeQueue.poll();
+            int x = baseX + (p & XZ_MASK);
+            int z = baseZ + ((p >>> XZ_BITS) & XZ_MASK);
+            int y = (p >>> Y_SHIFT) & Y_MASK;
+            int level = p >>> LEVEL_SHIFT;
+            for (int d = 0; d < 6; d++) {
+                int nx = x + STEP_X[d];
+                int ny = y + STEP_Y[d];
+                int nz = z + STEP_Z[d];
+                if (!inBounds(nx, ny, nz)) continue;
+                int nl = light(nx, ny, nz);
+                if (nl == 0) continue;
+                if (nl < level || (d == DOWN && level == MAX && nl == MAX)) {
+                    setLight(nx, ny, nz, 0);
+                    removeQueue.add(pack(nx, ny, nz) | (nl << LEVEL_SHIFT));
+                    if (ny == HEIGHT - 1) {
+                        skySeeds.add(pack(nx, ny, nz));
+                    }
+                } else {
+                    addQueue.add(pack(nx, ny, nz));
+                }
+            }
+        }
+        while (!skySeeds.isEmpty()) {
+            int p = skySeeds.poll();
+            int x = baseX + (p & XZ_MASK);
+            int z = baseZ + ((p >>> XZ_BITS) & XZ_MASK);
+            int sky = attenuate(MAX, opacity(x, HEIGHT - 1, z), true);
+            if (sky > light(x, HEIGHT - 1, z)) {
+                setLight(x, HEIGHT - 1, z, sky);
+                addQueue.add(p);
+            }
+        }
+    }
+
+    /** Flood outward from every queued cell until no neighbour brightens. */
+    private void propagateAdd() {
+        while (!addQueue.isEmpty()) {
+            int p = addQueue.poll();
+            int x = baseX + (p & XZ_MASK);
+            int z = baseZ + ((p >>> XZ_BITS) & XZ_MASK);
+            int y = (p >>> Y_SHIFT) & Y_MASK;
+            int level = light(x, y, z);
+            if (level <= 1) continue;
+            for (int d = 0; d < 6; d++) {
+                int nx = x + STEP_X[d];
+                int ny = y + STEP_Y[d];
+                int nz = z + STEP_Z[d];
+                if (!inBounds(nx, ny, nz)) continue;
+                int nl = attenuate(level, opacity(nx, ny, nz), d == DOWN);
+                if (nl > light(nx, ny, nz)) {
+                    setLight(nx, ny, nz, nl);
+                    addQueue.add(pack(nx, ny, nz));
+                }
+            }
+        }
+    }
+
+    /**
+     * Hand every chunk whose light changed since the last drain to
+     * {@code sink}, then forget them.
+     */
+    void drainChanged(Consumer<Chunk> sink) {
+        for (Chunk c : changed) {
+            c.lightChanged = false;
+            sink.accept(c);
+        }
+        changed.clear();
+    }
+
+    private void clearChanged() {
+        drainChanged(c -> { });
+    }
+
+    /** @return the skylight level at a cell in a loaded chunk. */
+    int light(int x, int y, int z) {
+        return chunkAt(x, z).skyLight(x & 15, y, z & 15);
+    }
+
+    private void setLight(int x, int y, int z, int level) {
+        chunkAt(x, z).setSkyLight(x & 15, y, z & 15, level);
+        markChanged(x, z);
+        // Faces in the neighbouring chunk sample this cell too.
+        int lx = x & 15;
+        int lz = z & 15;
+        if (lx == 0) markChanged(x - 1, z);
+        if (lx == 15) markChanged(x + 1, z);
+        if (lz == 0) markChanged(x, z - 1);
+        if (lz == 15) markChanged(x, z + 1);
+    }
+
+    /** Record the chunk holding column ({@code x}, {@code z}) as changed, if loaded. */
+    private void markChanged(int x, int z) {
+        Chunk c = chunkAt(x, z);
+        if (c != null && !c.lightChanged) {
+            c.lightChanged = true;
+            changed.add(c);
+        }
+    }
+
+    private int opacity(int x, int y, int z) {
+        return BlockType.lightOpacityId(chunkAt(x, z).get(x & 15, y, z & 15));
+    }
+
+    private boolean inBounds(int x, int y, int z) {
+        return y >= 0 && y < HEIGHT && chunkAt(x, z) != null;
+    }
+
+    /** @return the loaded chunk holding column ({@code x}, {@code z}), or {@code null}. */
+    private Chunk chunkAt(int x, int z) {
+        int cx = x >> 4;
+        int cz = z >> 4;
+        if (!cacheValid || cx != cachedX || cz != cachedZ) {
+            cached = world.chunk(cx, cz);
+            cachedX = cx;
+            cachedZ = cz;
+            cacheValid = true;
+        }
+        return cached;
+    }
+
+    /** Centre the packed coordinate range on column ({@code x}, {@code z}). */
+    private void setBase(int x, int z) {
+        baseX = x - (1 << (XZ_BITS - 1));
+        baseZ = z - (1 << (XZ_BITS - 1));
+    }
+
+    private int pack(int x, int y, int z) {
+        return (x - baseX) | ((z - baseZ) << XZ_BITS) | (y << Y_SHIFT);
+    }
+}
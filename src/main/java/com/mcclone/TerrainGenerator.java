@@ -0,0 +1,435 @@
+/**
+ * Seeded terrain generation, one independent task per chunk column.
+ */
+
+package com.mcclone;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+/**
+ * Generates the world's terrain chunk by chunk: a gentle heightmap with a
+ * bedrock floor, stone fill, a dirt/grass surface, sand and water at sea
+ * level, gravel patches, coal and iron veins and small oak trees.
+ *
+ * <p>Nothing depends on the order chunks are generated in, or on which
+ * other chunks are generated with them, so a streaming world can generate
+ * any set of chunks at any time. They run in parallel on a
+ * {@link ForkJoinPool} and the result is identical for any thread
+ * count:</p>
+ * <ul>
+ *   <li>The heightmap is {@link SimplexNoise} seeded from the world seed,
+ *       sampled a whole chunk at a time, so {@link #height} is a pure
+ *       function of the column and neighbouring chunks agree along their
+ *       shared edge.</li>
+ *   <li>Each chunk draws its features from its own {@link Random}, seeded
+ *       from {@code (worldSeed, cx, cz)}.</li>
+ *   <li>Features that can reach into a neighbour (gravel disks, ore walks,
+ *       tree canopies) are not written directly. Each chunk records them as
+ *       {@link Placements}, and a final pass has every chunk apply the
+ *       placements aimed at it from its 3×3 neighbourhood, in a fixed order:
+ *       feature kind, then source chunk, then record order. Features are
+ *       chosen from the heightmap alone, so a neighbour's placements can be
+ *       recomputed without generating the neighbour.</li>
+ * </ul>
+ */
+final class TerrainGenerator {
+
+    /** Salt so the heightmap noise is independent of the feature seeds. */
+    private static final long HEIGHT_SALT = 0x5DEECE66DL;
+
+    /** Heightmap noise: octaves, first-octave frequency (cycles per block), persistence. */
+    private static final int HEIGHT_OCTAVES = 4;
+    private static final double HEIGHT_FREQUENCY = 1.0 / 64;
+    private static final double HEIGHT_PERSISTENCE = 0.5;
+
+    /** Blocks of height per unit of heightmap noise. */
+    private static final float HEIGHT_AMPLITUDE = 14f;
+
+    /** Placement rules; also the pass a placement is applied in. */
+    private static final int REPLACE_SAND = 0;
+    private static final int REPLACE_STONE = 1;
+    private static final int ALWAYS = 2;
+    private static final int REPLACE_AIR = 3;
+
+    /** Passes in application order: gravel, ores, trees (logs and leaves). */
+    private static final int[][] PASSES = {{REPLACE_SAND}, {REPLACE_STONE}, {ALWAYS, REPLACE_AIR}};
+
+    /** Worker threads for {@link #sharedPool()}; {@code -Dblockgame.genThreads}. */
+    private static final int GEN_THREADS = Math.max(1, Integer.getInteger("blockgame.genThreads",
+            Runtime.getRuntime().availableProcessors()));
+
+    private static ForkJoinPool sharedPool;
+
+    private final long seed;
+    private final SimplexNoise heightNoise;
+
+    /**
+     * @param seed world seed; equal seeds generate equal worlds
+     */
+    TerrainGenerator(long seed) {
+        this.seed = seed;
+        heightNoise = new SimplexNoise(mix(seed ^ HEIGHT_SALT), HEIGHT_OCTAVES,
+                HEIGHT_FREQUENCY, HEIGHT_PERSISTENCE);
+    }
+
+    /**
+     * @return the process-wide generation pool, created on first use with
+     *         {@code blockgame.genThreads} daemon workers
+     */
+    static synchronized ForkJoinPool sharedPool() {
+        if (sharedPool == null) {
+            sharedPool = newPool(GEN_THREADS);
+        }
+        return sharedPool;
+    }
+
+    /**
+     * @param threads worker count
+     * @return a pool of named daemon workers; the caller shuts it down
+     */
+    static ForkJoinPool newPool(int threads) {
+        return new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("terrain-gen-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+    }
+
+    /**
+     * Fill chunks with generated blocks. Lighting and meshes are left to the
+     * caller.
+     *
+     * <p>The first pass lays down each target's terrain and chooses the
+     * features of every chunk in the targets' 3×3 neighbourhoods; chunks
+     * that are only neighbours get their heights from the noise and are not
+     * written. The second pass applies those features to the targets.</p>
+     *
+     * @param targets all-air chunks at distinct coordinates
+     * @param pool    the pool to run chunk tasks on
+     */
+    void generate(List<Chunk> targets, ForkJoinPool pool) {
+        ChunkMap<Chunk> byKey = new ChunkMap<>(targets.size());
+        for (Chunk c : targets) {
+            byKey.put(c.cx, c.cz, c);
+        }
+        // Every chunk whose features can reach a target, each once.
+        ChunkMap<Placements> placements = new ChunkMap<>(targets.size() * 4);
+        for (Chunk c : targets) {
+            for (int sx = c.cx - 1; sx <= c.cx + 1; sx++) {
+                for (int sz = c.cz - 1; sz <= c.cz + 1; sz++) {
+                    placements.put(sx, sz, Placements.NONE);
+                }
+            }
+        }
+        long[] sources = new long[placements.size()];
+        for (int slot = 0, n = 0; slot < placements.capacity(); slot++) {
+            if (placements.valueAt(slot) != null) sources[n++] = placements.keyAt(slot);
+        }
+
+        Placements[] found = new Placements[sources.length];
+        forEach(pool, sources.length, i -> {
+            int sx = ChunkMap.keyX(sources[i]);
+            int sz = ChunkMap.keyZ(sources[i]);
+            Chunk target = byKey.get(sx, sz);
+            int[] heights = target != null ? fillTerrain(target) : heights(sx, sz);
+            found[i] = features(sx, sz, heights);
+        });
+        for (int i = 0; i < sources.length; i++) {
+            placements.put(ChunkMap.keyX(sources[i]), ChunkMap.keyZ(sources[i]), found[i]);
+        }
+
+        forEach(pool, targets.size(), i -> {
+            Chunk target = targets.get(i);
+            for (int[] pass : PASSES) {
+                for (int sx = target.cx - 1; sx <= target.cx + 1; sx++) {
+                    for (int sz = target.cz - 1; sz <= target.cz + 1; sz++) {
+                        placements.get(sx, sz).applyTo(target, pass);
+                    }
+                }
+            }
+        });
+    }
+
+    /** Work done for one item of a {@link #forEach} pass. */
+    private interface IndexTask {
+        void run(int i);
+    }
+
+    /** Run {@code task} for {@code 0..count-1} on {@code pool} and wait for all of them. */
+    private static void forEach(ForkJoinPool pool, int count, IndexTask task) {
+        List<Callable<Void>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int n = i;
+            tasks.add(() -> {
+                task.run(n);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating terrain", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Terrain generation failed", e.getCause());
+        }
+    }
+
+    /**
+     * Surface height of a column: the y of its grass or sand block.
+     *
+     * @param x world X
+     * @param z world Z
+     * @return the height, {@code 1..HEIGHT-8}
+     */
+    int height(int x, int z) {
+        return heightFromNoise(heightNoise.sample(x, z));
+    }
+
+    /** Map heightmap noise (about {@code [-1, 1]}) to a surface height. */
+    private static int heightFromNoise(double n) {
+        int h = World.SEA_LEVEL + 4 + Math.round((float) n * HEIGHT_AMPLITUDE);
+        if (h < 1) h = 1;
+        if (h > World.HEIGHT - 8) h = World.HEIGHT - 8;
+        return h;
+    }
+
+    /** @return the column heights of chunk ({@code cx}, {@code cz}), indexed {@code lx * SIZE + lz}. */
+    private int[] heights(int cx, int cz) {
+        double[] noise = new double[Chunk.SIZE * Chunk.SIZE];
+        heightNoise.sampleGrid(noise, cx * Chunk.SIZE, cz * Chunk.SIZE, Chunk.SIZE, Chunk.SIZE);
+        int[] heights = new int[noise.length];
+        for (int i = 0; i < noise.length; i++) {
+            heights[i] = heightFromNoise(noise[i]);
+        }
+        return heights;
+    }
+
+    /** @return true if a column of height {@code h} is topped with sand rather than grass. */
+    private static boolean isBeach(int h) {
+        return h <= World.SEA_LEVEL + 1;
+    }
+
+    /**
+     * Lay down the layered terrain of one chunk.
+     *
+     * @return the column heights, indexed {@code lx * SIZE + lz}
+     */
+    private int[] fillTerrain(Chunk chunk) {
+        int[] heights = heights(chunk.cx, chunk.cz);
+        for (int lx = 0; lx < Chunk.SIZE; lx++) {
+            for (int lz = 0; lz < Chunk.SIZE; lz++) {
+                int h = heights[lx * Chunk.SIZE + lz];
+                chunk.set(lx, 0, lz, World.BLOCK_TYPE_BEDROCK);
+                for (int y = 1; y < h - 3; y++) {
+                    chunk.set(lx, y, lz, World.BLOCK_TYPE_STONE);
+                }
+                int dirtTop = Math.max(0, h - 1);
+                for (int y = Math.max(1, h - 3); y <= dirtTop; y++) {
+                    chunk.set(lx, y, lz, World.BLOCK_TYPE_DIRT);
+                }
+                boolean beach = isBeach(h);
+                chunk.set(lx, h, lz, beach ? World.BLOCK_TYPE_SAND : World.BLOCK_TYPE_GRASS);
+                if (beach) {
+                    for (int y = Math.max(1, h - 2); y < h; y++) {
+                        chunk.set(lx, y, lz, World.BLOCK_TYPE_SAND);
+                    }
+                }
+                for (int y = h + 1; y <= World.SEA_LEVEL; y++) {
+                    chunk.set(lx, y, lz, World.BLOCK_TYPE_WATER);
+                }
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * Choose one chunk's gravel, ore and trees from its column heights.
+     */
+    private Placements features(int cx, int cz, int[] heights) {
+        Random rng = new Random(chunkSeed(cx, cz));
+        Placements out = new Placements();
+        int x0 = cx * Chunk.SIZE;
+        int z0 = cz * Chunk.SIZE;
+
+        // Gravel: about ten disks over a 4×4-chunk world, like before.
+        if (rng.nextInt(8) < 5) {
+            gravelPatch(rng, out, x0 + rng.nextInt(Chunk.SIZE), z0 + rng.nextInt(Chunk.SIZE));
+        }
+
+        // Plenty of coal at any depth, rarer iron biased toward the lower half.
+        int coal = 1 + (rng.nextInt(4) < 3 ? 1 : 0);
+        for (int i = 0; i < coal; i++) {
+            oreVein(rng, out, heights, x0, z0, World.BLOCK_TYPE_COAL_ORE, 4, 5, 1.0f);
+        }
+        oreVein(rng, out, heights, x0, z0, World.BLOCK_TYPE_IRON_ORE, 2, 4, 0.55f);
+
+        // One tree, on grass.
+        for (int attempt = 0; attempt < 12; attempt++) {
+            int lx = rng.nextInt(Chunk.SIZE);
+            int lz = rng.nextInt(Chunk.SIZE);
+            int h = heights[lx * Chunk.SIZE + lz];
+            if (!isBeach(h) && tree(out, x0 + lx, h + 1, z0 + lz)) {
+                break;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * A disk of gravel over beach / sea-floor sand, the way Minecraft
+     * beaches mix sand and gravel.
+     */
+    private void gravelPatch(Random rng, Placements out, int cx, int cz) {
+        int radius = 2 + rng.nextInt(2);
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                if (dx * dx + dz * dz > radius * radius) continue;
+                int x = cx + dx;
+                int z = cz + dz;
+                out.add(x, height(x, z), z, World.BLOCK_TYPE_GRAVEL, REPLACE_SAND);
+            }
+        }
+    }
+
+    /**
+     * A short random walk of ore through the stone layer, starting in this
+     * chunk.
+     *
+     * @param maxDepthFraction how far up the stone layer the vein may start
+     */
+    private static void oreVein(Random rng, Placements out, int[] heights, int x0, int z0,
+                                int oreId, int minSize, int sizeRange, float maxDepthFraction) {
+        int lx = rng.nextInt(Chunk.SIZE);
+        int lz = rng.nextInt(Chunk.SIZE);
+        int stoneTop = heights[lx * Chunk.SIZE + lz] - 4;
+        if (stoneTop < 2) return;
+        int maxY = Math.max(2, Math.round(stoneTop * maxDepthFraction));
+        int bx = x0 + lx;
+        int by = 1 + rng.nextInt(maxY);
+        int bz = z0 + lz;
+        int size = minSize + rng.nextInt(sizeRange);
+        for (int n = 0; n < size; n++) {
+            out.add(bx, by, bz, oreId, REPLACE_STONE);
+            // Random walk to the next cell of the vein.
+            switch (rng.nextInt(6)) {
+                case 0: bx++; break;
+                case 1: bx--; break;
+                case 2: by++; break;
+                case 3: by--; break;
+                case 4: bz++; break;
+                default: bz--; break;
+            }
+        }
+    }
+
+    /**
+     * A small oak tree with its trunk base at the given cell.
+     *
+     * @return false if the tree would poke out of the top of the world
+     */
+    private static boolean tree(Placements out, int x, int y, int z) {
+        int trunkH = 4 + (Math.abs(x * 31 + z) % 2);
+        if (y + trunkH + 1 >= World.HEIGHT) return false;
+        for (int i = 0; i < trunkH; i++) {
+            out.add(x, y + i, z, World.BLOCK_TYPE_OAK_LOG, ALWAYS);
+        }
+        int topY = y + trunkH;
+        for (int dx = -2; dx <= 2; dx++) {
+            for (int dz = -2; dz <= 2; dz++) {
+                for (int dy = -1; dy <= 0; dy++) {
+                    if (Math.abs(dx) == 2 && Math.abs(dz) == 2) continue;
+                    out.add(x + dx, topY + dy, z + dz, World.BLOCK_TYPE_OAK_LEAVES, REPLACE_AIR);
+                }
+            }
+        }
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                if (Math.abs(dx) + Math.abs(dz) > 1) continue;
+                out.add(x + dx, topY + 1, z + dz, World.BLOCK_TYPE_OAK_LEAVES, REPLACE_AIR);
+            }
+        }
+        return true;
+    }
+
+    /** @return the feature seed of chunk ({@code cx}, {@code cz}). */
+    private long chunkSeed(int cx, int cz) {
+        return mix(seed ^ mix(cx * 0x9E3779B97F4A7C15L ^ cz * 0xC2B2AE3D27D4EB4FL));
+    }
+
+    /** SplitMix64 finaliser: a well-mixed 64-bit hash of {@code z}. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Conditional block writes recorded by one chunk, in order, for the
+     * placement pass. Targets may lie in neighbouring chunks.
+     */
+    private static final class Placements {
+        /** Placeholder for a chunk whose placements are not yet chosen. */
+        static final Placements NONE = new Placements();
+
+        /** {@code x, y, z, id, rule} per placement. */
+        private int[] data = new int[5 * 64];
+        private int size;
+
+        void add(int x, int y, int z, int id, int rule) {
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = x;
+            data[size++] = y;
+            data[size++] = z;
+            data[size++] = id;
+            data[size++] = rule;
+        }
+
+        /** Apply, in order, the placements inside {@code target} whose rule is in {@code rules}. */
+        void applyTo(Chunk target, int[] rules) {
+            int x0 = target.cx * Chunk.SIZE;
+            int z0 = target.cz * Chunk.SIZE;
+            for (int i = 0; i < size; i += 5) {
+                int lx = data[i] - x0;
+                int y = data[i + 1];
+                int lz = data[i + 2] - z0;
+                int rule = data[i + 4];
+                if (lx < 0 || lx >= Chunk.SIZE || lz < 0 || lz >= Chunk.SIZE
+                        || y < 0 || y >= World.HEIGHT || !contains(rules, rule)) {
+                    continue;
+                }
+                int current = target.get(lx, y, lz);
+                boolean replace;
+                switch (rule) {
+                    case REPLACE_SAND: replace = current == World.BLOCK_TYPE_SAND; break;
+                    case REPLACE_STONE: replace = current == World.BLOCK_TYPE_STONE; break;
+                    case REPLACE_AIR: replace = current == World.BLOCK_TYPE_AIR; break;
+                    default: replace = true; break;
+                }
+                if (replace) {
+                    target.set(lx, y, lz, data[i + 3]);
+                }
+            }
+        }
+
+        private static boolean contains(int[] rules, int rule) {
+            for (int r : rules) {
+                if (r == rule) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * All block textures packed into one OpenGL texture.
+ */
+
+package com.mcclone;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Block texture atlas.
+ *
+ * <p>Every texture key referenced by a {@link BlockType} gets one square tile
+ * in a grid, in first-use order. The layout depends only on the block
+ * catalogue, so the mesher can resolve atlas coordinates without a GL
+ * context; {@link #upload(Map)} later fills the tiles with the images from
+ * {@link TextureGenerator#generateAll()}.</p>
+ *
+ * <p>Per-face lookups are flattened into primitive tables indexed by block
+ * id, so the mesher never hashes a texture name.</p>
+ */
+final class TextureAtlas {
+
+    /** Key the atlas is registered under with {@link TextureLoader}. */
+    static final String ATLAS_KEY = "block_atlas";
+
+    /** Edge length of one tile in pixels. */
+    static final int TILE_PIXELS = 16;
+
+    /** Texture key of each tile, by tile index. */
+    private static final String[] TILE_KEYS;
+
+    /** Tile index by {@code [face][blockId]}, or -1 when the face has no texture. */
+    private static final int[][] FACE_TILE;
+
+    /** Tiles per atlas row and column (the atlas is square). */
+    static final int GRID;
+
+    /** Width or height of one tile in normalised texture coordinates. */
+    static final float TILE_SPAN;
+
+    /** Tile index holding the water texture. */
+    static final int WATER_TILE;
+
+    static {
+        Map<String, Integer> index = new LinkedHashMap<>();
+        int maxId = 0;
+        for (BlockType t : BlockType.values()) {
+            maxId = Math.max(maxId, t.id());
+        }
+        FACE_TILE = new int[6][maxId + 1];
+        for (int[] row : FACE_TILE) {
+            Arrays.fill(row, -1);
+        }
+        for (BlockType t : BlockType.values()) {
+            for (int face = 0; face < 6; face++) {
+                String key;
+                switch (face) {
+                    case ChunkMesher.FACE_TOP: key = t.topTexture(); break;
+                    case ChunkMesher.FACE_BOTTOM: key = t.bottomTexture(); break;
+                    default: key = t.sideTexture(); break;
+                }
+                if (key == null) continue;
+                Integer i = index.get(key);
+                if (i == null) {
+                    i = index.size();
+                    index.put(key, i);
+                }
+                FACE_TILE[face][t.id()] = i;
+            }
+        }
+        TILE_KEYS = index.keySet().toArray(new String[0]);
+        // Power-of-two grid so the atlas stays a power-of-two texture.
+        int grid = 1;
+        while (grid * grid < TILE_KEYS.length) {
+            grid <<= 1;
+        }
+        GRID = grid;
+        TILE_SPAN = 1f / GRID;
+        WATER_TILE = FACE_TILE[ChunkMesher.FACE_TOP][BlockType.WATER.id()];
+    }
+
+    private TextureAtlas() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * @param face   a {@code ChunkMesher.FACE_*} direction
+     * @param blockId block id
+     * @return the tile index for that face, or -1 if it is never drawn
+     */
+    static int tile(int face, int blockId) {
+        return FACE_TILE[face][blockId];
+    }
+
+    /** @return normalised U of the tile's left edge. */
+    static float tileU(int tile) {
+        return (tile % GRID) * TILE_SPAN;
+    }
+
+    /** @return normalised V of the tile's top edge. */
+    static float tileV(int tile) {
+        return (tile / GRID) * TILE_SPAN;
+    }
+
+    /**
+     * Pack the generated images into one texture and register it under
+     * {@link #ATLAS_KEY}. Must run on the GL thread.
+     *
+     * @param textures images keyed by texture name
+     * @return the OpenGL texture id of the atlas
+     */
+    static int upload(Map<String, BufferedImage> textures) {
+        int size = GRID * TILE_PIXELS;
+        BufferedImage atlas = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlas.createGraphics();
+        for (int i = 0; i < TILE_KEYS.length; i++) {
+            BufferedImage img = textures.get(TILE_KEYS[i]);
+            if (img == null) continue;
+            g.drawImage(img, (i % GRID) * TILE_PIXELS, (i / GRID) * TILE_PIXELS,
+                    TILE_PIXELS, TILE_PIXELS, null);
+        }
+        g.dispose();
+        return TextureLoader.registerTexture(ATLAS_KEY, atlas);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * GLSL program that repeats atlas tiles across merged quads.
+ */
+
+package com.mcclone;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Atlas tiling shader.
+ *
+ * <p>{@code GL_REPEAT} can't repeat a sub-rectangle of a texture, so a
+ * greedy-merged {@code w × h} quad textured from the {@link TextureAtlas}
+ * would stretch across neighbouring tiles. This GLSL 1.20 program wraps the
+ * coordinate back into the quad's own tile: texture unit 0 carries the
+ * unwrapped atlas coordinate and unit 1 the tile's origin, so
+ * {@code origin + fract((st - origin) / span) * span} samples the tile once
+ * per block. Vertex colour is scaled by the light-model ambient, and linear
+ * fog is applied, just as the fixed-function state {@link World} sets up
+ * would.</p>
+ *
+ * <p>The program is optional. If it fails to compile, {@link #isAvailable()}
+ * stays false and the world falls back to per-face meshing, whose quads never
+ * leave their tile and draw correctly with the fixed-function pipeline.</p>
+ */
+final class TilingShader {
+
+    private static final Logger logger = LoggerFactory.getLogger(TilingShader.class);
+
+    private static final String VERTEX_SOURCE = String.join("\n",
+            "#version 120",
+            "void main() {",
+            "    gl_Position = ftransform();",
+            "    gl_TexCoord[0] = gl_MultiTexCoord0;",
+            "    gl_TexCoord[1] = gl_MultiTexCoord1;",
+            "    gl_FrontColor = vec4(gl_Color.rgb * gl_LightModel.ambient.rgb, gl_Color.a);",
+            "    gl_FogFragCoord = abs((gl_ModelViewMatrix * gl_Vertex).z);",
+            "}");
+
+    private static final String FRAGMENT_SOURCE = String.join("\n",
+            "#version 120",
+            "uniform sampler2D atlas;",
+            "uniform float tileSpan;",
+            "uniform float inset;",
+            "void main() {",
+            "    vec2 origin = gl_TexCoord[1].st;",
+            "    vec2 local = clamp(fract((gl_TexCoord[0].st - origin) / tileSpan), inset, 1.0 - inset);",
+            "    vec4 c = texture2D(atlas, origin + local * tileSpan) * gl_Color;",
+            "    float fog = clamp((gl_Fog.end - gl_FogFragCoord) * gl_Fog.scale, 0.0, 1.0);",
+            "    gl_FragColor = vec4(mix(gl_Fog.color.rgb, c.rgb, fog), c.a);",
+            "}");
+
+    /** Linked program id, or 0 when unavailable. */
+    private static int program;
+
+    private TilingShader() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Compile and link the program. Must run on the GL thread; safe to call
+     * more than once.
+     *
+     * @return true if the shader is usable
+     */
+    static boolean init() {
+        if (program != 0) return true;
+        int vs = compile(GL20.GL_VERTEX_SHADER, VERTEX_SOURCE);
+        int fs = compile(GL20.GL_FRAGMENT_SHADER, FRAGMENT_SOURCE);
+        if (vs == 0 || fs == 0) {
+            if (vs != 0) GL20.glDeleteShader(vs);
+            if (fs != 0) GL20.glDeleteShader(fs);
+            return false;
+        }
+        int p = GL20.glCreateProgram();
+        GL20.glAttachShader(p, vs);
+        GL20.glAttachShader(p, fs);
+        GL20.glLinkProgram(p);
+        GL20.glDeleteShader(vs);
+        GL20.glDeleteShader(fs);
+        if (GL20.glGetProgrami(p, GL20.GL_LINK_STATUS) == GL11.GL_FALSE) {
+            logger.warn("Tiling shader failed to link, using per-face meshing: {}",
+                    GL20.glGetProgramInfoLog(p));
+            GL20.glDeleteProgram(p);
+            return false;
+        }
+        GL20.glUseProgram(p);
+        GL20.glUniform1i(GL20.glGetUniformLocation(p, "atlas"), 0);
+        GL20.glUniform1f(GL20.glGetUniformLocation(p, "tileSpan"), TextureAtlas.TILE_SPAN);
+        GL20.glUniform1f(GL20.glGetUniformLocation(p, "inset"), 0.5f / TextureAtlas.TILE_PIXELS);
+        GL20.glUseProgram(0);
+        program = p;
+        return true;
+    }
+
+    private static int compile(int type, String source) {
+        int shader = GL20.glCreateShader(type);
+        GL20.glShaderSource(shader, source);
+        GL20.glCompileShader(shader);
+        if (GL20.glGetShaderi(shader, GL20.GL_COMPILE_STATUS) == GL11.GL_FALSE) {
+            logger.warn("Tiling shader failed to compile, using per-face meshing: {}",
+                    GL20.glGetShaderInfoLog(shader));
+            GL20.glDeleteShader(shader);
+            return 0;
+        }
+        return shader;
+    }
+
+    /** @return true once {@link #init()} has succeeded. */
+    static boolean isAvailable() {
+        return program != 0;
+    }
+
+    /** Make the program current; a no-op when unavailable. */
+    static void bind() {
+        if (program != 0) GL20.glUseProgram(program);
+    }
+
+    /** Return to the fixed-function pipeline. */
+    static void unbind() {
+        if (program != 0) GL20.glUseProgram(0);
+    }
+
+    /** Delete the program. */
+    static void cleanup() {
+        if (program != 0) {
+            GL20.glDeleteProgram(program);
+            program = 0;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Lock-free single-writer, single-reader handoff of the latest value.
+ */
+
+package com.mcclone;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Three preallocated slots passed between one writer thread and one reader
+ * thread without locking or allocating.
+ *
+ * <p>The writer fills {@link #back()} completely and calls {@link #publish()},
+ * which swaps it with the middle slot. The reader calls {@link #latest()},
+ * which swaps its front slot with the middle one if something newer was
+ * published, and otherwise keeps the front it already has. Each side only
+ * ever touches a slot it owns, so neither waits for the other, and the
+ * reader may skip values when the writer is faster, always seeing the
+ * newest. The swaps go through one {@link AtomicInteger}, which also makes
+ * everything written to a slot before {@link #publish()} visible to the
+ * reader that takes it.</p>
+ *
+ * @param <T> slot type
+ */
+final class TripleBuffer<T> {
+
+    /** Set in {@link #middle} while it holds a slot the reader hasn't taken. */
+    private static final int FRESH = 4;
+
+    private final Object[] slots = new Object[3];
+
+    /** Slot the writer is filling; writer only. */
+    private int back = 0;
+
+    /** Slot the reader is reading; reader only. */
+    private int front = 1;
+
+    /** Slot in between, plus {@link #FRESH}. */
+    private final AtomicInteger middle = new AtomicInteger(2);
+
+    /**
+     * @param factory creates each of the three slots
+     */
+    TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = factory.get();
+        }
+    }
+
+    /**
+     * @return the slot to fill next; it holds whatever was written to it two
+     *         publishes ago, so every field must be overwritten. Writer only.
+     */
+    @SuppressWarnings("unchecked")
+    T back() {
+        return (T) slots[back];
+    }
+
+    /** Hand the filled {@link #back()} slot to the reader. Writer only. */
+    void publish() {
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * @return the most recently published slot, which stays unchanged until
+     *         the next call. Reader only.
+     */
+    @SuppressWarnings("unchecked")
+    T latest() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & ~FRESH;
+        }
+        return (T) slots[front];
+    }
+}
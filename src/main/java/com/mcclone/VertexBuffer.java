@@ -0,0 +1,116 @@
+/**
+ * A GPU-resident copy of one chunk vertex stream.
+ */
+
+package com.mcclone;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+
+/**
+ * One vertex buffer object holding a chunk stream in {@link ChunkMesher}'s
+ * layout: atlas coordinate on texture unit 0, tile origin on unit 1, a
+ * packed byte colour, then the position; 4 vertices per quad.
+ *
+ * <p>Must be created, drawn and deleted on the thread that owns the GL
+ * context. Drawing assumes the caller has enabled the vertex, colour and
+ * both texture-coordinate client arrays (see {@link #beginDraw()} /
+ * {@link #endDraw()}). A stream is drawn as one or more vertex ranges so
+ * culled sections can be skipped.</p>
+ */
+final class VertexBuffer {
+
+    /** Floats per vertex in a stream. */
+    private static final int FLOATS_PER_VERTEX = ChunkMesher.FLOATS_PER_VERTEX;
+
+    /** Byte stride between consecutive vertices. */
+    private static final int STRIDE = FLOATS_PER_VERTEX * Float.BYTES;
+
+    /** Byte offset of the tile origin within a vertex. */
+    private static final long TILE_OFFSET = 2L * Float.BYTES;
+
+    /** Byte offset of the packed colour within a vertex. */
+    private static final long COLOR_OFFSET = (long) ChunkMesher.COLOR_OFFSET * Float.BYTES;
+
+    /** Byte offset of the position within a vertex. */
+    private static final long POSITION_OFFSET = (long) ChunkMesher.POSITION_OFFSET * Float.BYTES;
+
+    private int id;
+    private final int vertexCount;
+
+    private VertexBuffer(int id, int vertexCount) {
+        this.id = id;
+        this.vertexCount = vertexCount;
+    }
+
+    /**
+     * Upload a stream into a new static buffer.
+     *
+     * @param verts packed vertices; not retained
+     * @return the new buffer
+     */
+    static VertexBuffer upload(float[] verts) {
+        int id = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, id);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, verts, GL15.GL_STATIC_DRAW);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        return new VertexBuffer(id, verts.length / FLOATS_PER_VERTEX);
+    }
+
+    /** Enable the client arrays used by {@link #bind()}. */
+    static void beginDraw() {
+        GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+        GL11.glEnableClientState(GL11.GL_COLOR_ARRAY);
+        GL13.glClientActiveTexture(GL13.GL_TEXTURE1);
+        GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        GL13.glClientActiveTexture(GL13.GL_TEXTURE0);
+        GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+    }
+
+    /** Undo {@link #beginDraw()} and unbind any array buffer. */
+    static void endDraw() {
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        GL13.glClientActiveTexture(GL13.GL_TEXTURE1);
+        GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        GL13.glClientActiveTexture(GL13.GL_TEXTURE0);
+        GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        GL11.glDisableClientState(GL11.GL_COLOR_ARRAY);
+        GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+    }
+
+    /** Bind this buffer and point the client arrays at it. */
+    void bind() {
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, id);
+        GL13.glClientActiveTexture(GL13.GL_TEXTURE1);
+        GL11.glTexCoordPointer(2, GL11.GL_FLOAT, STRIDE, TILE_OFFSET);
+        GL13.glClientActiveTexture(GL13.GL_TEXTURE0);
+        GL11.glTexCoordPointer(2, GL11.GL_FLOAT, STRIDE, 0L);
+        GL11.glColorPointer(3, GL11.GL_UNSIGNED_BYTE, STRIDE, COLOR_OFFSET);
+        GL11.glVertexPointer(3, GL11.GL_FLOAT, STRIDE, POSITION_OFFSET);
+    }
+
+    /**
+     * Draw a run of quads from this buffer; it must be the one last
+     * {@link #bind() bound}.
+     *
+     * @param first first vertex
+     * @param count number of vertices, a multiple of 4
+     */
+    void drawRange(int first, int count) {
+        GL11.glDrawArrays(GL11.GL_QUADS, first, count);
+    }
+
+    /** @return number of vertices stored in the buffer. */
+    int vertexCount() {
+        return vertexCount;
+    }
+
+    /** Free the GPU storage; the buffer must not be drawn afterwards. */
+    void delete() {
+        if (id != 0) {
+            GL15.glDeleteBuffers(id);
+            id = 0;
+        }
+    }
+}
@@ -1,44 +1,80 @@
 /**
- * The voxel world: block storage, generation, queries and rendering.
+ * The voxel world: block storage, generation, streaming, queries and
+ * rendering.
  *
- * <p>The world is a fixed-size dense {@code int[][][]} for now (Phase 1).
- * Each cell stores a {@link BlockType#id() block id}. Generation produces a
+ * <p>The world is an unbounded plane of 16×16 {@link Chunk} columns, each a
+ * stack of palette-compressed 16³ {@link ChunkSection}s, of which only
+ * those near the player are loaded. Each cell stores a
+ * {@link BlockType#id() block id}. Generation produces a
  * gentle heightmap with bedrock floor, stone fill, a dirt/grass surface,
  * sand at sea level and a sprinkling of small oak trees.</p>
  */
 
 package com.mcclone;
 
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.Random;
-import java.util.Set;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The game world.
  *
- * <p>Coordinate conventions (unchanged from earlier phases so existing code
- * keeps working):</p>
+ * <p>Coordinate conventions (unchanged from earlier phases so saves and
+ * existing code keep working):</p>
  * <ul>
- *   <li>World-array X / Z are in {@code [0, SIZE)}.</li>
- *   <li>OpenGL X = {@code worldX - SIZE/2}, OpenGL Z = {@code -worldZ}.</li>
- *   <li>Y is up.</li>
+ *   <li>Block X / Z are any int; the spawn area generated up front is
+ *       {@code [0, SIZE)} on both.</li>
+ *   <li>OpenGL X = {@code blockX - SIZE/2}, OpenGL Z = {@code -blockZ}.
+ *       Convert with {@link #toBlockX}, {@link #toBlockZ}, {@link #toGlX}
+ *       and {@link #toGlZ} rather than repeating the offset.</li>
+ *   <li>Y is up, {@code [0, HEIGHT)}.</li>
  * </ul>
  *
- * <p>Rendering uses {@link #render()} which lazily builds and caches a list of
- * exposed faces grouped by texture, then submits each group as a single
- * {@code glBegin/glEnd} pair. This is still immediate-mode OpenGL but with
- * ~11 draw calls per frame instead of ~tens of thousands.</p>
+ * <p>Chunks live in a {@link ChunkMap} keyed by chunk coordinates.
+ * {@link #updateStreaming} loads chunks within the render distance of the
+ * player, from the attached {@link RegionStore} if they were saved and from
+ * the {@link TerrainGenerator} otherwise, and unloads chunks that fall
+ * further behind, writing edited ones back to the store first. Cells in
+ * chunks that are not loaded read as air and cannot be edited.</p>
+ *
+ * <p>Rendering uses {@link #render()} which lazily builds and caches the
+ * exposed faces of each chunk as an opaque and a water stream over a single
+ * texture atlas, uploads each stream into a vertex buffer and draws it with
+ * {@code glDrawArrays}. The older
+ * immediate-mode path (one {@code glBegin/glEnd} pair per stream) is still
+ * available via {@link #setUseVbo(boolean)} for comparison.</p>
+ *
+ * <p>Threads: the chunk map, meshes and vertex buffers belong to the render
+ * thread, the only one that loads, unloads or draws chunks. Blocks may also
+ * be read and edited from one other thread, the simulation, as long as it
+ * holds this world's monitor; the render thread takes the monitor for the
+ * parts of a frame that read or repack blocks ({@link #updateStreaming},
+ * mesh snapshots and the memory budget) and draws without it.</p>
  */
 public class World {
 
-    /** Horizontal world size in blocks. */
+    private static final Logger logger = LoggerFactory.getLogger(World.class);
+
+    /**
+     * Edge of the square spawn area generated by the constructor, in blocks;
+     * also fixes the X offset between block and OpenGL coordinates.
+     */
     public static final int SIZE = 64;
 
     /** Vertical world size in blocks. */
@@ -64,55 +100,230 @@ public class World {
     /** Coal ore id. */ public static final int BLOCK_TYPE_COAL_ORE = BlockType.COAL_ORE.id();
     /** Iron ore id. */ public static final int BLOCK_TYPE_IRON_ORE = BlockType.IRON_ORE.id();
 
-    /** Face direction constants used by {@link #addFace}. */
-    private static final int FACE_TOP = 0;
-    private static final int FACE_BOTTOM = 1;
-    private static final int FACE_POS_Z = 2;
-    private static final int FACE_NEG_Z = 3;
-    private static final int FACE_NEG_X = 4;
-    private static final int FACE_POS_X = 5;
+    /** Seed used by {@link #World()}. */
+    static final long DEFAULT_SEED = 0x10C6A47BL;
+
+    /** Horizontal size of a render/meshing chunk in blocks. */
+    private static final int CHUNK_SIZE = Chunk.SIZE;
+
+    /** Number of chunks along X of the spawn area (ceil so any SIZE is covered). */
+    static final int CHUNKS_X = (SIZE + CHUNK_SIZE - 1) / CHUNK_SIZE;
 
-    private static final long DEFAULT_SEED = 0x10C6A47BL;
+    /** Number of chunks along Z of the spawn area (ceil so any SIZE is covered). */
+    static final int CHUNKS_Z = (SIZE + CHUNK_SIZE - 1) / CHUNK_SIZE;
 
-    /** Texture key of the translucent water batch (drawn last, blended). */
-    private static final String WATER_TEXTURE_KEY = "water";
+    /** Block X that OpenGL X 0 falls in. */
+    private static final int ORIGIN_X = SIZE / 2;
 
     /**
-     * Height of a still-water surface block, as a fraction of a full block.
-     * Minecraft renders still liquids 2 pixels (2/16) below the block top so
-     * the waterline reads clearly against neighbouring solid blocks; clones
-     * universally copy the same 14/16 value.
+     * Gap below which {@link #sweep} counts a box as touching a block face:
+     * flush contacts neither block sideways motion nor count as overlaps.
      */
-    private static final float WATER_SURFACE_HEIGHT = 14f / 16f;
+    static final float CONTACT_EPSILON = 0.001f;
 
-    /** Horizontal size of a render/meshing chunk in blocks. */
-    private static final int CHUNK_SIZE = 16;
+    /**
+     * Chunks kept loaded around the player, in chunks along each axis
+     * ({@code -Dblockgame.renderDistance}, 1 to 32). Chunks one further out
+     * stay loaded too, so walking back and forth over a chunk border does
+     * not reload a row each time.
+     */
+    private static final int RENDER_DISTANCE = Math.max(1, Math.min(32,
+            Integer.getInteger("blockgame.renderDistance", 6)));
+
+    /**
+     * Most chunks {@link #updateStreaming(float, float)} loads per call, so
+     * crossing a chunk border spreads its loads over several frames
+     * ({@code -Dblockgame.chunkLoadsPerFrame}).
+     */
+    private static final int LOADS_PER_UPDATE = Math.max(1,
+            Integer.getInteger("blockgame.chunkLoadsPerFrame", 4));
 
-    /** Number of chunks along the world X axis (ceil so any SIZE is covered). */
-    private static final int CHUNKS_X = (SIZE + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    /**
+     * Loaded chunk columns by chunk coordinates. Each chunk owns its block
+     * sections, its own opaque and water vertex streams and its own
+     * mesh version, so a single block edit only forces the containing chunk (and
+     * any bordering neighbour) to be re-meshed instead of re-scanning the
+     * whole world.
+     */
+    private final ChunkMap<Chunk> chunks = new ChunkMap<>();
 
-    /** Number of chunks along the world Z axis (ceil so any SIZE is covered). */
-    private static final int CHUNKS_Z = (SIZE + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    /** Block layout of every chunk this world creates. */
+    private final StorageMode mode;
 
-    /** 3D array storing block ids [x][y][z]. */
-    private final int[][][] blocks = new int[SIZE][HEIGHT][SIZE];
+    /** Fills chunks that are loaded for the first time. */
+    private final TerrainGenerator generator;
 
     /**
-     * Per-chunk render batches. Each chunk owns its own {@code texture → packed
-     * quad data} map and its own dirty flag, so a single block edit only forces
-     * the containing chunk (and any bordering neighbour) to be re-meshed instead
-     * of re-scanning the whole world.
+     * Where chunks are read from when they load and written to when they
+     * unload with unsaved edits; {@code null} to generate every chunk and
+     * keep edited chunks loaded.
      */
-    private final Chunk[][] chunks = new Chunk[CHUNKS_X][CHUNKS_Z];
+    private RegionStore regions;
 
-    /** Union of texture keys across all chunks, refreshed when chunks rebuild. */
-    private final Set<String> textureKeys = new LinkedHashSet<>();
+    /** Keeps every chunk's skylight current as blocks change. */
+    private final SkyLight skyLight = new SkyLight(this);
 
-    {
-        for (int cx = 0; cx < CHUNKS_X; cx++) {
-            for (int cz = 0; cz < CHUNKS_Z; cz++) {
-                chunks[cx][cz] = new Chunk(cx, cz);
-            }
+    /** Chunks within the render distance still to be loaded, best first. */
+    private final ChunkScheduler loadQueue = new ChunkScheduler();
+
+    /** Out-of-date chunks waiting for a mesh job, best first. */
+    private final ChunkScheduler meshQueue = new ChunkScheduler();
+
+    /**
+     * Chunk the player stood in when {@link #loadQueue} was last filled;
+     * the queue is refilled, and stale requests cancelled, when it changes.
+     */
+    private int queuedX = Integer.MIN_VALUE;
+    private int queuedZ = Integer.MIN_VALUE;
+
+    /** Load and mesh requests dropped because their chunk left the render distance. */
+    private long cancelledLoads;
+    private long cancelledMeshes;
+
+    /**
+     * Frames a chunk must have gone unseen before {@link #enforceMemoryBudget}
+     * may take its mesh or blocks, so glancing away and back costs nothing.
+     */
+    private static final int IDLE_FRAMES = 60;
+
+    /**
+     * Heap allowed for vertex streams and for block and light storage, in
+     * bytes ({@code -Dblockgame.meshBudgetMB}, {@code -Dblockgame.blockBudgetMB});
+     * see {@link #enforceMemoryBudget}.
+     */
+    private long meshBudget = Long.getLong("blockgame.meshBudgetMB", 192) << 20;
+    private long blockBudget = Long.getLong("blockgame.blockBudgetMB", 48) << 20;
+
+    /**
+     * Chunks within the render distance unloaded to meet the block budget;
+     * they are queued to load again once their column enters the frustum
+     * rather than as soon as the player changes chunk.
+     */
+    private final ChunkMap<Boolean> budgetEvicted = new ChunkMap<>();
+
+    /** Frames culled so far; stamped on each chunk as it is seen. */
+    private long frame;
+
+    /** Per-tier usage as of the last {@link #enforceMemoryBudget}. */
+    private long meshMemory;
+    private long blockMemory;
+    private long packedMemory;
+    private int meshlessChunks;
+    private int packedChunks;
+    private long budgetUnloads;
+
+    /**
+     * Worker threads used for background meshing; override with the
+     * {@code blockgame.meshThreads} system property. One core is left for the
+     * render thread.
+     */
+    private static final int MESH_THREADS = Math.max(1, Integer.getInteger("blockgame.meshThreads",
+            Math.min(4, Runtime.getRuntime().availableProcessors() - 1)));
+
+    /**
+     * Most mesh jobs queued on or running in the worker pool at once. The
+     * pool's own queue is first-in first-out, so keeping it short lets
+     * {@link #meshQueue} decide what is meshed next.
+     */
+    private static final int MESH_IN_FLIGHT = MESH_THREADS * 2;
+
+    /** Mesh jobs submitted and not yet finished; decremented by the workers. */
+    private final AtomicInteger meshesInFlight = new AtomicInteger();
+
+    /** Each mesh worker keeps its own scratch buffers. */
+    private static final ThreadLocal<ChunkMesher> WORKER_MESHER = ThreadLocal.withInitial(ChunkMesher::new);
+
+    /**
+     * Reused to decode palette-compressed columns while taking snapshots and
+     * to expand runs while loading; used under the world's monitor.
+     */
+    private final byte[] columnScratch = new byte[Chunk.VOLUME];
+
+    /** Mesher for synchronous rebuilds on the calling thread. */
+    private final ChunkMesher mesher = new ChunkMesher();
+
+    /**
+     * Finished meshes published by the workers, drained on the render thread
+     * by {@link #rebuildDirtyChunks()}.
+     */
+    private final Queue<ChunkMesher.Result> meshResults = new ConcurrentLinkedQueue<>();
+
+    /** Background mesh workers; created on the first rebuild. */
+    private ExecutorService meshPool;
+
+    /**
+     * When true, the mesher merges coplanar same-texture faces into larger
+     * rectangles instead of emitting one quad per block face.
+     */
+    private boolean greedyMeshing = Boolean.getBoolean("blockgame.greedyMeshing");
+
+    /**
+     * When true, chunks are drawn from vertex buffers uploaded once per
+     * rebuild; otherwise every vertex is resubmitted each frame in immediate
+     * mode. Disable with {@code -Dblockgame.vbo=false}.
+     */
+    private boolean useVbo = !"false".equalsIgnoreCase(System.getProperty("blockgame.vbo"));
+
+    /** When true, chunks outside the camera frustum are not drawn. */
+    private boolean frustumCulling = true;
+
+    /**
+     * When true, sections the camera cannot see into through open faces
+     * are skipped as well (see {@link #walkVisibleSections}).
+     */
+    private boolean occlusionCulling = true;
+
+    /** Chunks with at least one section drawn during the last frame. */
+    private int visibleChunks;
+
+    /** Sections drawn during the last frame. */
+    private int visibleSections;
+
+    /** Sections that passed the frustum test during the last frame. */
+    private int frustumSections;
+
+    /** Occlusion-walk queue: chunk and section of each entry; grown as chunks load. */
+    private Chunk[] walkChunks = new Chunk[0];
+    private byte[] walkSection = new byte[0];
+
+    /** Face each queued section was entered through, or -1 for the start. */
+    private byte[] walkEntry = new byte[0];
+
+    /** Bit set of directions taken to reach each queued section. */
+    private byte[] walkTravelled = new byte[0];
+
+    /** Vertex buffers bound during the last frame. */
+    private int frameBufferBinds;
+
+    /** Vertices submitted during the last frame. */
+    private long frameVertices;
+
+    /** Scratch for the light-model ambient colour set by {@link #render}. */
+    private final FloatBuffer lightModel = BufferUtils.createFloatBuffer(4);
+
+    /** Receives every cell changed by {@link #setBlock}; {@code null} when off. */
+    private EditJournal journal;
+
+    /** Game ticks elapsed this session, stamped on journal records. */
+    private long tick;
+
+    /**
+     * How each chunk column lays out its blocks in memory.
+     */
+    public enum StorageMode {
+        /** Per-section palettes with bit-packed indices: smallest heap. */
+        PALETTE,
+        /** One byte per cell in a flat per-column array: fastest reads. */
+        FLAT;
+
+        /**
+         * @return the mode named by the {@code blockgame.storage} system
+         *         property ({@code palette} or {@code flat}), defaulting to
+         *         {@link #PALETTE}
+         */
+        public static StorageMode fromSystemProperty() {
+            String v = System.getProperty("blockgame.storage", "palette");
+            return "flat".equalsIgnoreCase(v) ? FLAT : PALETTE;
         }
     }
 
@@ -129,258 +340,295 @@ public class World {
      * @param seed deterministic generation seed
      */
     public World(long seed) {
-        generate(seed);
+        this(seed, StorageMode.fromSystemProperty());
     }
 
     /**
-     * Generate the world terrain and populate it with trees, ores, etc.
-     * 
+     * Construct and generate the world with the given seed and block layout.
+     *
      * @param seed deterministic generation seed
+     * @param mode in-memory block layout for every chunk
      */
-    private void generate(long seed) {
-        Random rng = new Random(seed);
-        int[][] heights = new int[SIZE][SIZE];
-        float[][] coarse = noiseGrid(rng, 8);
-        float[][] fine = noiseGrid(rng, 4);
-        for (int x = 0; x < SIZE; x++) {
-            for (int z = 0; z < SIZE; z++) {
-                float n = sampleBilinear(coarse, x, z, 8) * 0.7f
-                        + sampleBilinear(fine, x, z, 4) * 0.3f;
-                int h = SEA_LEVEL - 2 + Math.round(n * 12f);
-                if (h < 1) h = 1;
-                if (h > HEIGHT - 8) h = HEIGHT - 8;
-                heights[x][z] = h;
-            }
-        }
-
-        for (int x = 0; x < SIZE; x++) {
-            for (int z = 0; z < SIZE; z++) {
-                int h = heights[x][z];
-                blocks[x][0][z] = BLOCK_TYPE_BEDROCK;
-                for (int y = 1; y < h - 3; y++) {
-                    blocks[x][y][z] = BLOCK_TYPE_STONE;
-                }
-                int dirtTop = Math.max(0, h - 1);
-                for (int y = Math.max(1, h - 3); y <= dirtTop; y++) {
-                    blocks[x][y][z] = BLOCK_TYPE_DIRT;
-                }
-                boolean beach = h <= SEA_LEVEL + 1;
-                blocks[x][h][z] = beach ? BLOCK_TYPE_SAND : BLOCK_TYPE_GRASS;
-                if (beach) {
-                    for (int y = Math.max(1, h - 2); y < h; y++) {
-                        blocks[x][y][z] = BLOCK_TYPE_SAND;
-                    }
-                }
-                for (int y = h + 1; y <= SEA_LEVEL; y++) {
-                    blocks[x][y][z] = BLOCK_TYPE_WATER;
-                }
+    public World(long seed, StorageMode mode) {
+        this.mode = mode;
+        generator = new TerrainGenerator(seed);
+        List<Chunk> spawn = new ArrayList<>();
+        for (int cx = 0; cx < CHUNKS_X; cx++) {
+            for (int cz = 0; cz < CHUNKS_Z; cz++) {
+                Chunk c = new Chunk(cx, cz, mode);
+                chunks.put(cx, cz, c);
+                spawn.add(c);
             }
         }
+        generator.generate(spawn, TerrainGenerator.sharedPool());
+        markGenerated(spawn);
+        skyLight.relightAll();
+        markAllDirty();
+    }
 
-        placeGravelPatches(rng, heights);
-        placeOreVeins(rng, heights);
+    /** @return the block X containing OpenGL X {@code glX}. */
+    public static int blockX(float glX) {
+        return (int) Math.floor(toBlockX(glX));
+    }
 
-        int treeCount = 16;
-        int attempts = 0;
-        while (treeCount > 0 && attempts < 200) {
-            attempts++;
-            int x = 3 + rng.nextInt(SIZE - 6);
-            int z = 3 + rng.nextInt(SIZE - 6);
-            int h = heights[x][z];
-            if (blocks[x][h][z] == BLOCK_TYPE_GRASS && plantTree(x, h + 1, z)) {
-                treeCount--;
-            }
-        }
-        markAllDirty();
+    /** @return the block Z containing OpenGL Z {@code glZ}. */
+    public static int blockZ(float glZ) {
+        return (int) Math.floor(toBlockZ(glZ));
     }
 
-    /**
-     * Scatter a few disks of gravel over beach / sea-floor sand, the way
-     * Minecraft beaches mix sand and gravel.
-     * 
-     * @param rng Random number generator
-     * @param heights Height map of the terrain
-     */
-    private void placeGravelPatches(Random rng, int[][] heights) {
-        int patches = 10;
-        for (int i = 0; i < patches; i++) {
-            int cx = rng.nextInt(SIZE);
-            int cz = rng.nextInt(SIZE);
-            int radius = 2 + rng.nextInt(2);
-            for (int dx = -radius; dx <= radius; dx++) {
-                for (int dz = -radius; dz <= radius; dz++) {
-                    if (dx * dx + dz * dz > radius * radius) continue;
-                    int x = cx + dx;
-                    int z = cz + dz;
-                    if (x < 0 || x >= SIZE || z < 0 || z >= SIZE) continue;
-                    int h = heights[x][z];
-                    if (blocks[x][h][z] == BLOCK_TYPE_SAND) {
-                        blocks[x][h][z] = BLOCK_TYPE_GRAVEL;
-                    }
-                }
-            }
-        }
+    /** @return OpenGL X converted to continuous block X. */
+    public static float toBlockX(float glX) {
+        return glX + ORIGIN_X;
+    }
+
+    /** @return OpenGL Z converted to continuous block Z. */
+    public static float toBlockZ(float glZ) {
+        return -glZ;
+    }
+
+    /** @return continuous block X converted to OpenGL X; a block spans {@code toGlX(x)} to {@code toGlX(x) + 1}. */
+    public static float toGlX(float blockX) {
+        return blockX - ORIGIN_X;
+    }
+
+    /** @return continuous block Z converted to OpenGL Z; a block spans {@code toGlZ(z) - 1} to {@code toGlZ(z)}. */
+    public static float toGlZ(float blockZ) {
+        return -blockZ;
+    }
+
+    /** @return the render distance in chunks ({@code blockgame.renderDistance}). */
+    public static int renderDistance() {
+        return RENDER_DISTANCE;
     }
 
     /**
-     * Seed small ore veins in the stone layer: plenty of coal at any depth,
-     * rarer iron biased toward the lower half of the stone.
-     * 
-     * @param rng Random number generator
-     * @param heights Height map of the terrain
+     * Read chunks that load from now on out of {@code store}, and write
+     * edited chunks there when they unload. The world does not close it.
+     *
+     * @param store the save's region store, or {@code null} to detach
      */
-    private void placeOreVeins(Random rng, int[][] heights) {
-        placeVeinType(rng, heights, BLOCK_TYPE_COAL_ORE, 28, 4, 5, 1.0f);
-        placeVeinType(rng, heights, BLOCK_TYPE_IRON_ORE, 16, 2, 4, 0.55f);
+    void setRegions(RegionStore store) {
+        regions = store;
+    }
+
+    /** @return the attached region store, or {@code null}. */
+    RegionStore regions() {
+        return regions;
     }
 
     /**
-     * Place a number of veins of a single ore type in the stone layer.
-     * 
-     * @param rng Random number generator
-     * @param heights Height map of the terrain
-     * @param oreId ID of the ore block
-     * @param veins Number of veins to generate
-     * @param minSize Minimum size of each vein
-     * @param sizeRange Range of additional size for each vein
-     * @param maxDepthFraction Maximum depth fraction of the stone layer for vein placement
+     * Stream chunks around the player: unload every chunk more than one
+     * beyond the render distance, then load up to
+     * {@code blockgame.chunkLoadsPerFrame} missing chunks within it, those
+     * nearest and most directly in view first (see {@link ChunkScheduler}).
+     * The same view orders mesh rebuilds. Call once per frame from the
+     * render thread.
+     *
+     * @param glX   player OpenGL X
+     * @param glZ   player OpenGL Z
+     * @param viewX view vector X, as from {@link Player#getViewVector()}
+     * @param viewZ view vector Z
+     * @return number of chunks loaded
      */
-    private void placeVeinType(Random rng, int[][] heights, int oreId, int veins,
-                               int minSize, int sizeRange, float maxDepthFraction) {
-        for (int i = 0; i < veins; i++) {
-            int x = rng.nextInt(SIZE);
-            int z = rng.nextInt(SIZE);
-            int stoneTop = heights[x][z] - 4;
-            if (stoneTop < 2) continue;
-            int maxY = Math.max(2, Math.round(stoneTop * maxDepthFraction));
-            int y = 1 + rng.nextInt(maxY);
-            int size = minSize + rng.nextInt(sizeRange);
-            int bx = x;
-            int by = y;
-            int bz = z;
-            for (int n = 0; n < size; n++) {
-                if (inBounds(bx, by, bz) && blocks[bx][by][bz] == BLOCK_TYPE_STONE) {
-                    blocks[bx][by][bz] = oreId;
-                }
-                // Random walk to the next cell of the vein.
-                switch (rng.nextInt(6)) {
-                    case 0: bx++; break;
-                    case 1: bx--; break;
-                    case 2: by++; break;
-                    case 3: by--; break;
-                    case 4: bz++; break;
-                    default: bz--; break;
-                }
-            }
-        }
+    public int updateStreaming(float glX, float glZ, float viewX, float viewZ) {
+        return updateStreaming(glX, glZ, viewX, viewZ, LOADS_PER_UPDATE);
     }
 
     /**
-     * Plant a small oak tree at the given location if there's enough space.
-     * 
-     * @param x X-coordinate of the tree's base
-     * @param y Y-coordinate of the tree's base
-     * @param z Z-coordinate of the tree's base
-     * @return true if the tree was successfully planted
+     * {@link #updateStreaming(float, float, float, float)} with an explicit
+     * load limit; pass {@link Integer#MAX_VALUE} to fill the whole render
+     * distance at once, as on startup.
      */
-    private boolean plantTree(int x, int y, int z) {
-        int trunkH = 4 + (Math.abs(x * 31 + z) % 2);
-        if (y + trunkH + 1 >= HEIGHT) return false;
-        for (int i = 0; i < trunkH; i++) {
-            blocks[x][y + i][z] = BLOCK_TYPE_OAK_LOG;
+    synchronized int updateStreaming(float glX, float glZ, float viewX, float viewZ, int maxLoads) {
+        int ccx = blockX(glX) >> 4;
+        int ccz = blockZ(glZ) >> 4;
+        loadQueue.setView(toBlockX(glX), toBlockZ(glZ), viewX, -viewZ);
+        meshQueue.setView(toBlockX(glX), toBlockZ(glZ), viewX, -viewZ);
+
+        List<Chunk> far = new ArrayList<>();
+        for (int i = 0; i < chunks.capacity(); i++) {
+            Chunk c = chunks.valueAt(i);
+            if (c != null && Math.max(Math.abs(c.cx - ccx), Math.abs(c.cz - ccz)) > RENDER_DISTANCE + 1) {
+                far.add(c);
+            }
+        }
+        for (Chunk c : far) {
+            unload(c);
         }
-        int topY = y + trunkH;
-        for (int dx = -2; dx <= 2; dx++) {
-            for (int dz = -2; dz <= 2; dz++) {
-                for (int dy = -1; dy <= 0; dy++) {
-                    if (Math.abs(dx) == 2 && Math.abs(dz) == 2) continue;
-                    int lx = x + dx;
-                    int lz = z + dz;
-                    int ly = topY + dy;
-                    if (inBounds(lx, ly, lz) && blocks[lx][ly][lz] == BLOCK_TYPE_AIR) {
-                        blocks[lx][ly][lz] = BLOCK_TYPE_OAK_LEAVES;
+
+        // Chunks within the render distance are never unloaded, so the
+        // missing ones only change when the player enters another chunk.
+        if (ccx != queuedX || ccz != queuedZ) {
+            queuedX = ccx;
+            queuedZ = ccz;
+            cancelledLoads += loadQueue.cancelOutside(ccx, ccz, RENDER_DISTANCE);
+            cancelledMeshes += meshQueue.cancelOutside(ccx, ccz, RENDER_DISTANCE + 1);
+            for (int dx = -RENDER_DISTANCE; dx <= RENDER_DISTANCE; dx++) {
+                for (int dz = -RENDER_DISTANCE; dz <= RENDER_DISTANCE; dz++) {
+                    int cx = ccx + dx;
+                    int cz = ccz + dz;
+                    if (chunks.get(cx, cz) == null && budgetEvicted.get(cx, cz) == null) {
+                        loadQueue.offer(cx, cz);
                     }
                 }
             }
         }
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dz = -1; dz <= 1; dz++) {
-                if (Math.abs(dx) + Math.abs(dz) > 1) continue;
-                int lx = x + dx;
-                int lz = z + dz;
-                int ly = topY + 1;
-                if (inBounds(lx, ly, lz) && blocks[lx][ly][lz] == BLOCK_TYPE_AIR) {
-                    blocks[lx][ly][lz] = BLOCK_TYPE_OAK_LEAVES;
-                }
-            }
+
+        List<Chunk> wanted = new ArrayList<>();
+        while (wanted.size() < maxLoads && !loadQueue.isEmpty()) {
+            long key = loadQueue.poll();
+            int cx = ChunkMap.keyX(key);
+            int cz = ChunkMap.keyZ(key);
+            // require() may have loaded it since it was queued.
+            if (chunks.get(cx, cz) == null) wanted.add(new Chunk(cx, cz, mode));
         }
-        return true;
+        load(wanted);
+        return wanted.size();
     }
 
     /**
-     * Generate a grid of random float values for use in terrain noise generation.
-     * 
-     * @param rng Random number generator
-     * @param step Step size for the grid
-     * @return A 2D array of random float values
+     * Order loads and mesh rebuilds by distance alone ({@code false}) or by
+     * distance and view direction (the default).
      */
-    private static float[][] noiseGrid(Random rng, int step) {
-        int n = SIZE / step + 2;
-        float[][] g = new float[n][n];
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                g[i][j] = rng.nextFloat();
-            }
+    void setViewPriority(boolean on) {
+        loadQueue.setDirectional(on);
+        meshQueue.setDirectional(on);
+    }
+
+    /** @return chunks still queued to load. */
+    public int pendingLoads() {
+        return loadQueue.size();
+    }
+
+    /** @return load requests cancelled so far because the player moved away first. */
+    public long cancelledLoads() {
+        return cancelledLoads;
+    }
+
+    /** @return mesh requests cancelled so far because the chunk was unloaded first. */
+    public long cancelledMeshes() {
+        return cancelledMeshes;
+    }
+
+    /**
+     * Fill new chunks from the region store or the generator, insert them,
+     * light them and queue them, and their neighbours' facing borders, for
+     * meshing.
+     *
+     * @param fresh all-air chunks at coordinates not yet loaded
+     */
+    private void load(List<Chunk> fresh) {
+        if (fresh.isEmpty()) return;
+        List<Chunk> generate = new ArrayList<>();
+        for (Chunk c : fresh) {
+            if (!readStored(c)) generate.add(c);
+        }
+        generator.generate(generate, TerrainGenerator.sharedPool());
+        markGenerated(generate);
+        for (Chunk c : fresh) {
+            chunks.put(c.cx, c.cz, c);
+            budgetEvicted.remove(c.cx, c.cz);
+            // Fresh chunks count as just seen, so the budget doesn't take them at once.
+            c.lastVisibleFrame = frame;
+        }
+        skyLight.relight(fresh);
+        skyLight.drainChanged(c -> c.version++);
+        for (Chunk c : fresh) {
+            c.version++;
+            bumpVersion(c.cx - 1, c.cz);
+            bumpVersion(c.cx + 1, c.cz);
+            bumpVersion(c.cx, c.cz - 1);
+            bumpVersion(c.cx, c.cz + 1);
+        }
+    }
+
+    /** @return true if {@code c} was filled from the region store. */
+    private boolean readStored(Chunk c) {
+        if (regions == null) return false;
+        try {
+            byte[] data = regions.read(c.cx, c.cz);
+            if (data == null) return false;
+            ChunkCodec.decode(data, c, columnScratch);
+            c.savedEditCount = c.editCount;
+            return true;
+        } catch (IOException e) {
+            logger.warn("Failed to read chunk ({}, {}), generating it instead: {}",
+                    c.cx, c.cz, e.getMessage());
+            return false;
+        }
+    }
+
+    /** Count freshly generated chunks as saved: the generator can always rebuild them. */
+    private static void markGenerated(List<Chunk> generated) {
+        for (Chunk c : generated) {
+            c.savedEditCount = c.editCount;
         }
-        return g;
     }
 
     /**
-     * Sample a 2D grid of float values using bilinear interpolation.
-     * 
-     * @param grid The 2D array of float values to sample from
-     * @param x X-coordinate in the grid
-     * @param z Z-coordinate in the grid
-     * @param step Step size used to generate the grid
-     * @return The interpolated float value at the given coordinates
+     * Drop a chunk from the world, first writing it to the region store if
+     * it has edits no save holds yet. A chunk that can't be written stays
+     * loaded rather than lose its edits.
+     *
+     * @return true if the chunk was unloaded
      */
-    private static float sampleBilinear(float[][] grid, int x, int z, int step) {
-        float fx = x / (float) step;
-        float fz = z / (float) step;
-        int x0 = (int) Math.floor(fx);
-        int z0 = (int) Math.floor(fz);
-        int x1 = Math.min(grid.length - 1, x0 + 1);
-        int z1 = Math.min(grid[0].length - 1, z0 + 1);
-        float tx = fx - x0;
-        float tz = fz - z0;
-        float sx = tx * tx * (3 - 2 * tx);
-        float sz = tz * tz * (3 - 2 * tz);
-        float a = lerp(grid[x0][z0], grid[x1][z0], sx);
-        float b = lerp(grid[x0][z1], grid[x1][z1], sx);
-        return lerp(a, b, sz);
+    private boolean unload(Chunk c) {
+        boolean unsaved = c.editCount != c.savedEditCount;
+        if (unsaved && regions == null) return false;
+        if (regions != null) {
+            // Under the store's lock so a concurrent save either writes its
+            // older copy first or sees the flag and skips it.
+            synchronized (regions) {
+                if (unsaved) {
+                    try {
+                        regions.write(c.cx, c.cz, WorldSave.payload(c.share()));
+                    } catch (IOException e) {
+                        logger.warn("Failed to write chunk ({}, {}) on unload, keeping it: {}",
+                                c.cx, c.cz, e.getMessage());
+                        return false;
+                    }
+                }
+                c.evicted = true;
+            }
+        } else {
+            c.evicted = true;
+        }
+        chunks.remove(c.cx, c.cz);
+        deleteBuffers(c);
+        return true;
     }
 
     /**
-     * Linearly interpolate between two float values.
+     * Load the chunk ({@code cx}, {@code cz}) now if it isn't already.
      *
-     * @param a The start value
-     * @param b The end value
-     * @param t The interpolation factor in [0, 1]
-     * @return The interpolated value
+     * @return the loaded chunk
      */
-    private static float lerp(float a, float b, float t) {
-        return a + (b - a) * t;
+    private Chunk require(int cx, int cz) {
+        Chunk c = chunks.get(cx, cz);
+        if (c == null) {
+            c = new Chunk(cx, cz, mode);
+            List<Chunk> one = new ArrayList<>(1);
+            one.add(c);
+            load(one);
+        }
+        return c;
+    }
+
+    /** @return true if the chunk holding OpenGL position ({@code glX}, {@code glZ}) is loaded. */
+    public boolean isLoadedAt(float glX, float glZ) {
+        return chunkAt(blockX(glX), blockZ(glZ)) != null;
     }
 
     /**
      * Render the world.
      *
-     * <p>Faces are grouped by texture into batches. Each batch is a flat
-     * {@code float[]} with 5 floats per vertex (u, v, x, y, z) and 4 vertices
-     * per quad. Batches are partitioned per chunk; only dirty chunks are
-     * re-meshed before drawing. Each texture is bound once and every chunk's
-     * batch for that texture is emitted inside a single {@code glBegin/glEnd}
-     * pair, keeping the per-frame bind count at ~one per texture.</p>
+     * <p>Every chunk holds two vertex streams textured from the
+     * {@link TextureAtlas} — opaque faces and water — in the layout described
+     * by {@link ChunkMesher}. Out-of-date chunks are re-meshed on worker
+     * threads (see {@link #rebuildDirtyChunks()}). The atlas is bound once;
+     * every opaque stream is drawn, then every water stream with blending,
+     * each from the chunk's vertex buffer with {@code glDrawArrays} or — on
+     * the immediate path — inside one {@code glBegin/glEnd} pair.</p>
      */
     public void render() {
         render(1f);
@@ -389,259 +637,779 @@ public class World {
     /**
      * Render the world with a global brightness multiplier (1 = full daylight,
      * lower values darken every face uniformly — driven by
-     * {@link DayNightCycle}).
+     * {@link DayNightCycle}). Faces keep their baked skylight shading; the
+     * multiplier scales it through the light-model ambient, with lighting
+     * and colour material on so per-vertex colours still pass through it.
      *
      * @param brightness light multiplier in {@code (0, 1]}
      */
     public void render(float brightness) {
-        rebuildDirtyChunks();
+        render(brightness, null);
+    }
+
+    /**
+     * Render the world, skipping sections outside the camera frustum or
+     * hidden from it behind opaque terrain.
+     *
+     * @param brightness light multiplier in {@code (0, 1]}
+     * @param frustum    the current camera frustum, or {@code null} to draw
+     *                   every chunk
+     */
+    public void render(float brightness, Frustum frustum) {
+        synchronized (this) {
+            rebuildDirtyChunks();
+        }
+        cullSections(frustum);
+        synchronized (this) {
+            enforceMemoryBudget(frustum);
+        }
+        frameBufferBinds = 0;
+        frameVertices = 0;
+        boolean vbo = useVbo;
+        if (vbo) {
+            uploadStaleBuffers();
+            VertexBuffer.beginDraw();
+        }
         TextureLoader.enableTextures();
-        GL11.glColor3f(brightness, brightness, brightness);
-        for (String key : textureKeys) {
-            if (WATER_TEXTURE_KEY.equals(key)) continue;
-            drawBatches(key);
-        }
-        if (textureKeys.contains(WATER_TEXTURE_KEY)) {
-            GL11.glEnable(GL11.GL_BLEND);
-            GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
-            GL11.glDepthMask(false);
-            drawBatches(WATER_TEXTURE_KEY);
-            GL11.glDepthMask(true);
-            GL11.glDisable(GL11.GL_BLEND);
+        TextureLoader.bindTexture(TextureLoader.getTexture(TextureAtlas.ATLAS_KEY));
+        TilingShader.bind();
+        lightModel.put(0, brightness).put(1, brightness).put(2, brightness).put(3, 1f);
+        GL11.glLightModelfv(GL11.GL_LIGHT_MODEL_AMBIENT, lightModel);
+        GL11.glColorMaterial(GL11.GL_FRONT_AND_BACK, GL11.GL_AMBIENT_AND_DIFFUSE);
+        GL11.glEnable(GL11.GL_COLOR_MATERIAL);
+        GL11.glEnable(GL11.GL_LIGHTING);
+        drawStreams(false, vbo);
+        GL11.glEnable(GL11.GL_BLEND);
+        GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+        GL11.glDepthMask(false);
+        drawStreams(true, vbo);
+        GL11.glDepthMask(true);
+        GL11.glDisable(GL11.GL_BLEND);
+        GL11.glDisable(GL11.GL_LIGHTING);
+        GL11.glDisable(GL11.GL_COLOR_MATERIAL);
+        TilingShader.unbind();
+        if (vbo) {
+            VertexBuffer.endDraw();
         }
         GL11.glColor3f(1f, 1f, 1f);
     }
 
-    /** Bind {@code key}'s texture and emit every chunk's batch for it. */
-    private void drawBatches(String key) {
-        int tex = TextureLoader.getTexture(key);
-        TextureLoader.bindTexture(tex);
+    /**
+     * Draw the visible sections of every chunk's opaque or water stream,
+     * either from the chunks' vertex buffers or as one immediate-mode
+     * {@code glBegin/glEnd} block. Runs of adjacent visible sections are
+     * drawn as a single range. The atlas must already be bound.
+     */
+    private void drawStreams(boolean water, boolean vbo) {
+        if (vbo) {
+            for (int slot = 0; slot < chunks.capacity(); slot++) {
+                Chunk c = chunks.valueAt(slot);
+                if (c == null) continue;
+                VertexBuffer buf = water ? c.waterBuffer : c.opaqueBuffer;
+                if (!c.visible || buf == null) continue;
+                int[] ranges = water ? c.waterRanges : c.opaqueRanges;
+                buf.bind();
+                frameBufferBinds++;
+                for (int s = 0; s < Chunk.SECTIONS; s++) {
+                    if (!c.sectionVisible[s]) continue;
+                    int end = s + 1;
+                    while (end < Chunk.SECTIONS && c.sectionVisible[end]) end++;
+                    int count = ranges[end] - ranges[s];
+                    if (count > 0) {
+                        buf.drawRange(ranges[s], count);
+                        frameVertices += count;
+                    }
+                    s = end;
+                }
+            }
+            return;
+        }
         GL11.glBegin(GL11.GL_QUADS);
-        for (int cx = 0; cx < CHUNKS_X; cx++) {
-            for (int cz = 0; cz < CHUNKS_Z; cz++) {
-                float[] verts = chunks[cx][cz].batches.get(key);
-                if (verts == null) continue;
-                for (int i = 0; i < verts.length; i += 5) {
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c == null || !c.visible) continue;
+            float[] verts = water ? c.waterVerts : c.opaqueVerts;
+            int[] ranges = water ? c.waterRanges : c.opaqueRanges;
+            for (int s = 0; s < Chunk.SECTIONS; s++) {
+                if (!c.sectionVisible[s]) continue;
+                int end = ranges[s + 1] * ChunkMesher.FLOATS_PER_VERTEX;
+                for (int i = ranges[s] * ChunkMesher.FLOATS_PER_VERTEX; i < end;
+                        i += ChunkMesher.FLOATS_PER_VERTEX) {
+                    int rgb = Float.floatToRawIntBits(verts[i + ChunkMesher.COLOR_OFFSET]);
+                    GL11.glColor3ub((byte) rgb, (byte) (rgb >> 8), (byte) (rgb >> 16));
+                    GL13.glMultiTexCoord2f(GL13.GL_TEXTURE1, verts[i + 2], verts[i + 3]);
                     GL11.glTexCoord2f(verts[i], verts[i + 1]);
-                    GL11.glVertex3f(verts[i + 2], verts[i + 3], verts[i + 4]);
+                    int p = i + ChunkMesher.POSITION_OFFSET;
+                    GL11.glVertex3f(verts[p], verts[p + 1], verts[p + 2]);
                 }
+                frameVertices += ranges[s + 1] - ranges[s];
             }
         }
         GL11.glEnd();
     }
 
     /**
-     * Re-mesh every chunk whose dirty flag is set, then refresh the union of
-     * texture keys if anything changed.
+     * Decide which sections to draw this frame and update the visibility
+     * counters.
+     *
+     * <p>Every section's box is first tested against the frustum. With
+     * occlusion culling on, only sections reachable from the camera's section
+     * by {@link #walkVisibleSections} are kept; otherwise every section in
+     * the frustum is drawn.</p>
+     *
+     * <p>Visible chunks are stamped with the frame number for
+     * {@link #enforceMemoryBudget}. Package-private so benchmarks can cull
+     * without a GL context.</p>
+     *
+     * @param frustum camera frustum, or {@code null} to draw every section
      */
-    private void rebuildDirtyChunks() {
-        boolean any = false;
-        for (int cx = 0; cx < CHUNKS_X; cx++) {
-            for (int cz = 0; cz < CHUNKS_Z; cz++) {
-                Chunk c = chunks[cx][cz];
-                if (c.dirty) {
-                    rebuildChunk(c);
-                    c.dirty = false;
+    void cullSections(Frustum frustum) {
+        frame++;
+        boolean useFrustum = frustum != null && frustumCulling;
+        int inFrustum = 0;
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c == null) continue;
+            float minX = toGlX(c.cx * CHUNK_SIZE);
+            float maxZ = toGlZ(c.cz * CHUNK_SIZE);
+            for (int sy = 0; sy < Chunk.SECTIONS; sy++) {
+                float minY = sy * ChunkSection.SIZE;
+                boolean in = !useFrustum || frustum.intersectsBox(
+                        minX, minY, maxZ - CHUNK_SIZE,
+                        minX + CHUNK_SIZE, minY + ChunkSection.SIZE, maxZ);
+                c.sectionInFrustum[sy] = in;
+                if (in) inFrustum++;
+            }
+        }
+        frustumSections = inFrustum;
+
+        boolean walked = occlusionCulling && frustum != null && walkVisibleSections(frustum);
+        int sections = 0;
+        int visible = 0;
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c == null) continue;
+            if (!walked) {
+                System.arraycopy(c.sectionInFrustum, 0, c.sectionVisible, 0, Chunk.SECTIONS);
+            }
+            boolean any = false;
+            for (int sy = 0; sy < Chunk.SECTIONS; sy++) {
+                if (c.sectionVisible[sy]) {
+                    sections++;
                     any = true;
                 }
             }
+            c.visible = any;
+            if (any) {
+                visible++;
+                c.lastVisibleFrame = frame;
+            }
         }
-        if (any) {
-            textureKeys.clear();
-            for (int cx = 0; cx < CHUNKS_X; cx++) {
-                for (int cz = 0; cz < CHUNKS_Z; cz++) {
-                    textureKeys.addAll(chunks[cx][cz].batches.keySet());
-                }
+        visibleSections = sections;
+        visibleChunks = visible;
+    }
+
+    /**
+     * Breadth-first occlusion walk over sections, starting from the one
+     * holding the camera. A section is entered only if it is in the frustum,
+     * the walk never reverses a direction it has already taken (so it only
+     * spreads away from the camera), and the section it leaves connects the
+     * face it was entered through to the face it leaves through. Sections
+     * reached are marked in each chunk's {@link Chunk#sectionVisible}; the
+     * walk never leaves the loaded chunks.
+     *
+     * @return false if the camera is outside the loaded world, in which case
+     *         the caller falls back to frustum culling alone
+     */
+    private boolean walkVisibleSections(Frustum frustum) {
+        int camY = (int) Math.floor(frustum.eyeY());
+        if (camY < 0 || camY >= HEIGHT) return false;
+        Chunk start = chunkAt(blockX(frustum.eyeX()), blockZ(frustum.eyeZ()));
+        if (start == null) return false;
+
+        int capacity = chunks.size() * Chunk.SECTIONS;
+        if (walkChunks.length < capacity) {
+            walkChunks = new Chunk[capacity];
+            walkSection = new byte[capacity];
+            walkEntry = new byte[capacity];
+            walkTravelled = new byte[capacity];
+        }
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c != null) Arrays.fill(c.sectionVisible, false);
+        }
+        int head = 0;
+        int tail = 0;
+        walkChunks[tail] = start;
+        walkSection[tail] = (byte) (camY / ChunkSection.SIZE);
+        walkEntry[tail] = -1;
+        walkTravelled[tail] = 0;
+        start.sectionVisible[walkSection[tail]] = true;
+        tail++;
+        while (head < tail) {
+            Chunk c = walkChunks[head];
+            int sy = walkSection[head];
+            int entry = walkEntry[head];
+            int travelled = walkTravelled[head];
+            head++;
+            long conn = c.connectivity[sy];
+            for (int d = 0; d < SectionConnectivity.FACES; d++) {
+                if ((travelled & (1 << SectionConnectivity.opposite(d))) != 0) continue;
+                if (entry >= 0 && !SectionConnectivity.connected(conn, entry, d)) continue;
+                int ny = sy + SectionConnectivity.STEP_Y[d];
+                if (ny < 0 || ny >= Chunk.SECTIONS) continue;
+                Chunk n = SectionConnectivity.STEP_Y[d] != 0 ? c
+                        : chunks.get(c.cx + SectionConnectivity.STEP_X[d], c.cz + SectionConnectivity.STEP_Z[d]);
+                if (n == null || n.sectionVisible[ny] || !n.sectionInFrustum[ny]) continue;
+                n.sectionVisible[ny] = true;
+                walkChunks[tail] = n;
+                walkSection[tail] = (byte) ny;
+                walkEntry[tail] = (byte) SectionConnectivity.opposite(d);
+                walkTravelled[tail] = (byte) (travelled | (1 << d));
+                tail++;
+            }
+        }
+        Arrays.fill(walkChunks, 0, tail, null);
+        return true;
+    }
+
+    /**
+     * Keep vertex streams and block storage within their budgets by taking
+     * from the chunks that have gone longest unseen, and only from those
+     * unseen for {@link #IDLE_FRAMES} frames or more:
+     * <ol>
+     *   <li>while the streams exceed the mesh budget, drop meshes; such a
+     *       chunk is re-meshed once it is visible again;</li>
+     *   <li>while blocks and light exceed the block budget,
+     *       {@link Chunk#pack pack} chunks outside the 3×3 around the
+     *       player;</li>
+     *   <li>while still over, unload packed chunks, writing edited ones to
+     *       the region store. These load again when their column enters the
+     *       frustum.</li>
+     * </ol>
+     * Also refreshes the per-tier counters. Call after {@link #cullSections};
+     * package-private so benchmarks can drive it without a GL context.
+     *
+     * @param frustum camera frustum, or {@code null} to treat every column
+     *                as in view
+     */
+    void enforceMemoryBudget(Frustum frustum) {
+        if (budgetEvicted.size() > 0) reloadSighted(frustum);
+        countTiers();
+        long meshBytes = meshMemory;
+        long blockBytes = blockMemory + packedMemory;
+        if (meshBytes <= meshBudget && blockBytes <= blockBudget) return;
+        List<Chunk> idle = new ArrayList<>();
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c != null && frame - c.lastVisibleFrame >= IDLE_FRAMES) idle.add(c);
+        }
+        if (idle.isEmpty()) return;
+        idle.sort(Comparator.comparingLong(c -> c.lastVisibleFrame));
+        for (Chunk c : idle) {
+            if (meshBytes <= meshBudget) break;
+            if (c.meshDropped || c.meshPending) continue;
+            meshBytes -= c.meshBytes();
+            c.dropMesh();
+            deleteBuffers(c);
+        }
+        for (Chunk c : idle) {
+            if (blockBytes <= blockBudget) break;
+            // A chunk still due a mesh would only be unpacked again to build it.
+            if (c.isPacked() || (!c.meshDropped && c.meshedVersion != c.version)
+                    || Math.max(Math.abs(c.cx - queuedX), Math.abs(c.cz - queuedZ)) <= 1) continue;
+            blockBytes -= c.storageBytes() + c.lightBytes();
+            c.pack(WorldSave.DEFLATE_LEVEL);
+            blockBytes += c.storageBytes() + c.lightBytes();
+        }
+        for (Chunk c : idle) {
+            if (blockBytes <= blockBudget) break;
+            if (!c.isPacked()) continue;
+            long bytes = c.storageBytes() + c.lightBytes();
+            if (unload(c)) {
+                blockBytes -= bytes;
+                budgetUnloads++;
+                budgetEvicted.put(c.cx, c.cz, Boolean.TRUE);
+            }
+        }
+        countTiers();
+    }
+
+    /** Refresh the per-tier usage counters. */
+    private void countTiers() {
+        meshMemory = 0;
+        blockMemory = 0;
+        packedMemory = 0;
+        meshlessChunks = 0;
+        packedChunks = 0;
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c == null) continue;
+            meshMemory += c.meshBytes();
+            if (c.meshDropped) meshlessChunks++;
+            if (c.isPacked()) {
+                packedMemory += c.storageBytes() + c.lightBytes();
+                packedChunks++;
+            } else {
+                blockMemory += c.storageBytes() + c.lightBytes();
+            }
+        }
+    }
+
+    /**
+     * Queue budget-unloaded chunks whose column is now in the frustum, and
+     * forget those the player has left behind.
+     */
+    private void reloadSighted(Frustum frustum) {
+        List<Long> ready = new ArrayList<>();
+        for (int slot = 0; slot < budgetEvicted.capacity(); slot++) {
+            if (budgetEvicted.valueAt(slot) == null) continue;
+            long key = budgetEvicted.keyAt(slot);
+            int cx = ChunkMap.keyX(key);
+            int cz = ChunkMap.keyZ(key);
+            float minX = toGlX(cx * CHUNK_SIZE);
+            float maxZ = toGlZ(cz * CHUNK_SIZE);
+            boolean far = Math.max(Math.abs(cx - queuedX), Math.abs(cz - queuedZ)) > RENDER_DISTANCE;
+            if (far || frustum == null || !frustumCulling
+                    || frustum.intersectsBox(minX, 0, maxZ - CHUNK_SIZE, minX + CHUNK_SIZE, HEIGHT, maxZ)) {
+                ready.add(key);
+            }
+        }
+        for (long key : ready) {
+            int cx = ChunkMap.keyX(key);
+            int cz = ChunkMap.keyZ(key);
+            budgetEvicted.remove(cx, cz);
+            if (Math.max(Math.abs(cx - queuedX), Math.abs(cz - queuedZ)) <= RENDER_DISTANCE) {
+                loadQueue.offer(cx, cz);
+            }
+        }
+    }
+
+    /**
+     * Set the heap budgets {@link #enforceMemoryBudget} holds to, in bytes;
+     * for benchmarks.
+     */
+    void setMemoryBudget(long meshBytes, long blockBytes) {
+        meshBudget = meshBytes;
+        blockBudget = blockBytes;
+    }
+
+    /**
+     * Replace the vertex buffers of every chunk whose streams changed since
+     * its last upload. The old buffers are deleted first so a rebuild never
+     * leaks GPU memory.
+     */
+    private void uploadStaleBuffers() {
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c == null || !c.buffersStale) continue;
+            deleteBuffers(c);
+            c.opaqueBuffer = c.opaqueVerts.length > 0 ? VertexBuffer.upload(c.opaqueVerts) : null;
+            c.waterBuffer = c.waterVerts.length > 0 ? VertexBuffer.upload(c.waterVerts) : null;
+            c.buffersStale = false;
+        }
+    }
+
+    /** Free a chunk's vertex buffers; it re-uploads on the next VBO frame. */
+    private static void deleteBuffers(Chunk c) {
+        if (c.opaqueBuffer != null) c.opaqueBuffer.delete();
+        if (c.waterBuffer != null) c.waterBuffer.delete();
+        c.opaqueBuffer = null;
+        c.waterBuffer = null;
+        c.buffersStale = true;
+    }
+
+    /**
+     * Hand chunk meshing to the worker pool and install whatever it has
+     * finished since the last frame.
+     *
+     * <p>Results are drained first. A result is installed only if its
+     * snapshot version still matches the chunk's; one that raced with a later
+     * {@code setBlock} is dropped and the chunk is simply resubmitted below.
+     * Until a fresh mesh arrives the chunk keeps drawing its previous
+     * streams, so an edit never blanks the chunk or stalls the frame.</p>
+     *
+     * <p>Each out-of-date chunk has at most one job in flight, and at most
+     * {@link #MESH_IN_FLIGHT} jobs are out at once; the rest wait in
+     * {@link #meshQueue}, so a chunk that just came into view overtakes a
+     * backlog behind the player. The snapshot is taken here, on the render
+     * thread under the world's monitor, which every block edit also holds;
+     * workers never read live world state. A chunk whose mesh the memory budget
+     * dropped waits until it is visible again. Package-private so benchmarks
+     * can drive meshing without a GL context.</p>
+     */
+    void rebuildDirtyChunks() {
+        ChunkMesher.Result r;
+        while ((r = meshResults.poll()) != null) {
+            Chunk c = r.chunk;
+            c.meshPending = false;
+            if (r.version == c.version) {
+                c.opaqueVerts = r.opaque;
+                c.waterVerts = r.water;
+                c.opaqueRanges = r.opaqueRanges;
+                c.waterRanges = r.waterRanges;
+                c.connectivity = r.connectivity;
+                c.buffersStale = true;
+                c.meshedVersion = r.version;
+                c.meshDropped = false;
             }
         }
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c != null && c.meshedVersion != c.version && !c.meshPending
+                    && (c.visible || !c.meshDropped)) {
+                meshQueue.offer(c.cx, c.cz);
+            }
+        }
+        while (meshesInFlight.get() < MESH_IN_FLIGHT && !meshQueue.isEmpty()) {
+            long key = meshQueue.poll();
+            Chunk c = chunks.get(ChunkMap.keyX(key), ChunkMap.keyZ(key));
+            if (c == null) {
+                cancelledMeshes++;
+                continue;
+            }
+            if (c.meshedVersion == c.version || c.meshPending || (c.meshDropped && !c.visible)) continue;
+            submitMesh(snapshot(c));
+            c.meshPending = true;
+        }
+    }
+
+    /** Queue one snapshot on the worker pool, starting the pool if needed. */
+    private void submitMesh(ChunkMesher.Snapshot snap) {
+        if (meshPool == null) {
+            AtomicInteger n = new AtomicInteger();
+            meshPool = Executors.newFixedThreadPool(MESH_THREADS, task -> {
+                Thread t = new Thread(task, "chunk-mesher-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        meshesInFlight.incrementAndGet();
+        meshPool.execute(() -> {
+            try {
+                // Unloaded while queued: nobody will draw it.
+                if (!snap.chunk.evicted) meshResults.add(WORKER_MESHER.get().mesh(snap));
+            } catch (RuntimeException e) {
+                logger.error("Meshing chunk ({}, {}) failed", snap.chunk.cx, snap.chunk.cz, e);
+            } finally {
+                meshesInFlight.decrementAndGet();
+            }
+        });
     }
 
     /**
-     * Build the texture-grouped face batches for a single chunk. Face culling
-     * still reads neighbouring cells directly from {@link #blocks}, so faces on
-     * a chunk border are correctly hidden/exposed against the adjacent chunk.
+     * Copy a chunk's cells and skylight plus a one-block border from its four
+     * neighbours into fresh padded arrays for the mesher. Cells in chunks
+     * that are not loaded read as fully lit air.
      *
-     * @param c the chunk to re-mesh
+     * @param c the chunk to capture
+     * @return an immutable snapshot tagged with the chunk's current version
      */
-    private void rebuildChunk(Chunk c) {
-        Map<String, FaceList> builders = new HashMap<>();
-        float ox = -SIZE / 2f;
+    private ChunkMesher.Snapshot snapshot(Chunk c) {
+        byte[] cells = new byte[ChunkMesher.PADDED_VOLUME];
+        byte[] light = new byte[ChunkMesher.PADDED_VOLUME];
+        byte[] col = c.flatView(columnScratch);
         int x0 = c.cx * CHUNK_SIZE;
-        int x1 = Math.min(SIZE, x0 + CHUNK_SIZE);
         int z0 = c.cz * CHUNK_SIZE;
-        int z1 = Math.min(SIZE, z0 + CHUNK_SIZE);
-        for (int x = x0; x < x1; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                for (int z = z0; z < z1; z++) {
-                    int id = blocks[x][y][z];
-                    if (id == BLOCK_TYPE_AIR) continue;
-                    BlockType type = BlockType.fromId(id);
-                    float wx = x + ox;
-                    float wy = y;
-                    float wz = -z;
-
-                    // Surface water (no water directly above) is rendered
-                    // slightly shorter than a full block, like Minecraft, so
-                    // the waterline is visible against the surrounding land.
-                    boolean waterAbove = inBounds(x, y + 1, z)
-                            && blocks[x][y + 1][z] == BLOCK_TYPE_WATER;
-                    float top = (id == BLOCK_TYPE_WATER && !waterAbove)
-                            ? WATER_SURFACE_HEIGHT : 1f;
-
-                    if (showFace(id, x, y + 1, z)) addFace(builders, type, FACE_TOP, wx, wy, wz, top);
-                    if (showFace(id, x, y - 1, z)) addFace(builders, type, FACE_BOTTOM, wx, wy, wz, top);
-                    if (showFace(id, x, y, z - 1)) addFace(builders, type, FACE_POS_Z, wx, wy, wz, top);
-                    if (showFace(id, x, y, z + 1)) addFace(builders, type, FACE_NEG_Z, wx, wy, wz, top);
-                    if (showFace(id, x - 1, y, z)) addFace(builders, type, FACE_NEG_X, wx, wy, wz, top);
-                    if (showFace(id, x + 1, y, z)) addFace(builders, type, FACE_POS_X, wx, wy, wz, top);
+        int edge = ChunkMesher.PADDED - 1;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int lz = 0; lz < CHUNK_SIZE; lz++) {
+                System.arraycopy(col, Chunk.index(0, y, lz),
+                        cells, ChunkMesher.paddedIndex(1, y, lz + 1), CHUNK_SIZE);
+                cells[ChunkMesher.paddedIndex(0, y, lz + 1)] = (byte) neighbourId(x0 - 1, y, z0 + lz);
+                cells[ChunkMesher.paddedIndex(edge, y, lz + 1)] = (byte) neighbourId(x0 + CHUNK_SIZE, y, z0 + lz);
+                light[ChunkMesher.paddedIndex(0, y, lz + 1)] = (byte) skyLightAt(x0 - 1, y, z0 + lz);
+                light[ChunkMesher.paddedIndex(edge, y, lz + 1)] = (byte) skyLightAt(x0 + CHUNK_SIZE, y, z0 + lz);
+                int row = ChunkMesher.paddedIndex(1, y, lz + 1);
+                for (int lx = 0; lx < CHUNK_SIZE; lx++) {
+                    light[row + lx] = (byte) c.skyLight(lx, y, lz);
                 }
             }
+            for (int lx = 0; lx < CHUNK_SIZE; lx++) {
+                cells[ChunkMesher.paddedIndex(lx + 1, y, 0)] = (byte) neighbourId(x0 + lx, y, z0 - 1);
+                cells[ChunkMesher.paddedIndex(lx + 1, y, edge)] = (byte) neighbourId(x0 + lx, y, z0 + CHUNK_SIZE);
+                light[ChunkMesher.paddedIndex(lx + 1, y, 0)] = (byte) skyLightAt(x0 + lx, y, z0 - 1);
+                light[ChunkMesher.paddedIndex(lx + 1, y, edge)] = (byte) skyLightAt(x0 + lx, y, z0 + CHUNK_SIZE);
+            }
         }
-        Map<String, float[]> result = new HashMap<>();
-        for (Map.Entry<String, FaceList> e : builders.entrySet()) {
-            result.put(e.getKey(), e.getValue().toArray());
+        return new ChunkMesher.Snapshot(c, c.version, greedyMeshing, cells, light, toGlX(x0), toGlZ(z0));
+    }
+
+    /**
+     * Border read for {@link #snapshot}.
+     *
+     * @return the id at the cell, or air when its chunk is not loaded
+     */
+    private int neighbourId(int x, int y, int z) {
+        Chunk c = chunkAt(x, z);
+        return c != null ? c.get(x & 15, y, z & 15) : BLOCK_TYPE_AIR;
+    }
+
+    /**
+     * Stop the mesh workers. Jobs still queued are abandoned; call once the
+     * world is no longer rendered.
+     */
+    public void shutdown() {
+        if (meshPool != null) {
+            meshPool.shutdownNow();
+            meshPool = null;
         }
-        c.batches = result;
     }
 
     /**
-     * Face-culling test: should block {@code id}'s face toward the neighbour
-     * cell be emitted? Opaque neighbours hide the face; two adjacent water
-     * blocks also hide their shared faces so the sea isn't full of internal
-     * quads.
-     * 
-     * @param id the block id of the face's owner
-     * @param nx neighbour X
-     * @param ny neighbour Y
-     * @param nz neighbour Z
-     * @return true if the face should be emitted, false if it is hidden
+     * Free every chunk's vertex buffers. Must run on the GL thread while the
+     * context is still current.
      */
-    private boolean showFace(int id, int nx, int ny, int nz) {
-        if (isOpaque(nx, ny, nz)) return false;
-        if (id == BLOCK_TYPE_WATER && inBounds(nx, ny, nz)
-                && blocks[nx][ny][nz] == BLOCK_TYPE_WATER) {
-            return false;
+    public void releaseBuffers() {
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c != null) deleteBuffers(c);
         }
-        return true;
     }
 
-    /** 
-     * Mark every chunk dirty (used after full-world generation). 
+    /**
+     * Choose between the vertex-buffer render path and the original
+     * immediate-mode path. Both draw the same streams, so the switch takes
+     * effect on the next frame.
+     *
+     * @param enabled true to draw from per-chunk vertex buffers
+     */
+    public void setUseVbo(boolean enabled) {
+        useVbo = enabled;
+    }
+
+    /** @return true if chunks are drawn from vertex buffers. */
+    public boolean isUseVbo() {
+        return useVbo;
+    }
+
+    /**
+     * Enable or disable frustum culling in {@link #render(float, Frustum)}.
+     *
+     * @param enabled true to skip chunks outside the view
+     */
+    public void setFrustumCulling(boolean enabled) {
+        frustumCulling = enabled;
+    }
+
+    /** @return true if chunks outside the view frustum are skipped. */
+    public boolean isFrustumCulling() {
+        return frustumCulling;
+    }
+
+    /**
+     * Enable or disable occlusion culling through section connectivity.
+     *
+     * @param enabled true to skip sections hidden behind opaque terrain
+     */
+    public void setOcclusionCulling(boolean enabled) {
+        occlusionCulling = enabled;
+    }
+
+    /** @return true if sections hidden behind opaque terrain are skipped. */
+    public boolean isOcclusionCulling() {
+        return occlusionCulling;
+    }
+
+    /** @return chunks with at least one section drawn in the last frame. */
+    public int visibleChunks() {
+        return visibleChunks;
+    }
+
+    /** @return heap held by vertex streams, in bytes, as of the last frame. */
+    public long meshMemory() {
+        return meshMemory;
+    }
+
+    /** @return heap held by the blocks and light of unpacked chunks, in bytes, as of the last frame. */
+    public long blockMemory() {
+        return blockMemory;
+    }
+
+    /** @return heap held by packed chunks, in bytes, as of the last frame. */
+    public long packedMemory() {
+        return packedMemory;
+    }
+
+    /** @return loaded chunks whose mesh the memory budget dropped, as of the last frame. */
+    public int meshlessChunks() {
+        return meshlessChunks;
+    }
+
+    /** @return loaded chunks held packed, as of the last frame. */
+    public int packedChunks() {
+        return packedChunks;
+    }
+
+    /** @return chunks unloaded so far to meet the block budget. */
+    public long budgetUnloads() {
+        return budgetUnloads;
+    }
+
+    /** @return number of loaded chunks. */
+    public int totalChunks() {
+        return chunks.size();
+    }
+
+    /** @return sections drawn in the last frame. */
+    public int visibleSections() {
+        return visibleSections;
+    }
+
+    /**
+     * @return sections inside the frustum in the last frame — what would be
+     *         drawn with occlusion culling off
+     */
+    public int frustumSections() {
+        return frustumSections;
+    }
+
+    /** @return number of sections in the loaded chunks. */
+    public int totalSections() {
+        return chunks.size() * Chunk.SECTIONS;
+    }
+
+    /** @return vertex buffers bound by the last {@link #render(float)} call. */
+    public int frameBufferBinds() {
+        return frameBufferBinds;
+    }
+
+    /** @return vertices submitted by the last {@link #render(float)} call. */
+    public long frameVertices() {
+        return frameVertices;
+    }
+
+    /**
+     * Switch between per-face and greedy meshing. Every chunk is re-meshed in
+     * the background, starting on the next frame.
+     *
+     * @param enabled true to merge coplanar faces into larger rectangles
+     */
+    public void setGreedyMeshing(boolean enabled) {
+        if (greedyMeshing != enabled) {
+            greedyMeshing = enabled;
+            markAllDirty();
+        }
+    }
+
+    /** @return true if chunks are meshed with merged rectangles. */
+    public boolean isGreedyMeshing() {
+        return greedyMeshing;
+    }
+
+    /**
+     * Re-mesh every chunk immediately on the calling thread, ignoring version
+     * state. Used by {@link WorldBenchmark}; the game itself meshes in the
+     * background from {@link #render(float)}.
+     *
+     * @return total vertices across all chunks
+     */
+    int meshAllChunks() {
+        int vertices = 0;
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c == null) continue;
+            ChunkMesher.Result r = mesher.mesh(snapshot(c));
+            c.opaqueVerts = r.opaque;
+            c.waterVerts = r.water;
+            c.opaqueRanges = r.opaqueRanges;
+            c.waterRanges = r.waterRanges;
+            c.connectivity = r.connectivity;
+            c.buffersStale = true;
+            c.meshedVersion = r.version;
+            vertices += r.vertexCount();
+        }
+        return vertices;
+    }
+
+    /**
+     * Invalidate every loaded chunk's mesh (used after generating the spawn
+     * area or a load).
      */
     private void markAllDirty() {
-        for (int cx = 0; cx < CHUNKS_X; cx++) {
-            for (int cz = 0; cz < CHUNKS_Z; cz++) {
-                chunks[cx][cz].dirty = true;
-            }
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c != null) c.version++;
         }
     }
 
     /**
-     * Mark the chunk containing world column ({@code x}, {@code z}) dirty, plus
-     * any neighbouring chunk when the column lies on a chunk border (face
+     * Invalidate the chunk containing world column ({@code x}, {@code z}),
+     * plus any neighbouring chunk when the column lies on a chunk border (face
      * culling for the neighbour reads across the boundary).
      *
      * @param x world-array X of the edited cell
      * @param z world-array Z of the edited cell
      */
     private void markDirty(int x, int z) {
-        int cx = x / CHUNK_SIZE;
-        int cz = z / CHUNK_SIZE;
-        chunks[cx][cz].dirty = true;
-        int lx = x % CHUNK_SIZE;
-        int lz = z % CHUNK_SIZE;
-        if (lx == 0 && cx > 0) chunks[cx - 1][cz].dirty = true;
-        if (lx == CHUNK_SIZE - 1 && cx < CHUNKS_X - 1) chunks[cx + 1][cz].dirty = true;
-        if (lz == 0 && cz > 0) chunks[cx][cz - 1].dirty = true;
-        if (lz == CHUNK_SIZE - 1 && cz < CHUNKS_Z - 1) chunks[cx][cz + 1].dirty = true;
-    }
-
-    /**
-     * Emit one face of a block into the texture-grouped builders.
-     *
-     * @param top height of the block's top edge as a fraction of a full block
-     *            (1 for normal blocks, {@link #WATER_SURFACE_HEIGHT} for a
-     *            water surface). Side faces have their texture V range scaled
-     *            to match so the texels aren't stretched.
-     */
-    private static void addFace(Map<String, FaceList> builders, BlockType type, int face,
-                                float wx, float wy, float wz, float top) {
-        String key;
-        switch (face) {
-            case FACE_TOP: key = type.topTexture(); break;
-            case FACE_BOTTOM: key = type.bottomTexture(); break;
-            default: key = type.sideTexture(); break;
-        }
-        if (key == null) return;
-        FaceList list = builders.computeIfAbsent(key, k -> new FaceList());
-        float topY = wy + top;
-        float vTop = 1f - top; // texture V at the (possibly lowered) top edge
-        // Each face is 4 verts × 5 floats. Block occupies wx..wx+1, wy..topY, wz..wz-1.
-        switch (face) {
-            case FACE_TOP:
-                list.quad(
-                        0, 0, wx,     topY, wz,
-                        1, 0, wx + 1, topY, wz,
-                        1, 1, wx + 1, topY, wz - 1,
-                        0, 1, wx,     topY, wz - 1);
-                break;
-            case FACE_BOTTOM:
-                list.quad(
-                        0, 1, wx,     wy, wz,
-                        1, 1, wx + 1, wy, wz,
-                        1, 0, wx + 1, wy, wz - 1,
-                        0, 0, wx,     wy, wz - 1);
-                break;
-            case FACE_POS_Z:
-                list.quad(
-                        0, 1,    wx,     wy,   wz,
-                        1, 1,    wx + 1, wy,   wz,
-                        1, vTop, wx + 1, topY, wz,
-                        0, vTop, wx,     topY, wz);
-                break;
-            case FACE_NEG_Z:
-                list.quad(
-                        1, 1,    wx + 1, wy,   wz - 1,
-                        0, 1,    wx,     wy,   wz - 1,
-                        0, vTop, wx,     topY, wz - 1,
-                        1, vTop, wx + 1, topY, wz - 1);
-                break;
-            case FACE_NEG_X:
-                list.quad(
-                        1, 1,    wx, wy,   wz - 1,
-                        0, 1,    wx, wy,   wz,
-                        0, vTop, wx, topY, wz,
-                        1, vTop, wx, topY, wz - 1);
-                break;
-            case FACE_POS_X:
-                list.quad(
-                        0, 1,    wx + 1, wy,   wz,
-                        1, 1,    wx + 1, wy,   wz - 1,
-                        1, vTop, wx + 1, topY, wz - 1,
-                        0, vTop, wx + 1, topY, wz);
-                break;
-            default:
-                break;
-        }
+        int cx = x >> 4;
+        int cz = z >> 4;
+        bumpVersion(cx, cz);
+        int lx = x & (CHUNK_SIZE - 1);
+        int lz = z & (CHUNK_SIZE - 1);
+        if (lx == 0) bumpVersion(cx - 1, cz);
+        if (lx == CHUNK_SIZE - 1) bumpVersion(cx + 1, cz);
+        if (lz == 0) bumpVersion(cx, cz - 1);
+        if (lz == CHUNK_SIZE - 1) bumpVersion(cx, cz + 1);
+    }
+
+    /** Invalidate the mesh of chunk ({@code cx}, {@code cz}) if it is loaded. */
+    private void bumpVersion(int cx, int cz) {
+        Chunk c = chunks.get(cx, cz);
+        if (c != null) c.version++;
+    }
+
+    /**
+     * @return the skylight level ({@code 0..15}) at a cell; the open sky
+     *         above the world and unloaded chunks are fully lit
+     */
+    public int skyLightAt(int x, int y, int z) {
+        if (y < 0) return 0;
+        if (!inBounds(x, y, z)) return SkyLight.MAX;
+        return skyLight.light(x, y, z);
     }
 
     /**
      * Find the Y of the topmost solid block above ({@code x}, {@code z}) in
-     * world-space coordinates and return the floor height above it.
+     * world-space coordinates and return the floor height above it. One
+     * heightmap read (see {@link #solidHeight}). Never loads a chunk, so
+     * the simulation thread may call it.
      *
      * @param x world-space X
      * @param z world-space Z
-     * @return the Y at which an entity would stand on the ground
+     * @return the Y at which an entity would stand on the ground, 0 for an
+     *         empty column, or {@link Float#NEGATIVE_INFINITY} if the chunk
+     *         is not loaded
      */
     public float groundHeight(float x, float z) {
-        int bx = (int) Math.floor(x + SIZE / 2f);
-        int bz = (int) Math.floor(-z);
-        for (int y = HEIGHT - 1; y >= 0; y--) {
-            if (isSolid(bx, y, bz)) {
-                return y + 1f;
-            }
-        }
-        return 0f;
+        int bx = blockX(x);
+        int bz = blockZ(z);
+        Chunk c = chunkAt(bx, bz);
+        return c != null ? c.solidHeight(bx & 15, bz & 15) : Float.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * {@link #groundHeight} for placing the player at startup: loads the
+     * chunk first if needed. Render thread only, before the simulation
+     * starts.
+     *
+     * @param x world-space X
+     * @param z world-space Z
+     * @return the Y at which an entity would stand on the ground
+     */
+    public float spawnHeight(float x, float z) {
+        int bx = blockX(x);
+        int bz = blockZ(z);
+        return require(bx >> 4, bz >> 4).solidHeight(bx & 15, bz & 15);
+    }
+
+    /**
+     * @param x world-space X
+     * @param z world-space Z
+     * @return true if the chunk holding that column is loaded
+     */
+    public boolean isColumnLoaded(float x, float z) {
+        return chunkAt(blockX(x), blockZ(z)) != null;
     }
 
     /**
@@ -654,25 +1422,60 @@ public class World {
      * @param maxFeetY  player's current feet Y; only blocks with {@code top <= maxFeetY} count
      * @param z         world-space Z
      * @return the standing Y of the next block down, or
-     *         {@link Float#NEGATIVE_INFINITY} if the column is empty / out of
-     *         bounds (used by the caller to detect "falling into the void")
+     *         {@link Float#NEGATIVE_INFINITY} if the column is empty / not
+     *         loaded (used by the caller to detect "falling into the void")
      */
     public float groundHeightBelow(float x, float maxFeetY, float z) {
-        int bx = (int) Math.floor(x + SIZE / 2f);
-        int bz = (int) Math.floor(-z);
-        if (bx < 0 || bx >= SIZE || bz < 0 || bz >= SIZE) {
+        int bx = blockX(x);
+        int bz = blockZ(z);
+        Chunk c = chunkAt(bx, bz);
+        if (c == null) {
             return Float.NEGATIVE_INFINITY;
         }
+        // Usually nothing overhangs the player and the heightmap answers.
+        int top = c.solidHeight(bx & 15, bz & 15);
+        if (top <= maxFeetY) {
+            return top > 0 ? top : Float.NEGATIVE_INFINITY;
+        }
         // The highest by such that (by + 1) <= maxFeetY is floor(maxFeetY - 1).
         int startY = Math.min(HEIGHT - 1, (int) Math.floor(maxFeetY - 1));
         for (int by = startY; by >= 0; by--) {
-            if (isSolid(bx, by, bz)) {
+            if (c.isSolid(bx & 15, by, bz & 15)) {
                 return by + 1f;
             }
         }
         return Float.NEGATIVE_INFINITY;
     }
 
+    /**
+     * Motion-blocking heightmap: what a falling entity lands on, and what
+     * a map view would draw as the ground. Kept per column as blocks change,
+     * so this is a lookup.
+     *
+     * @param x block X
+     * @param z block Z
+     * @return one above the highest solid block in the column, or 0 if it
+     *         has none or its chunk is not loaded
+     */
+    public int solidHeight(int x, int z) {
+        Chunk c = chunkAt(x, z);
+        return c != null ? c.solidHeight(x & 15, z & 15) : 0;
+    }
+
+    /**
+     * Light-blocking heightmap: skylight is full from this Y up. Counts
+     * every block that absorbs any light, water and leaves included.
+     *
+     * @param x block X
+     * @param z block Z
+     * @return one above the highest light-absorbing block in the column, or
+     *         0 if it has none or its chunk is not loaded
+     */
+    public int lightHeight(int x, int z) {
+        Chunk c = chunkAt(x, z);
+        return c != null ? c.lightHeight(x & 15, z & 15) : 0;
+    }
+
     /**
      * Place a block of the given type at the given coordinates if the space is air.
      *
@@ -683,44 +1486,146 @@ public class World {
      */
     public void setBlock(int x, int y, int z, BlockType blockType) {
         if (inBounds(x, y, z)) {
-            int oldId = blocks[x][y][z];
+            int oldId = getId(x, y, z);
             int newId = (blockType != null) ? blockType.id() : BLOCK_TYPE_AIR;
 
             if (oldId == newId) return;
 
             if (oldId == BLOCK_TYPE_BEDROCK) return;
 
-            blocks[x][y][z] = newId;
+            setLogged(x, y, z, oldId, newId);
+            skyLight.blockChanged(x, y, z,
+                    BlockType.lightOpacityId(oldId), BlockType.lightOpacityId(newId));
 
             // If we just placed a block, check if a grass block below it should become dirt.
             if (newId != BLOCK_TYPE_AIR) {
-                if (inBounds(x, y - 1, z) && blocks[x][y - 1][z] == BLOCK_TYPE_GRASS) {
-                    blocks[x][y - 1][z] = BLOCK_TYPE_DIRT;
+                if (inBounds(x, y - 1, z) && getId(x, y - 1, z) == BLOCK_TYPE_GRASS) {
+                    setLogged(x, y - 1, z, BLOCK_TYPE_GRASS, BLOCK_TYPE_DIRT);
                 }
             }
 
             // If we just broke a block, check if dirt below it should become grass.
             if (newId == BLOCK_TYPE_AIR) {
-                if (inBounds(x, y - 1, z) && blocks[x][y - 1][z] == BLOCK_TYPE_DIRT) {
+                if (inBounds(x, y - 1, z) && getId(x, y - 1, z) == BLOCK_TYPE_DIRT) {
                     if (!isOpaque(x, y, z)) { // check if there is now air above
-                        blocks[x][y - 1][z] = BLOCK_TYPE_GRASS;
+                        setLogged(x, y - 1, z, BLOCK_TYPE_DIRT, BLOCK_TYPE_GRASS);
                     }
                 }
             }
 
             markDirty(x, z);
+            chunkAt(x, z).editCount++;
+            skyLight.drainChanged(c -> c.version++);
+        }
+    }
+
+    /** {@link #setId} plus a journal record, for edits made by play. */
+    private void setLogged(int x, int y, int z, int oldId, int newId) {
+        setId(x, y, z, newId);
+        if (journal != null) {
+            journal.append(x, y, z, oldId, newId, tick);
         }
     }
 
+    /**
+     * Send every later {@link #setBlock} change to {@code journal}.
+     *
+     * @param journal the journal, or {@code null} to stop journalling
+     */
+    void setJournal(EditJournal journal) {
+        this.journal = journal;
+    }
+
+    /** @return the journal receiving edits, or {@code null}. */
+    EditJournal journal() {
+        return journal;
+    }
+
+    /** Advance the tick counter stamped on journal records; once per game tick. */
+    void advanceTick() {
+        tick++;
+    }
+
+    /**
+     * Re-apply one journalled edit during {@link EditJournal#replay}: a raw
+     * write with no game rules, lighting or journalling, loading the chunk
+     * first if needed. Call {@link #finishLoad()} after the last one.
+     *
+     * @return false if the record is out of bounds or names no block type
+     */
+    boolean replayEdit(int x, int y, int z, int id) {
+        if (y < 0 || y >= HEIGHT || BlockType.fromId(id).id() != id) return false;
+        Chunk c = require(x >> 4, z >> 4);
+        c.set(x & 15, y, z & 15, id);
+        c.editCount++;
+        return true;
+    }
+
+    /** @return true if the cell is within the world height and its chunk is loaded. */
     private boolean inBounds(int x, int y, int z) {
-        return x >= 0 && x < SIZE && y >= 0 && y < HEIGHT && z >= 0 && z < SIZE;
+        return y >= 0 && y < HEIGHT && chunkAt(x, z) != null;
+    }
+
+    /** @return the loaded chunk holding block column ({@code x}, {@code z}), or {@code null}. */
+    private Chunk chunkAt(int x, int z) {
+        return chunks.get(x >> 4, z >> 4);
+    }
+
+    /**
+     * @param cx chunk X
+     * @param cz chunk Z
+     * @return the loaded chunk column at those coordinates, or {@code null}
+     */
+    Chunk chunk(int cx, int cz) {
+        return chunks.get(cx, cz);
+    }
+
+    /** @return every loaded chunk; do not modify. */
+    ChunkMap<Chunk> loadedChunks() {
+        return chunks;
+    }
+
+    /** @return the chunk at ({@code cx}, {@code cz}), inserting an all-air one if none is loaded. */
+    private Chunk chunkOrEmpty(int cx, int cz) {
+        Chunk c = chunks.get(cx, cz);
+        if (c == null) {
+            c = new Chunk(cx, cz, mode);
+            chunks.put(cx, cz, c);
+        }
+        return c;
+    }
+
+    /** Raw id read; the caller guarantees the cell is in bounds. */
+    private int getId(int x, int y, int z) {
+        return chunkAt(x, z).get(x & 15, y, z & 15);
+    }
+
+    /** Raw id write with no game rules or dirty marking; cell must be in bounds. */
+    private void setId(int x, int y, int z, int id) {
+        chunkAt(x, z).set(x & 15, y, z & 15, id);
+    }
+
+    /**
+     * @return approximate heap used by block storage across every loaded
+     *         chunk, in bytes (the old dense {@code int[][][]} cost
+     *         {@code 4 × SIZE² × HEIGHT} for the spawn area)
+     */
+    public long blockStorageBytes() {
+        long bytes = 0;
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c != null) bytes += c.storageBytes();
+        }
+        return bytes;
     }
 
     /**
      * @return true if the cell holds a non-air block.
      */
     public boolean hasBlock(int x, int y, int z) {
-        return inBounds(x, y, z) && blocks[x][y][z] != BLOCK_TYPE_AIR;
+        if (y < 0 || y >= HEIGHT) return false;
+        Chunk c = chunkAt(x, z);
+        return c != null && c.get(x & 15, y, z & 15) != BLOCK_TYPE_AIR;
     }
 
     /**
@@ -729,75 +1634,340 @@ public class World {
      *         the crosshair raycast ignores it.
      */
     public boolean isSolid(int x, int y, int z) {
-        return inBounds(x, y, z) && BlockType.fromId(blocks[x][y][z]).isSolid();
+        if (y < 0 || y >= HEIGHT) return false;
+        Chunk c = chunkAt(x, z);
+        return c != null && c.isSolid(x & 15, y, z & 15);
+    }
+
+    /**
+     * Test a box of cells against the chunks' solid bitsets, a row of up to
+     * 16 cells along X per mask test. Cells outside the world height or in
+     * chunks that are not loaded are not solid.
+     *
+     * @return true if any cell with {@code x0 <= x <= x1},
+     *         {@code y0 <= y <= y1} and {@code z0 <= z <= z1} is solid
+     */
+    public boolean anySolid(int x0, int y0, int z0, int x1, int y1, int z1) {
+        y0 = Math.max(y0, 0);
+        y1 = Math.min(y1, HEIGHT - 1);
+        if (y0 > y1) return false;
+        for (int cz = z0 >> 4; cz <= z1 >> 4; cz++) {
+            int lz0 = Math.max(z0, cz << 4) & 15;
+            int lz1 = Math.min(z1, (cz << 4) + 15) & 15;
+            for (int cx = x0 >> 4; cx <= x1 >> 4; cx++) {
+                Chunk c = chunks.get(cx, cz);
+                if (c == null) continue;
+                int lx0 = Math.max(x0, cx << 4) & 15;
+                int lx1 = Math.min(x1, (cx << 4) + 15) & 15;
+                for (int y = y0; y <= y1; y++) {
+                    for (int lz = lz0; lz <= lz1; lz++) {
+                        if (c.anySolid(lx0, lx1, y, lz)) return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Clip the motion of an axis-aligned box along one axis against solid
+     * blocks, the way vanilla's {@code calculateXOffset} and friends do:
+     * the box may move up to {@code d}, or until its leading face meets the
+     * nearest block in its path, whichever is shorter. Only cells the box
+     * overlaps by more than {@link #CONTACT_EPSILON} on the other two axes
+     * can block it, and a block it already touches within that epsilon
+     * stops it dead. The path is scanned one slab of cells at a time from
+     * the leading face outwards with {@link #anySolid}, so the cost grows
+     * with the distance moved, not with the swept volume, and nothing is
+     * allocated.
+     *
+     * <p>Everything is in continuous block coordinates: X and Z as
+     * {@link #toBlockX} and {@link #toBlockZ} return them, Y as is.</p>
+     *
+     * @param axis 0 for X, 1 for Y, 2 for Z
+     * @param d    desired displacement along {@code axis}
+     * @return the allowed displacement, between 0 and {@code d}, or a little
+     *         past 0 the other way if the box starts within the epsilon of
+     *         a block
+     */
+    public float sweep(float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                       int axis, float d) {
+        if (d == 0) return 0;
+        float min = axis == 0 ? minX : axis == 1 ? minY : minZ;
+        float max = axis == 0 ? maxX : axis == 1 ? maxY : maxZ;
+        // Cross-section cells: those overlapped on the two other axes.
+        int x0 = (int) Math.floor(minX + CONTACT_EPSILON);
+        int x1 = (int) Math.floor(maxX - CONTACT_EPSILON);
+        int y0 = (int) Math.floor(minY + CONTACT_EPSILON);
+        int y1 = (int) Math.floor(maxY - CONTACT_EPSILON);
+        int z0 = (int) Math.floor(minZ + CONTACT_EPSILON);
+        int z1 = (int) Math.floor(maxZ - CONTACT_EPSILON);
+        if (d > 0) {
+            int end = (int) Math.ceil(max + d) - 1;
+            if (axis == 1) end = Math.min(end, HEIGHT - 1);
+            for (int b = (int) Math.ceil(max - CONTACT_EPSILON); b <= end; b++) {
+                if (slabSolid(axis, b, x0, y0, z0, x1, y1, z1)) return Math.min(d, b - max);
+            }
+        } else {
+            int end = (int) Math.floor(min + d);
+            if (axis == 1) end = Math.max(end, 0);
+            for (int b = (int) Math.floor(min + CONTACT_EPSILON) - 1; b >= end; b--) {
+                if (slabSolid(axis, b, x0, y0, z0, x1, y1, z1)) return Math.max(d, b + 1 - min);
+            }
+        }
+        return d;
+    }
+
+    /** @return true if the one-cell-thick slab at {@code b} along {@code axis} holds a solid cell. */
+    private boolean slabSolid(int axis, int b, int x0, int y0, int z0, int x1, int y1, int z1) {
+        switch (axis) {
+            case 0: return anySolid(b, y0, z0, b, y1, z1);
+            case 1: return anySolid(x0, b, z0, x1, b, z1);
+            default: return anySolid(x0, y0, b, x1, y1, b);
+        }
     }
 
     /**
      * @return the {@link BlockType} stored at the given cell, or
-     *         {@link BlockType#AIR} when out of bounds.
+     *         {@link BlockType#AIR} when out of bounds or not loaded.
      */
     public BlockType blockAt(int x, int y, int z) {
-        if (!inBounds(x, y, z)) return BlockType.AIR;
-        return BlockType.fromId(blocks[x][y][z]);
+        if (y < 0 || y >= HEIGHT) return BlockType.AIR;
+        Chunk c = chunkAt(x, z);
+        return c != null ? BlockType.fromId(c.get(x & 15, y, z & 15)) : BlockType.AIR;
     }
 
     /**
-     * Write the block array as run-length encoded ({@code id}, {@code count})
-     * int pairs in x→y→z scan order. Consumed by {@link WorldSave}.
+     * Write the spawn area's blocks as run-length encoded ({@code id},
+     * {@code count}) int pairs in x→y→z scan order: the block payload of
+     * {@link WorldSave} versions 1 and 2, kept for tools and round-trip
+     * checks.
      *
      * @param out destination stream
      * @throws IOException on write failure
      */
     public void writeBlocks(DataOutputStream out) throws IOException {
-        int runId = blocks[0][0][0];
-        int runLen = 0;
-        for (int x = 0; x < SIZE; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                for (int z = 0; z < SIZE; z++) {
-                    int id = blocks[x][y][z];
-                    if (id == runId) {
-                        runLen++;
-                    } else {
-                        out.writeInt(runId);
-                        out.writeInt(runLen);
-                        runId = id;
-                        runLen = 1;
+        snapshotBlocks().writeBlocks(out);
+    }
+
+    /**
+     * Capture the loaded chunks' blocks without copying them; see
+     * {@link Chunk#share()}. Cheap enough to call mid-tick under the
+     * world's monitor: the cost is one small array per chunk, and later edits pay
+     * for copying only the sections they touch.
+     *
+     * @return a frozen view of the world's blocks, readable from any thread
+     */
+    BlockSnapshot snapshotBlocks() {
+        int n = chunks.size();
+        Chunk[] live = new Chunk[n];
+        Chunk.Frozen[] frozen = new Chunk.Frozen[n];
+        int[] edits = new int[n];
+        boolean[] modified = new boolean[n];
+        int i = 0;
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            Chunk c = chunks.valueAt(slot);
+            if (c == null) continue;
+            live[i] = c;
+            frozen[i] = c.share();
+            edits[i] = c.editCount;
+            modified[i] = c.editCount != c.savedEditCount;
+            i++;
+        }
+        return new BlockSnapshot(live, frozen, edits, modified);
+    }
+
+    /**
+     * The loaded chunks' blocks at one instant, as taken by
+     * {@link #snapshotBlocks()}, addressed by index {@code 0..size()-1}.
+     */
+    static final class BlockSnapshot {
+        private final Chunk[] live;
+        private final Chunk.Frozen[] chunks;
+
+        /** Each chunk's {@link Chunk#editCount} at capture time. */
+        private final int[] edits;
+
+        /** True for chunks edited since they were last saved. */
+        private final boolean[] modified;
+
+        /** Frozen chunks by coordinates, for {@link #get}. */
+        private final ChunkMap<Chunk.Frozen> byKey;
+
+        private BlockSnapshot(Chunk[] live, Chunk.Frozen[] chunks, int[] edits,
+                              boolean[] modified) {
+            this.live = live;
+            this.chunks = chunks;
+            this.edits = edits;
+            this.modified = modified;
+            byKey = new ChunkMap<>(chunks.length);
+            for (int i = 0; i < chunks.length; i++) {
+                byKey.put(live[i].cx, live[i].cz, chunks[i]);
+            }
+        }
+
+        /** @return number of chunks captured. */
+        int size() {
+            return chunks.length;
+        }
+
+        /** @return chunk X of chunk {@code i}. */
+        int cx(int i) {
+            return live[i].cx;
+        }
+
+        /** @return chunk Z of chunk {@code i}. */
+        int cz(int i) {
+            return live[i].cz;
+        }
+
+        /** @return true if chunk {@code i} changed since it was last saved. */
+        boolean isModified(int i) {
+            return modified[i];
+        }
+
+        /**
+         * @return true if chunk {@code i} has since been unloaded, in which
+         *         case the unload wrote a copy at least as new as this one;
+         *         read under the region store's lock
+         */
+        boolean isEvicted(int i) {
+            return live[i].evicted;
+        }
+
+        /**
+         * Record that chunk {@code i}, as captured, is now on disk, so later
+         * snapshots report it unmodified until it is edited again. May be
+         * called from the save thread.
+         */
+        void markSaved(int i) {
+            live[i].savedEditCount = edits[i];
+        }
+
+        /** @return the block id at a cell; cells of chunks not captured read as air. */
+        int get(int x, int y, int z) {
+            Chunk.Frozen c = byKey.get(x >> 4, z >> 4);
+            return c != null ? c.get(x & 15, y, z & 15) : BLOCK_TYPE_AIR;
+        }
+
+        /** @return the frozen blocks of chunk {@code i}. */
+        Chunk.Frozen chunk(int i) {
+            return chunks[i];
+        }
+
+        /**
+         * Encode the blocks in the format of {@link World#writeBlocks}.
+         *
+         * @param out destination stream
+         * @throws IOException on write failure
+         */
+        void writeBlocks(DataOutputStream out) throws IOException {
+            int runId = get(0, 0, 0);
+            int runLen = 0;
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < HEIGHT; y++) {
+                    for (int z = 0; z < SIZE; z++) {
+                        int id = get(x, y, z);
+                        if (id == runId) {
+                            runLen++;
+                        } else {
+                            out.writeInt(runId);
+                            out.writeInt(runLen);
+                            runId = id;
+                            runLen = 1;
+                        }
                     }
                 }
             }
+            out.writeInt(runId);
+            out.writeInt(runLen);
+        }
+    }
+
+    /**
+     * Replace one chunk's blocks with a {@link ChunkCodec} payload, as read
+     * from a region file. Lighting and meshes are not updated; call
+     * {@link #finishLoad()} once every chunk has been read.
+     *
+     * @param data the encoded chunk
+     * @throws IOException if the payload is malformed
+     */
+    void readChunk(int cx, int cz, byte[] data) throws IOException {
+        Chunk c = chunkOrEmpty(cx, cz);
+        ChunkCodec.decode(data, c, columnScratch);
+        c.editCount++;
+        c.savedEditCount = c.editCount;
+    }
+
+    /** Relight and re-mesh everything after {@link #readChunk} calls. */
+    void finishLoad() {
+        skyLight.relightAll();
+        markAllDirty();
+    }
+
+    /**
+     * Replace the spawn area's blocks with run-length encoded data produced
+     * by {@link #writeBlocks(DataOutputStream)} and re-mesh everything.
+     *
+     * @param in source buffer positioned at the payload, typically a mapped
+     *           save file; advanced past the payload
+     * @throws IOException on a truncated or malformed payload
+     */
+    public void readBlocks(ByteBuffer in) throws IOException {
+        decodeBlocks(in);
+        // Nothing read this way is in the region files yet.
+        for (int cx = 0; cx < CHUNKS_X; cx++) {
+            for (int cz = 0; cz < CHUNKS_Z; cz++) {
+                chunks.get(cx, cz).editCount++;
+            }
         }
-        out.writeInt(runId);
-        out.writeInt(runLen);
+        finishLoad();
     }
 
     /**
-     * Replace the world's blocks with run-length encoded data produced by
-     * {@link #writeBlocks(DataOutputStream)} and re-mesh everything.
+     * The decoding half of {@link #readBlocks}: no relighting or re-meshing.
+     * Runs are read through an {@link IntBuffer} view and expanded with
+     * {@link Arrays#fill} into a world-sized buffer in the payload's x→y→z
+     * order, which keeps every run contiguous; each chunk then takes its
+     * column in one {@link Chunk#setAll} call.
      *
-     * @param in source stream
-     * @throws IOException on read failure or malformed payload
+     * @param in source buffer, advanced past the payload
+     * @throws IOException on a truncated or malformed payload
      */
-    public void readBlocks(DataInputStream in) throws IOException {
+    void decodeBlocks(ByteBuffer in) throws IOException {
         int total = SIZE * HEIGHT * SIZE;
+        byte[] cells = new byte[total];
+        IntBuffer runs = in.slice().asIntBuffer();
         int filled = 0;
-        int x = 0;
-        int y = 0;
-        int z = 0;
         while (filled < total) {
-            int id = in.readInt();
-            int len = in.readInt();
-            if (len <= 0 || filled + len > total || BlockType.fromId(id).id() != id) {
-                throw new IOException("Corrupt RLE block payload");
+            if (runs.remaining() < 2) {
+                throw new IOException("Truncated RLE block payload");
             }
-            for (int n = 0; n < len; n++) {
-                blocks[x][y][z] = id;
-                z++;
-                if (z == SIZE) { z = 0; y++; }
-                if (y == HEIGHT) { y = 0; x++; }
+            int id = runs.get();
+            int len = runs.get();
+            if (len <= 0 || len > total - filled || BlockType.fromId(id).id() != id) {
+                throw new IOException("Corrupt RLE block payload");
             }
+            Arrays.fill(cells, filled, filled + len, (byte) id);
             filled += len;
         }
-        markAllDirty();
+        in.position(in.position() + runs.position() * Integer.BYTES);
+
+        byte[] column = columnScratch;
+        for (int cx = 0; cx < CHUNKS_X; cx++) {
+            for (int cz = 0; cz < CHUNKS_Z; cz++) {
+                for (int lx = 0; lx < CHUNK_SIZE; lx++) {
+                    for (int y = 0; y < HEIGHT; y++) {
+                        int src = ((cx * CHUNK_SIZE + lx) * HEIGHT + y) * SIZE + cz * CHUNK_SIZE;
+                        int dst = Chunk.index(lx, y, 0);
+                        for (int lz = 0; lz < CHUNK_SIZE; lz++) {
+                            column[dst + lz * Chunk.DZ] = cells[src + lz];
+                        }
+                    }
+                }
+                chunkOrEmpty(cx, cz).setAll(column);
+            }
+        }
     }
 
     /**
@@ -809,49 +1979,6 @@ public class World {
     public boolean isOpaque(int x, int y, int z) {
         if (y < 0) return true;
         if (!inBounds(x, y, z)) return false;
-        return BlockType.fromId(blocks[x][y][z]).isOpaque();
-    }
-
-    /**
-     * A 16×16 column of the world (full height) holding its own render batches
-     * and dirty flag. Re-meshing is scoped to one chunk at a time.
-     */
-    private static final class Chunk {
-        final int cx;
-        final int cz;
-        Map<String, float[]> batches = new HashMap<>();
-        boolean dirty = true;
-
-        Chunk(int cx, int cz) {
-            this.cx = cx;
-            this.cz = cz;
-        }
-    }
-
-    /**
-     * A simple float[] wrapper that grows as needed.
-     */
-    private static class FaceList {
-        float[] data = new float[128];
-        int size = 0;
-
-        void quad(float u1, float v1, float x1, float y1, float z1,
-                  float u2, float v2, float x2, float y2, float z2,
-                  float u3, float v3, float x3, float y3, float z3,
-                  float u4, float v4, float x4, float y4, float z4) {
-            if (size + 20 > data.length) {
-                data = Arrays.copyOf(data, data.length * 2);
-            }
-            int i = size;
-            data[i++] = u1; data[i++] = v1; data[i++] = x1; data[i++] = y1; data[i++] = z1;
-            data[i++] = u2; data[i++] = v2; data[i++] = x2; data[i++] = y2; data[i++] = z2;
-            data[i++] = u3; data[i++] = v3; data[i++] = x3; data[i++] = y3; data[i++] = z3;
-            data[i++] = u4; data[i++] = v4; data[i++] = x4; data[i++] = y4; data[i++] = z4;
-            size = i;
-        }
-
-        float[] toArray() {
-            return Arrays.copyOf(data, size);
-        }
+        return BlockType.isOpaqueId(getId(x, y, z));
     }
 }
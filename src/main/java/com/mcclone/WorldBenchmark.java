@@ -0,0 +1,821 @@
+/**
+ * Standalone micro-benchmarks for world storage and meshing.
+ */
+
+package com.mcclone;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Headless timing harness for the CPU-side world code. Nothing here touches
+ * OpenGL, so it runs without a window:
+ *
+ * <pre>
+ *   java -cp target/classes:... com.mcclone.WorldBenchmark [scenario]
+ * </pre>
+ *
+ * <p>Each scenario warms up before measuring and reports the best of a few
+ * rounds, which is plenty to compare layouts against each other on one
+ * machine. With no argument every scenario runs.</p>
+ */
+public final class WorldBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorldBenchmark.class);
+
+    /** Rounds measured per case; the fastest is reported. */
+    private static final int ROUNDS = 5;
+
+    /** Minimum warm-up time per case so the JIT has compiled the loop. */
+    private static final long WARMUP_NANOS = 500_000_000L;
+
+    /** Frame length the streaming scenario paces itself to. */
+    private static final long FRAME_NANOS = 16_666_667L;
+
+    /** Cosine of the half-angle counted as in view: 55°, a wide-screen field of view. */
+    private static final float VIEW_COS = 0.574f;
+
+    /** Frames the memory scenario runs per budget. */
+    private static final int MEMORY_FRAMES = 1200;
+
+    /** Entity-sized box sweeps per simulated tick in the collision scenario. */
+    private static final int SWEEPS_PER_TICK = 4096;
+
+    /** Rays per batch in the raycast scenario. */
+    private static final int RAYS = 16384;
+
+    /** Blackhole so the JIT can't discard benchmark loops. */
+    private static long sink;
+
+    private WorldBenchmark() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Compare the old nested {@code int[x][y][z]} store against palette and
+     * flat chunk storage: random {@code isSolid} lookups, a six-neighbour
+     * exposure scan (the mesher's access pattern), and full re-meshing.
+     */
+    static void storage() {
+        World palette = new World(World.DEFAULT_SEED, World.StorageMode.PALETTE);
+        World flat = new World(World.DEFAULT_SEED, World.StorageMode.FLAT);
+        int[][][] nested = new int[World.SIZE][World.HEIGHT][World.SIZE];
+        for (int x = 0; x < World.SIZE; x++) {
+            for (int y = 0; y < World.HEIGHT; y++) {
+                for (int z = 0; z < World.SIZE; z++) {
+                    nested[x][y][z] = flat.blockAt(x, y, z).id();
+                }
+            }
+        }
+        logger.info("storage: palette {} KB, flat {} KB, nested int[][][] {} KB",
+                palette.blockStorageBytes() / 1024, flat.blockStorageBytes() / 1024,
+                4L * World.SIZE * World.HEIGHT * World.SIZE / 1024);
+
+        int lookups = 4_000_000;
+        int[] coords = randomCells(lookups);
+        report("isSolid nested", lookups, () -> {
+            long n = 0;
+            for (int i = 0; i < coords.length; i += 3) {
+                int x = coords[i];
+                int y = coords[i + 1];
+                int z = coords[i + 2];
+                if (x >= 0 && x < World.SIZE && y >= 0 && y < World.HEIGHT && z >= 0 && z < World.SIZE
+                        && BlockType.fromId(nested[x][y][z]).isSolid()) {
+                    n++;
+                }
+            }
+            sink += n;
+        });
+        report("isSolid palette", lookups, () -> sink += countSolid(palette, coords));
+        report("isSolid flat", lookups, () -> sink += countSolid(flat, coords));
+
+        int cells = World.SIZE * World.HEIGHT * World.SIZE;
+        report("exposure scan nested", cells, () -> sink += exposedNested(nested));
+        report("exposure scan flat column", cells, () -> sink += exposedFlat(flat));
+
+        report("meshAllChunks palette", cells, () -> sink += palette.meshAllChunks());
+        report("meshAllChunks flat", cells, () -> sink += flat.meshAllChunks());
+    }
+
+    /**
+     * Per-face versus greedy meshing on the default seed: vertex counts and
+     * full-world mesh time.
+     */
+    static void meshing() {
+        World world = new World(World.DEFAULT_SEED, World.StorageMode.FLAT);
+        int cells = World.SIZE * World.HEIGHT * World.SIZE;
+        world.setGreedyMeshing(false);
+        logger.info("per-face mesh: {} vertices", world.meshAllChunks());
+        report("meshAllChunks per-face", cells, () -> sink += world.meshAllChunks());
+        world.setGreedyMeshing(true);
+        logger.info("greedy mesh:   {} vertices", world.meshAllChunks());
+        report("meshAllChunks greedy", cells, () -> sink += world.meshAllChunks());
+    }
+
+    /**
+     * Chunk payload encodings on the default seed: total size across every
+     * chunk plus encode and decode time per cell, for the legacy int RLE,
+     * plain varint RLE and varint RLE at a few Deflate levels.
+     */
+    static void save() {
+        World world = new World(World.DEFAULT_SEED, World.StorageMode.PALETTE);
+        World.BlockSnapshot snap = world.snapshotBlocks();
+        Chunk target = new Chunk(0, 0, World.StorageMode.PALETTE);
+        int chunks = snap.size();
+        long cells = (long) chunks * Chunk.VOLUME;
+        ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+        try {
+            world.writeBlocks(new DataOutputStream(legacy));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        logger.info("save: v2 whole-world int RLE {} bytes", legacy.size());
+        String[] names = {"int RLE", "varint RLE", "varint+deflate 1", "varint+deflate 6", "varint+deflate 9"};
+        int[] levels = {-1, 0, 1, 6, 9};
+        for (int m = 0; m < names.length; m++) {
+            int level = levels[m];
+            byte[][] payloads = new byte[chunks][];
+            for (int i = 0; i < chunks; i++) {
+                payloads[i] = encodePayload(snap, i, level);
+            }
+            long bytes = 0;
+            for (byte[] p : payloads) {
+                bytes += p.length;
+            }
+            logger.info("save: {} {} bytes", String.format("%-16s", names[m]), bytes);
+            report("encode " + names[m], cells, () -> {
+                for (int i = 0; i < chunks; i++) {
+                    sink += encodePayload(snap, i, level).length;
+                }
+            });
+            report("decode " + names[m], cells, () -> {
+                try {
+                    for (byte[] p : payloads) {
+                        ChunkCodec.decode(p, target);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                sink += target.get(0, 0, 0);
+            });
+        }
+    }
+
+    /**
+     * Load-side decode throughput, without relighting: the v1–v2 whole-world
+     * payload and per-chunk region payloads, in both storage modes. Reports
+     * time per cell and megabytes of payload per second.
+     */
+    static void load() {
+        for (World.StorageMode mode : World.StorageMode.values()) {
+            World world = new World(World.DEFAULT_SEED, mode);
+            long cells = (long) World.SIZE * World.HEIGHT * World.SIZE;
+            ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+            try {
+                world.writeBlocks(new DataOutputStream(legacy));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            ByteBuffer v2 = ByteBuffer.wrap(legacy.toByteArray());
+            long nanos = report("load v2 payload " + mode, cells, () -> {
+                try {
+                    world.decodeBlocks(v2.duplicate());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            logThroughput(v2.capacity(), nanos);
+
+            World.BlockSnapshot snap = world.snapshotBlocks();
+            int chunks = snap.size();
+            for (int level : new int[]{-1, 0, 1}) {
+                byte[][] payloads = new byte[chunks][];
+                long bytes = 0;
+                for (int i = 0; i < chunks; i++) {
+                    payloads[i] = encodePayload(snap, i, level);
+                    bytes += payloads[i].length;
+                }
+                String name = level < 0 ? "int RLE" : level == 0 ? "varint" : "deflate " + level;
+                nanos = report("load chunks " + name + " " + mode, cells, () -> {
+                    try {
+                        for (int i = 0; i < chunks; i++) {
+                            world.readChunk(snap.cx(i), snap.cz(i), payloads[i]);
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                logThroughput(bytes, nanos);
+            }
+        }
+    }
+
+    /**
+     * Terrain generation time for the whole world at increasing thread
+     * counts, checking that every count produces the same blocks.
+     */
+    static void generation() {
+        // At least four threads, so determinism is checked even on small machines.
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        TerrainGenerator generator = new TerrainGenerator(World.DEFAULT_SEED);
+        long cells = (long) World.SIZE * World.HEIGHT * World.SIZE;
+        byte[][] reference = null;
+        for (int threads = 1; ; threads = Math.min(maxThreads, threads * 2)) {
+            ForkJoinPool pool = TerrainGenerator.newPool(threads);
+            try {
+                List<Chunk> out = new ArrayList<>();
+                report("generate " + threads + " thread(s)", cells, () -> {
+                    out.clear();
+                    out.addAll(emptyChunks());
+                    generator.generate(out, pool);
+                });
+                byte[][] blocks = flatten(out);
+                if (reference == null) {
+                    reference = blocks;
+                } else {
+                    logger.info("generate {} thread(s): identical to 1 thread: {}",
+                            threads, Arrays.deepEquals(reference, blocks));
+                }
+            } finally {
+                pool.shutdown();
+            }
+            if (threads == maxThreads) break;
+        }
+    }
+
+    /**
+     * Simplex noise throughput: single samples against whole-chunk grids,
+     * 2D columns and 3D blocks, on one thread and on a pool. Octave count
+     * matches the terrain heightmap.
+     */
+    static void noise() {
+        SimplexNoise noise = new SimplexNoise(World.DEFAULT_SEED, 4, 1.0 / 64, 0.5);
+        int chunks = 64;
+        int columns = chunks * Chunk.SIZE * Chunk.SIZE;
+        double[] grid2 = new double[Chunk.SIZE * Chunk.SIZE];
+        long nanos = report("noise 2D single samples", columns, () -> {
+            double sum = 0;
+            for (int c = 0; c < chunks; c++) {
+                for (int x = 0; x < Chunk.SIZE; x++) {
+                    for (int z = 0; z < Chunk.SIZE; z++) {
+                        sum += noise.sample(c * Chunk.SIZE + x, z);
+                    }
+                }
+            }
+            sink += (long) sum;
+        });
+        logSamplesPerSecond(columns, nanos);
+        nanos = report("noise 2D chunk grids", columns, () -> {
+            for (int c = 0; c < chunks; c++) {
+                noise.sampleGrid(grid2, c * Chunk.SIZE, 0, Chunk.SIZE, Chunk.SIZE);
+                sink += (long) grid2[0];
+            }
+        });
+        logSamplesPerSecond(columns, nanos);
+
+        int cubes = 8;
+        int cells = cubes * ChunkSection.VOLUME;
+        int edge = ChunkSection.SIZE;
+        double[] grid3 = new double[ChunkSection.VOLUME];
+        nanos = report("noise 3D single samples", cells, () -> {
+            double sum = 0;
+            for (int c = 0; c < cubes; c++) {
+                for (int x = 0; x < edge; x++) {
+                    for (int y = 0; y < edge; y++) {
+                        for (int z = 0; z < edge; z++) {
+                            sum += noise.sample(c * edge + x, y, z);
+                        }
+                    }
+                }
+            }
+            sink += (long) sum;
+        });
+        logSamplesPerSecond(cells, nanos);
+        nanos = report("noise 3D section grids", cells, () -> {
+            for (int c = 0; c < cubes; c++) {
+                noise.sampleGrid(grid3, c * edge, 0, 0, edge, edge, edge);
+                sink += (long) grid3[0];
+            }
+        });
+        logSamplesPerSecond(cells, nanos);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = TerrainGenerator.newPool(threads);
+        try {
+            List<Callable<Double>> tasks = new ArrayList<>();
+            for (int c = 0; c < cubes; c++) {
+                int x0 = c * edge;
+                tasks.add(() -> {
+                    double[] out = new double[ChunkSection.VOLUME];
+                    noise.sampleGrid(out, x0, 0, 0, edge, edge, edge);
+                    return out[0];
+                });
+            }
+            nanos = report("noise 3D grids, " + threads + " thread(s)", cells, () -> {
+                try {
+                    for (Future<Double> f : pool.invokeAll(tasks)) {
+                        sink += (long) (double) f.get();
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            logSamplesPerSecond(cells, nanos);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Time to full view while streaming, paced like a 60 Hz game loop: after
+     * teleporting 2000 blocks, and after then turning round once the view
+     * ahead has filled. "Full" means every chunk within the render distance
+     * and {@link #VIEW_COS} of the view direction, plus the player's
+     * neighbours, is loaded and meshed. Run with view-directed and with
+     * distance-only ordering; each round teleports somewhere new.
+     */
+    static void streaming() {
+        for (boolean directional : new boolean[]{true, false}) {
+            String order = directional ? "view+distance" : "distance only";
+            World world = new World(World.DEFAULT_SEED, World.StorageMode.PALETTE);
+            try {
+                world.setViewPriority(directional);
+                long[] teleport = new long[2];
+                long[] turn = new long[2];
+                for (int round = -1; round < ROUNDS; round++) {
+                    float x = 2000f * (round + 2);
+                    float z = -1000f * (round + 2);
+                    long[] t = timeToFullView(world, x, z, 0f, -1f);
+                    long[] u = timeToFullView(world, x, z, 0f, 1f);
+                    if (round < 0) continue; // warm-up
+                    teleport[0] += t[0];
+                    teleport[1] += t[1];
+                    turn[0] += u[0];
+                    turn[1] += u[1];
+                }
+                logger.info(String.format("%-32s %6.1f frames %9.1f ms", "teleport, " + order,
+                        teleport[0] / (double) ROUNDS, teleport[1] / 1e6 / ROUNDS));
+                logger.info(String.format("%-32s %6.1f frames %9.1f ms", "turn 180, " + order,
+                        turn[0] / (double) ROUNDS, turn[1] / 1e6 / ROUNDS));
+            } finally {
+                world.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Walk {@link #MEMORY_FRAMES} frames in a straight line while slowly
+     * turning, once with budgets nothing reaches and once with budgets well
+     * under what the render distance needs, and report each tier's usage at
+     * the end, the peaks, and the frame time spent enforcing the budget.
+     * Then time packing and unpacking one chunk.
+     */
+    static void memory() {
+        float[] projection = Frustum.perspective(70f, 16f / 9f, 0.05f, (World.renderDistance() + 1) * Chunk.SIZE);
+        long[][] budgets = {{Long.MAX_VALUE, Long.MAX_VALUE}, {8L << 20, 2L << 20}};
+        for (long[] budget : budgets) {
+            World world = new World(World.DEFAULT_SEED, World.StorageMode.PALETTE);
+            try {
+                world.setMemoryBudget(budget[0], budget[1]);
+                Player player = new Player(0f, 40f, 0f);
+                Frustum frustum = new Frustum();
+                long peakMesh = 0;
+                long peakBlocks = 0;
+                long enforceNanos = 0;
+                for (int frame = 0; frame < MEMORY_FRAMES; frame++) {
+                    player.setPose(frame * 0.25f, 40f, 0f, 20f, frame * 1.5f);
+                    float[] view = player.getViewVector();
+                    world.updateStreaming(player.getX(), player.getZ(), view[0], view[2]);
+                    world.rebuildDirtyChunks();
+                    frustum.update(projection, player.viewMatrix());
+                    world.cullSections(frustum);
+                    long t0 = System.nanoTime();
+                    world.enforceMemoryBudget(frustum);
+                    if (frame >= MEMORY_FRAMES / 2) enforceNanos += System.nanoTime() - t0;
+                    peakMesh = Math.max(peakMesh, world.meshMemory());
+                    peakBlocks = Math.max(peakBlocks, world.blockMemory() + world.packedMemory());
+                }
+                String name = budget[0] == Long.MAX_VALUE ? "unbudgeted"
+                        : String.format("budget %d/%d MB", budget[0] >> 20, budget[1] >> 20);
+                logger.info(String.format("%-18s meshes %6d KB (peak %6d), blocks %5d KB + packed %5d KB (peak %5d)",
+                        name, world.meshMemory() >> 10, peakMesh >> 10, world.blockMemory() >> 10,
+                        world.packedMemory() >> 10, peakBlocks >> 10));
+                logger.info(String.format("%-18s %d chunks: %d meshless, %d packed; %d unloaded; %.1f us/frame enforcing",
+                        name, world.totalChunks(), world.meshlessChunks(), world.packedChunks(),
+                        world.budgetUnloads(), enforceNanos / 1e3 / MEMORY_FRAMES));
+            } finally {
+                world.shutdown();
+            }
+        }
+
+        World world = new World(World.DEFAULT_SEED, World.StorageMode.PALETTE);
+        ChunkMap<Chunk> loaded = world.loadedChunks();
+        List<Chunk> chunks = new ArrayList<>();
+        for (int slot = 0; slot < loaded.capacity(); slot++) {
+            if (loaded.valueAt(slot) != null) chunks.add(loaded.valueAt(slot));
+        }
+        report("pack + unpack, per chunk", chunks.size(), () -> {
+            for (Chunk c : chunks) {
+                c.pack(WorldSave.DEFLATE_LEVEL);
+                sink += c.storageBytes() + c.get(0, 0, 0);
+            }
+        });
+    }
+
+    /**
+     * {@link #SWEEPS_PER_TICK} player-sized boxes at random spots on and
+     * above the spawn terrain, each swept along every axis by up to a
+     * sprinting tick's worth of motion (or a terminal-velocity fall on Y):
+     * the per-cell {@code isSolid} loop the player used to run against
+     * {@link World#sweep} on the solid bitsets. Reports the share of a
+     * 60 Hz tick the batch takes.
+     */
+    static void collision() {
+        World world = new World(World.DEFAULT_SEED, World.StorageMode.PALETTE);
+        Random rng = new Random(42);
+        float[] boxes = new float[SWEEPS_PER_TICK * 4];
+        for (int i = 0; i < boxes.length; i += 4) {
+            boxes[i] = 1 + rng.nextFloat() * (World.SIZE - 2);
+            boxes[i + 1] = World.SEA_LEVEL + rng.nextFloat() * 24;
+            boxes[i + 2] = 1 + rng.nextFloat() * (World.SIZE - 2);
+            boxes[i + 3] = (rng.nextFloat() - 0.5f) * 0.25f;
+        }
+        long sweeps = 3L * SWEEPS_PER_TICK;
+        long perCell = report("sweep per-cell isSolid", sweeps, () -> {
+            float sum = 0;
+            for (int i = 0; i < boxes.length; i += 4) {
+                for (int axis = 0; axis < 3; axis++) {
+                    sum += sweepPerCell(world, boxes, i, axis, boxes[i + 3] * (axis == 1 ? 10 : 1));
+                }
+            }
+            sink += (long) sum;
+        });
+        long bitset = report("sweep solid bitset", sweeps, () -> {
+            float sum = 0;
+            for (int i = 0; i < boxes.length; i += 4) {
+                float x = boxes[i];
+                float y = boxes[i + 1];
+                float z = boxes[i + 2];
+                for (int axis = 0; axis < 3; axis++) {
+                    sum += world.sweep(x - 0.3f, y, z - 0.3f, x + 0.3f, y + 1.8f, z + 0.3f,
+                            axis, boxes[i + 3] * (axis == 1 ? 10 : 1));
+                }
+            }
+            sink += (long) sum;
+        });
+        logger.info(String.format("%d sweeps/tick: per-cell %.1f%%, bitset %.1f%% of a 60 Hz tick",
+                sweeps, perCell * 6e-6, bitset * 6e-6));
+    }
+
+    /**
+     * {@link #RAYS} rays from random eye positions over the spawn terrain in
+     * random directions, at crosshair reach (5 blocks) and at line-of-sight
+     * reach (64 blocks): the old per-cell DDA, which read {@code isSolid}
+     * at every cell and allocated its result, against {@link Raycaster} on
+     * one thread and fanned out over the generation pool.
+     */
+    static void raycast() {
+        World world = new World(World.DEFAULT_SEED, World.StorageMode.PALETTE);
+        Raycaster raycaster = new Raycaster(world);
+        Random rng = new Random(42);
+        float[] rays = new float[RAYS * Raycaster.RAY_STRIDE];
+        for (int i = 0; i < rays.length; i += Raycaster.RAY_STRIDE) {
+            rays[i] = rng.nextFloat() * World.SIZE;
+            rays[i + 1] = World.SEA_LEVEL + 2 + rng.nextFloat() * 30;
+            rays[i + 2] = rng.nextFloat() * World.SIZE;
+            float dx = (float) rng.nextGaussian();
+            float dy = (float) rng.nextGaussian();
+            float dz = (float) rng.nextGaussian();
+            float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            rays[i + 3] = dx / length;
+            rays[i + 4] = dy / length;
+            rays[i + 5] = dz / length;
+        }
+        int[] hits = new int[RAYS * Raycaster.HIT_STRIDE];
+        ForkJoinPool pool = TerrainGenerator.sharedPool();
+        for (float reach : new float[]{5f, 64f}) {
+            String suffix = String.format(" %.0f blocks", reach);
+            long perCell = report("raycast per-cell" + suffix, RAYS, () -> {
+                long n = 0;
+                for (int i = 0; i < rays.length; i += Raycaster.RAY_STRIDE) {
+                    if (raycastPerCell(world, rays, i, reach) != null) n++;
+                }
+                sink += n;
+            });
+            long single = report("raycast batch" + suffix, RAYS,
+                    () -> sink += raycaster.castAll(rays, RAYS, reach, hits));
+            long pooled = report("raycast batch pool" + suffix, RAYS,
+                    () -> sink += raycaster.castAll(rays, RAYS, reach, hits, pool));
+            logger.info(String.format("%32s %6.2f / %6.2f / %6.2f M rays/s (%d of %d hit)", "",
+                    RAYS * 1e3 / perCell, RAYS * 1e3 / single, RAYS * 1e3 / pooled,
+                    raycaster.castAll(rays, RAYS, reach, hits), RAYS));
+        }
+    }
+
+    /** The crosshair's former DDA in block coordinates: {@code isSolid} at every cell. */
+    private static int[] raycastPerCell(World world, float[] rays, int i, float maxDistance) {
+        float ox = rays[i];
+        float oy = rays[i + 1];
+        float oz = rays[i + 2];
+        float dx = rays[i + 3];
+        float dy = rays[i + 4];
+        float dz = rays[i + 5];
+        int bx = (int) Math.floor(ox);
+        int by = (int) Math.floor(oy);
+        int bz = (int) Math.floor(oz);
+        int stepX = Float.compare(dx, 0);
+        int stepY = Float.compare(dy, 0);
+        int stepZ = Float.compare(dz, 0);
+        float tDeltaX = (dx != 0f) ? Math.abs(1f / dx) : Float.POSITIVE_INFINITY;
+        float tDeltaY = (dy != 0f) ? Math.abs(1f / dy) : Float.POSITIVE_INFINITY;
+        float tDeltaZ = (dz != 0f) ? Math.abs(1f / dz) : Float.POSITIVE_INFINITY;
+        float tMaxX = (dx != 0f) ? (((stepX > 0 ? bx + 1 : bx) - ox) / dx) : Float.POSITIVE_INFINITY;
+        float tMaxY = (dy != 0f) ? (((stepY > 0 ? by + 1 : by) - oy) / dy) : Float.POSITIVE_INFINITY;
+        float tMaxZ = (dz != 0f) ? (((stepZ > 0 ? bz + 1 : bz) - oz) / dz) : Float.POSITIVE_INFINITY;
+        int face = -1;
+        float t = 0f;
+        int maxIterations = (int) Math.ceil(maxDistance * 3) + 8;
+        int iterations = 0;
+        while (t <= maxDistance && iterations++ < maxIterations) {
+            if (world.isSolid(bx, by, bz)) {
+                return new int[]{bx, by, bz, face};
+            }
+            if (tMaxX < tMaxY && tMaxX < tMaxZ) {
+                t = tMaxX;
+                tMaxX += tDeltaX;
+                bx += stepX;
+                face = (stepX > 0) ? 5 : 4;
+            } else if (tMaxY < tMaxZ) {
+                t = tMaxY;
+                tMaxY += tDeltaY;
+                by += stepY;
+                face = (stepY > 0) ? 3 : 2;
+            } else {
+                t = tMaxZ;
+                tMaxZ += tDeltaZ;
+                bz += stepZ;
+                face = (stepZ > 0) ? 1 : 0;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The player's former sweep: test every cell of the swept box with
+     * {@code isSolid} and clip against each solid one.
+     */
+    private static float sweepPerCell(World world, float[] boxes, int i, int axis, float d) {
+        float[] min = {boxes[i] - 0.3f, boxes[i + 1], boxes[i + 2] - 0.3f};
+        float[] max = {boxes[i] + 0.3f, boxes[i + 1] + 1.8f, boxes[i + 2] + 0.3f};
+        int[] lo = new int[3];
+        int[] hi = new int[3];
+        for (int a = 0; a < 3; a++) {
+            lo[a] = (int) Math.floor(Math.min(min[a], min[a] + (a == axis ? d : 0)));
+            hi[a] = (int) Math.floor(Math.max(max[a], max[a] + (a == axis ? d : 0)));
+        }
+        float allowed = d;
+        float e = World.CONTACT_EPSILON;
+        for (int x = lo[0]; x <= hi[0]; x++) {
+            for (int y = lo[1]; y <= hi[1]; y++) {
+                for (int z = lo[2]; z <= hi[2]; z++) {
+                    if (!world.isSolid(x, y, z)) continue;
+                    int[] cell = {x, y, z};
+                    boolean overlaps = true;
+                    for (int a = 0; a < 3; a++) {
+                        if (a != axis && (max[a] <= cell[a] + e || min[a] >= cell[a] + 1 - e)) overlaps = false;
+                    }
+                    if (!overlaps) continue;
+                    int b = cell[axis];
+                    if (allowed > 0 && max[axis] <= b + e) {
+                        allowed = Math.min(allowed, b - max[axis]);
+                    } else if (allowed < 0 && min[axis] >= b + 1 - e) {
+                        allowed = Math.max(allowed, b + 1 - min[axis]);
+                    }
+                }
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Run frames at the given pose until the view is full.
+     *
+     * @return {frames, nanoseconds}
+     */
+    private static long[] timeToFullView(World world, float glX, float glZ, float viewX, float viewZ) {
+        long start = System.nanoTime();
+        for (int frame = 1; ; frame++) {
+            long frameStart = System.nanoTime();
+            world.updateStreaming(glX, glZ, viewX, viewZ);
+            world.rebuildDirtyChunks();
+            if (isViewFull(world, glX, glZ, viewX, viewZ)) {
+                return new long[]{frame, System.nanoTime() - start};
+            }
+            LockSupport.parkNanos(frameStart + FRAME_NANOS - System.nanoTime());
+        }
+    }
+
+    private static boolean isViewFull(World world, float glX, float glZ, float viewX, float viewZ) {
+        float bx = World.toBlockX(glX);
+        float bz = World.toBlockZ(glZ);
+        float dirZ = -viewZ;
+        float length = (float) Math.sqrt(viewX * viewX + dirZ * dirZ);
+        int ccx = World.blockX(glX) >> 4;
+        int ccz = World.blockZ(glZ) >> 4;
+        int r = World.renderDistance();
+        for (int cx = ccx - r; cx <= ccx + r; cx++) {
+            for (int cz = ccz - r; cz <= ccz + r; cz++) {
+                float tx = cx * Chunk.SIZE + Chunk.SIZE / 2f - bx;
+                float tz = cz * Chunk.SIZE + Chunk.SIZE / 2f - bz;
+                boolean near = Math.abs(cx - ccx) <= 1 && Math.abs(cz - ccz) <= 1;
+                if (!near && tx * viewX + tz * dirZ < VIEW_COS * length * (float) Math.sqrt(tx * tx + tz * tz)) {
+                    continue;
+                }
+                Chunk c = world.chunk(cx, cz);
+                if (c == null || c.meshedVersion != c.version) return false;
+            }
+        }
+        return true;
+    }
+
+    private static void logSamplesPerSecond(long samples, long nanos) {
+        logger.info(String.format("%32s %9.1f M samples/s", "", samples * 1e3 / nanos));
+    }
+
+    /** @return empty chunks covering the spawn area, in X-major order. */
+    private static List<Chunk> emptyChunks() {
+        List<Chunk> chunks = new ArrayList<>();
+        for (int cx = 0; cx < World.CHUNKS_X; cx++) {
+            for (int cz = 0; cz < World.CHUNKS_Z; cz++) {
+                chunks.add(new Chunk(cx, cz, World.StorageMode.PALETTE));
+            }
+        }
+        return chunks;
+    }
+
+    private static byte[][] flatten(List<Chunk> chunks) {
+        byte[][] blocks = new byte[chunks.size()][];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = chunks.get(i).flatView(new byte[Chunk.VOLUME]).clone();
+        }
+        return blocks;
+    }
+
+    private static void logThroughput(long bytes, long nanos) {
+        logger.info(String.format("%32s %9.1f MB/s of payload", "", bytes * 1e3 / nanos));
+    }
+
+    private static byte[] encodePayload(World.BlockSnapshot snap, int chunk, int level) {
+        Chunk.Frozen c = snap.chunk(chunk);
+        return level < 0 ? ChunkCodec.encodeIntRle(c) : ChunkCodec.encode(c, level);
+    }
+
+    private static int[] randomCells(int count) {
+        Random rng = new Random(42);
+        int[] coords = new int[count * 3];
+        for (int i = 0; i < coords.length; i += 3) {
+            coords[i] = rng.nextInt(World.SIZE);
+            coords[i + 1] = rng.nextInt(World.HEIGHT);
+            coords[i + 2] = rng.nextInt(World.SIZE);
+        }
+        return coords;
+    }
+
+    private static long countSolid(World world, int[] coords) {
+        long n = 0;
+        for (int i = 0; i < coords.length; i += 3) {
+            if (world.isSolid(coords[i], coords[i + 1], coords[i + 2])) n++;
+        }
+        return n;
+    }
+
+    /** Count opaque-neighbour faces the way the old mesher read the nested array. */
+    private static long exposedNested(int[][][] b) {
+        long n = 0;
+        for (int x = 0; x < World.SIZE; x++) {
+            for (int y = 0; y < World.HEIGHT; y++) {
+                for (int z = 0; z < World.SIZE; z++) {
+                    if (b[x][y][z] == 0) continue;
+                    if (!opaqueNested(b, x, y + 1, z)) n++;
+                    if (!opaqueNested(b, x, y - 1, z)) n++;
+                    if (!opaqueNested(b, x, y, z - 1)) n++;
+                    if (!opaqueNested(b, x, y, z + 1)) n++;
+                    if (!opaqueNested(b, x - 1, y, z)) n++;
+                    if (!opaqueNested(b, x + 1, y, z)) n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    private static boolean opaqueNested(int[][][] b, int x, int y, int z) {
+        if (y < 0) return true;
+        if (x < 0 || x >= World.SIZE || y >= World.HEIGHT || z < 0 || z >= World.SIZE) return false;
+        return BlockType.fromId(b[x][y][z]).isOpaque();
+    }
+
+    /** The same count over flat columns using constant index deltas. */
+    private static long exposedFlat(World world) {
+        long n = 0;
+        byte[] scratch = new byte[Chunk.VOLUME];
+        for (int cx = 0; cx < World.SIZE / Chunk.SIZE; cx++) {
+            for (int cz = 0; cz < World.SIZE / Chunk.SIZE; cz++) {
+                byte[] col = world.chunk(cx, cz).flatView(scratch);
+                int x0 = cx * Chunk.SIZE;
+                int z0 = cz * Chunk.SIZE;
+                for (int y = 0; y < World.HEIGHT; y++) {
+                    for (int lz = 0; lz < Chunk.SIZE; lz++) {
+                        int idx = Chunk.index(0, y, lz);
+                        for (int lx = 0; lx < Chunk.SIZE; lx++, idx++) {
+                            if (col[idx] == 0) continue;
+                            if (y + 1 >= World.HEIGHT || !BlockType.isOpaqueId(col[idx + Chunk.DY])) n++;
+                            if (y > 0 && !BlockType.isOpaqueId(col[idx - Chunk.DY])) n++;
+                            if (lz > 0 ? !BlockType.isOpaqueId(col[idx - Chunk.DZ])
+                                    : !world.isOpaque(x0 + lx, y, z0 - 1)) n++;
+                            if (lz < 15 ? !BlockType.isOpaqueId(col[idx + Chunk.DZ])
+                                    : !world.isOpaque(x0 + lx, y, z0 + 16)) n++;
+                            if (lx > 0 ? !BlockType.isOpaqueId(col[idx - Chunk.DX])
+                                    : !world.isOpaque(x0 - 1, y, z0 + lz)) n++;
+                            if (lx < 15 ? !BlockType.isOpaqueId(col[idx + Chunk.DX])
+                                    : !world.isOpaque(x0 + 16, y, z0 + lz)) n++;
+                        }
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Time {@code body} over {@link #ROUNDS} measured runs after a warm-up
+     * period and log the best run.
+     *
+     * @param name       label for the log line
+     * @param operations operations performed per run, for the per-op figure
+     * @param body       the work to time
+     * @return the best run in nanoseconds
+     */
+    static long report(String name, long operations, Runnable body) {
+        long warmUntil = System.nanoTime() + WARMUP_NANOS;
+        for (int i = 0; i < 5 || System.nanoTime() < warmUntil; i++) {
+            body.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long t0 = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        logger.info(String.format("%-32s %9.3f ms  %8.2f ns/op", name, best / 1e6, (double) best / operations));
+        return best;
+    }
+
+    public static void main(String[] args) {
+        String scenario = args.length > 0 ? args[0] : "all";
+        if ("all".equals(scenario) || "storage".equals(scenario)) {
+            storage();
+        }
+        if ("all".equals(scenario) || "meshing".equals(scenario)) {
+            meshing();
+        }
+        if ("all".equals(scenario) || "save".equals(scenario)) {
+            save();
+        }
+        if ("all".equals(scenario) || "load".equals(scenario)) {
+            load();
+        }
+        if ("all".equals(scenario) || "generation".equals(scenario)) {
+            generation();
+        }
+        if ("all".equals(scenario) || "noise".equals(scenario)) {
+            noise();
+        }
+        if ("all".equals(scenario) || "streaming".equals(scenario)) {
+            streaming();
+        }
+        if ("all".equals(scenario) || "memory".equals(scenario)) {
+            memory();
+        }
+        if ("all".equals(scenario) || "collision".equals(scenario)) {
+            collision();
+        }
+        if ("all".equals(scenario) || "raycast".equals(scenario)) {
+            raycast();
+        }
+        logger.debug("sink {}", sink);
+    }
+}
@@ -1,17 +1,19 @@
 /**
- * World persistence: saving and loading the game to a single `.bgsave` file.
+ * World persistence: saving and loading the game to a `.bgsave` file plus
+ * its region directory.
  */
 
 package com.mcclone;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,18 +22,26 @@ import org.slf4j.LoggerFactory;
  * Reads and writes the complete game state (blocks, player pose, hotbar) to a
  * compact binary file.
  *
+ * <p>Since version 3 the blocks live beside the file, one payload per chunk
+ * in the {@link RegionFile}s of {@link #regionDir(File)}, so any chunk can be
+ * read or rewritten on its own; the {@code .bgsave} itself holds only the
+ * header and player state. Version 4 writes chunk payloads as varint RLE,
+ * deflated unless {@code -Dblockgame.saveDeflate=0} (see {@link ChunkCodec});
+ * version 3's int RLE payloads still decode. Versions 1 and 2 carried the
+ * whole world as one RLE stream at the end of the file and still load.</p>
+ *
  * <p>Format (all big-endian, via {@link DataOutputStream}):</p>
  * <pre>
  *   int    magic   "BGSV" (0x42475356)
- *   int    version (2)
+ *   int    version (4)
  *   int    world SIZE, int world HEIGHT   (must match the running build)
  *   float  player x, y, z, pitch, yaw
  *   float  time of day in cycle seconds
  *   int    selected hotbar slot
  *   9 ×  ( int blockId, int count )       hotbar slots
  *   27 × ( int blockId, int count )       inventory storage slots (v2+)
- *   RLE block payload: pairs of ( int blockId, int runLength ) in x→y→z
- *   scan order until SIZE*HEIGHT*SIZE cells have been emitted.
+ *   v1–v2 only: RLE block payload, pairs of ( int blockId, int runLength )
+ *   in x→y→z scan order until SIZE*HEIGHT*SIZE cells have been emitted.
  * </pre>
  */
 public final class WorldSave {
@@ -39,7 +49,17 @@ public final class WorldSave {
     private static final Logger logger = LoggerFactory.getLogger(WorldSave.class);
 
     private static final int MAGIC = 0x42475356; // "BGSV"
-    private static final int VERSION = 2;
+    private static final int VERSION = 4;
+
+    /** First version whose blocks are stored in region files. */
+    private static final int REGION_VERSION = 3;
+
+    /**
+     * {@link java.util.zip.Deflater} level for chunk payloads, 0 to store them
+     * uncompressed; override with {@code -Dblockgame.saveDeflate=<0..9>}.
+     */
+    static final int DEFLATE_LEVEL = Math.max(0, Math.min(9,
+            Integer.getInteger("blockgame.saveDeflate", 1)));
 
     /** Default save location, in the game's working directory. */
     public static final File DEFAULT_FILE = new File("world.bgsave");
@@ -48,6 +68,90 @@ public final class WorldSave {
         throw new UnsupportedOperationException("Utility class");
     }
 
+    /**
+     * @param file a save file such as {@code world.bgsave}
+     * @return the directory holding its region files, e.g. {@code world.regions}
+     */
+    public static File regionDir(File file) {
+        return sibling(file, ".regions");
+    }
+
+    /**
+     * @param file a save file such as {@code world.bgsave}
+     * @return the directory holding its {@link EditJournal}, e.g.
+     *         {@code world.journal}
+     */
+    public static File journalDir(File file) {
+        return sibling(file, ".journal");
+    }
+
+    /** @return {@code file} with its extension replaced by {@code suffix}. */
+    private static File sibling(File file, String suffix) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return new File(file.getAbsoluteFile().getParentFile(), base + suffix);
+    }
+
+    /**
+     * Everything a save writes, captured at one instant on the simulation
+     * thread, holding the world's monitor. Block data is a copy-on-write {@link World.BlockSnapshot}, so
+     * taking one is cheap and the result can be written from any thread.
+     */
+    static final class Snapshot {
+        private final World.BlockSnapshot blocks;
+
+        /** The world's shared region store at this instant, or {@code null}. */
+        private final RegionStore regions;
+        private final float x;
+        private final float y;
+        private final float z;
+        private final float pitch;
+        private final float yaw;
+        private final float timeOfDay;
+        private final int selectedSlot;
+        private final int[] hotbarIds = new int[Hotbar.slotCount()];
+        private final int[] hotbarCounts = new int[Hotbar.slotCount()];
+        private final int[] storageIds = new int[Hotbar.storageSlotCount()];
+        private final int[] storageCounts = new int[Hotbar.storageSlotCount()];
+
+        /** The world's journal and its {@link EditJournal#mark()} at this instant. */
+        private final EditJournal journal;
+        private final long journalMark;
+
+        private Snapshot(World world, Player player, Hotbar hotbar, DayNightCycle dayNight) {
+            blocks = world.snapshotBlocks();
+            regions = world.regions();
+            journal = world.journal();
+            journalMark = journal != null ? journal.mark() : 0;
+            x = player.getX();
+            y = player.getY();
+            z = player.getZ();
+            pitch = player.getPitch();
+            yaw = player.getYaw();
+            timeOfDay = dayNight.timeSeconds();
+            selectedSlot = hotbar.getSelectedSlot();
+            for (int i = 0; i < hotbarIds.length; i++) {
+                hotbarIds[i] = hotbar.getItemId(i);
+                hotbarCounts[i] = hotbar.getCount(i);
+            }
+            for (int i = 0; i < storageIds.length; i++) {
+                storageIds[i] = hotbar.getStorageId(i);
+                storageCounts[i] = hotbar.getStorageCount(i);
+            }
+        }
+    }
+
+    /**
+     * Capture the full game state for a later {@link #write}. Call with the
+     * world's monitor held.
+     *
+     * @return an immutable snapshot
+     */
+    static Snapshot snapshot(World world, Player player, Hotbar hotbar, DayNightCycle dayNight) {
+        return new Snapshot(world, player, hotbar, dayNight);
+    }
+
     /**
      * Save the full game state. Writes to a temp file first and renames so a
      * crash mid-write can't corrupt an existing save.
@@ -56,6 +160,49 @@ public final class WorldSave {
      */
     public static boolean save(File file, World world, Player player, Hotbar hotbar,
                                DayNightCycle dayNight) {
+        return write(file, snapshot(world, player, hotbar, dayNight));
+    }
+
+    /**
+     * Write a captured game state, then the header via a temp file and
+     * rename like {@link #save}. Only loaded chunks edited since they were
+     * last saved, or missing from this save's regions, are encoded and
+     * written; every other chunk's sectors are left untouched, so the cost
+     * follows the amount of editing rather than the size of the world.
+     * Chunks unloaded since the snapshot are skipped: unloading already
+     * wrote them, possibly with newer edits. Reads only the snapshot, so it
+     * runs on the autosaver's writer thread without the world's monitor.
+     *
+     * @return true if the save succeeded
+     */
+    static boolean write(File file, Snapshot snap) {
+        World.BlockSnapshot blocks = snap.blocks;
+        int total = blocks.size();
+        boolean[] written = new boolean[total];
+        int writtenCount = 0;
+        RegionStore shared = snap.regions != null && snap.regions.dir().equals(regionDir(file))
+                ? snap.regions : null;
+        try (RegionStore own = shared == null ? new RegionStore(regionDir(file)) : null) {
+            RegionStore regions = shared != null ? shared : own;
+            for (int i = 0; i < total; i++) {
+                if (!blocks.isModified(i) && regions.contains(blocks.cx(i), blocks.cz(i))) continue;
+                byte[] data = payload(blocks.chunk(i));
+                synchronized (regions) {
+                    if (blocks.isEvicted(i)) continue;
+                    regions.write(blocks.cx(i), blocks.cz(i), data);
+                }
+                written[i] = true;
+                writtenCount++;
+            }
+            if (shared != null) shared.sync();
+        } catch (IOException e) {
+            logger.warn("Failed to write region files for {}: {}", file, e.getMessage());
+            return false;
+        }
+        // The chunks are synced to disk; only now may they count as saved.
+        for (int i = 0; i < total; i++) {
+            if (written[i]) blocks.markSaved(i);
+        }
         File tmp = new File(file.getPath() + ".tmp");
         try (DataOutputStream out = new DataOutputStream(
                 new BufferedOutputStream(new FileOutputStream(tmp)))) {
@@ -64,25 +211,23 @@ public final class WorldSave {
             out.writeInt(World.SIZE);
             out.writeInt(World.HEIGHT);
 
-            out.writeFloat(player.getX());
-            out.writeFloat(player.getY());
-            out.writeFloat(player.getZ());
-            out.writeFloat(player.getPitch());
-            out.writeFloat(player.getYaw());
+            out.writeFloat(snap.x);
+            out.writeFloat(snap.y);
+            out.writeFloat(snap.z);
+            out.writeFloat(snap.pitch);
+            out.writeFloat(snap.yaw);
 
-            out.writeFloat(dayNight.timeSeconds());
+            out.writeFloat(snap.timeOfDay);
 
-            out.writeInt(hotbar.getSelectedSlot());
-            for (int i = 0; i < Hotbar.slotCount(); i++) {
-                out.writeInt(hotbar.getItemId(i));
-                out.writeInt(hotbar.getCount(i));
+            out.writeInt(snap.selectedSlot);
+            for (int i = 0; i < snap.hotbarIds.length; i++) {
+                out.writeInt(snap.hotbarIds[i]);
+                out.writeInt(snap.hotbarCounts[i]);
             }
-            for (int i = 0; i < Hotbar.storageSlotCount(); i++) {
-                out.writeInt(hotbar.getStorageId(i));
-                out.writeInt(hotbar.getStorageCount(i));
+            for (int i = 0; i < snap.storageIds.length; i++) {
+                out.writeInt(snap.storageIds[i]);
+                out.writeInt(snap.storageCounts[i]);
             }
-
-            world.writeBlocks(out);
         } catch (IOException e) {
             logger.warn("Failed to write save file {}: {}", tmp, e.getMessage());
             return false;
@@ -94,10 +239,25 @@ public final class WorldSave {
             logger.warn("Failed to move save into place: {}", e.getMessage());
             return false;
         }
-        logger.info("World saved to {}", file);
+        // Everything journalled before the snapshot is now in the save.
+        if (snap.journal != null && snap.journal.dir().equals(journalDir(file))) {
+            snap.journal.saved(snap.journalMark);
+        }
+        logger.info("World saved to {} ({} of {} chunks written)",
+                file, writtenCount, total);
         return true;
     }
 
+    /**
+     * @return the region payload for a chunk's blocks: the one it was
+     *         {@link Chunk#pack packed} into if it is packed, else a fresh
+     *         encoding at {@link #DEFLATE_LEVEL}
+     */
+    static byte[] payload(Chunk.Frozen blocks) {
+        byte[] packed = blocks.payload();
+        return packed != null ? packed : ChunkCodec.encode(blocks, DEFLATE_LEVEL);
+    }
+
     /**
      * Load the full game state from {@code file}, replacing the world's blocks
      * and the player/hotbar state.
@@ -110,51 +270,55 @@ public final class WorldSave {
         if (!file.isFile()) {
             return false;
         }
-        try (DataInputStream in = new DataInputStream(
-                new BufferedInputStream(new FileInputStream(file)))) {
-            if (in.readInt() != MAGIC) {
+        try {
+            ByteBuffer in = readFile(file);
+            if (in.getInt() != MAGIC) {
                 logger.warn("Save {} has bad magic — ignoring", file);
                 return false;
             }
-            int version = in.readInt();
+            int version = in.getInt();
             if (version < 1 || version > VERSION) {
                 logger.warn("Save {} has unsupported version {} — ignoring", file, version);
                 return false;
             }
-            int size = in.readInt();
-            int height = in.readInt();
+            int size = in.getInt();
+            int height = in.getInt();
             if (size != World.SIZE || height != World.HEIGHT) {
                 logger.warn("Save {} is for a {}×{} world (need {}×{}) — ignoring",
                         file, size, height, World.SIZE, World.HEIGHT);
                 return false;
             }
 
-            float x = in.readFloat();
-            float y = in.readFloat();
-            float z = in.readFloat();
-            float pitch = in.readFloat();
-            float yaw = in.readFloat();
+            float x = in.getFloat();
+            float y = in.getFloat();
+            float z = in.getFloat();
+            float pitch = in.getFloat();
+            float yaw = in.getFloat();
 
-            float timeOfDay = in.readFloat();
+            float timeOfDay = in.getFloat();
 
-            int selected = in.readInt();
+            int selected = in.getInt();
             int[] ids = new int[Hotbar.slotCount()];
             int[] counts = new int[Hotbar.slotCount()];
             for (int i = 0; i < Hotbar.slotCount(); i++) {
-                ids[i] = in.readInt();
-                counts[i] = in.readInt();
+                ids[i] = in.getInt();
+                counts[i] = in.getInt();
             }
 
             int[] storageIds = new int[Hotbar.storageSlotCount()];
             int[] storageCounts = new int[Hotbar.storageSlotCount()];
             if (version >= 2) {
                 for (int i = 0; i < Hotbar.storageSlotCount(); i++) {
-                    storageIds[i] = in.readInt();
-                    storageCounts[i] = in.readInt();
+                    storageIds[i] = in.getInt();
+                    storageCounts[i] = in.getInt();
                 }
             }
 
-            world.readBlocks(in);
+            if (version >= REGION_VERSION) {
+                readRegions(file, world);
+            } else {
+                world.readBlocks(in);
+            }
 
             player.setPose(x, y, z, pitch, yaw);
             dayNight.setTimeSeconds(timeOfDay);
@@ -167,9 +331,59 @@ public final class WorldSave {
             }
             logger.info("World loaded from {}", file);
             return true;
+        } catch (BufferUnderflowException e) {
+            logger.warn("Save {} is truncated — ignoring", file);
+            return false;
         } catch (IOException e) {
             logger.warn("Failed to read save file {}: {}", file, e.getMessage());
             return false;
         }
     }
+
+    /**
+     * Read a whole file with one channel read, so headers and v1–v2 block
+     * payloads decode straight from memory instead of an int at a time
+     * through a stream. Deliberately not {@link FileChannel#map}: a mapping
+     * can't be released on demand, and on Windows it would block the next
+     * save's rename over this file.
+     */
+    private static ByteBuffer readFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Save file too large: " + size + " bytes");
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) < 0) {
+                    throw new IOException("Save file shrank while reading");
+                }
+            }
+            buf.flip();
+            return buf;
+        }
+    }
+
+    /**
+     * Load every currently loaded chunk present in the save's region files.
+     * Chunks that were never saved keep their freshly generated blocks;
+     * chunks further out are read when the world streams them in.
+     */
+    private static void readRegions(File file, World world) throws IOException {
+        int loaded = 0;
+        ChunkMap<Chunk> chunks = world.loadedChunks();
+        try (RegionStore regions = new RegionStore(regionDir(file))) {
+            for (int slot = 0; slot < chunks.capacity(); slot++) {
+                Chunk c = chunks.valueAt(slot);
+                if (c == null) continue;
+                byte[] data = regions.read(c.cx, c.cz);
+                if (data != null) {
+                    world.readChunk(c.cx, c.cz, data);
+                    loaded++;
+                }
+            }
+        }
+        world.finishLoad();
+        logger.debug("Loaded {} chunks from {}", loaded, regionDir(file));
+    }
 }